@@ -1,7 +1,12 @@
 package bgu.spl.net.impl.tftp;
 
+import bgu.spl.net.impl.tftp.compression.Codec;
+import bgu.spl.net.impl.tftp.compression.Codecs;
+import bgu.spl.net.impl.tftp.integrity.Digest;
+import bgu.spl.net.impl.tftp.integrity.Digests;
 import bgu.spl.net.impl.tftp.packets.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -16,6 +21,7 @@ import static bgu.spl.net.impl.tftp.DisplayMessage.print;
  * 2. DATA - will have block number and data. As a result of a RRQ or DIRQ.
  * 3. BCAST - will have a file name and a 0/1 byte to indicate if the file was added/deleted.
  * 4. ERROR - will have an error code and a message.
+ * 5. OACK - will have the options the server accepted, instead of the first response to a RRQ/WRQ with options.
  *
  * Types of operations that can be receiving from the CLI:
  * 1. LOGRQ - will receive a LoginRequestPacket.
@@ -24,6 +30,9 @@ import static bgu.spl.net.impl.tftp.DisplayMessage.print;
  * 4. WRQ - will receive a WriteRequestPacket.
  * 5. DIRQ - will receive a DirectoryRequestPacket.
  * 6. DISC - will receive a DisconnectPacket.
+ *
+ * When several transfers may run at once, the connection's coordinator hands RRQ/WRQ/DIRQ requests to the
+ * coordinator of an idle tagged transfer and lets the CLI go on, the packets of each transfer carry its ID.
  */
 public class ClientCoordinator {
     private final Object answers;
@@ -44,17 +53,121 @@ public class ClientCoordinator {
      * Supports directory lists that are larger than 1 block in size.
      * As required in the instructions.
      */
-    private StringBuilder directoryList = new StringBuilder();
+    private ByteArrayOutputStream directoryList = new ByteArrayOutputStream();
+    /**
+     * Block size of the current file transfer, changed if the server accepted a block size option.
+     */
+    private int blockSize = GlobalConstants.MAX_DATA_PACKET_SIZE;
+    /**
+     * Window size of the current file transfer, changed if the server accepted a window size or credit option.
+     * Number of blocks that may be sent past the last acknowledged block, acknowledgements are cumulative.
+     */
+    private int windowSize = 1;
+    /**
+     * Number of blocks received between two acknowledgements of a download, the window size, or half the credit
+     * when streaming so the server gets more credit before it runs out of it.
+     */
+    private int ackInterval = 1;
+    /**
+     * Number of blocks of the file being uploaded that were already sent.
+     * Blocks are counted here, the block numbers of the packets roll over after 65535.
+     */
+    private long sentBlocks;
+    /**
+     * Number of blocks of the file being downloaded that were already received.
+     */
+    private long receivedBlocks;
+    /**
+     * Size of the file being downloaded if the server sent it, -1 otherwise.
+     */
+    private long transferSize = -1;
+    /**
+     * The download's progress that was last reported, in percents.
+     */
+    private int reportedProgress;
 
     /**
      * Reference so that the protocol can be terminated.
      */
     private TftpProtocol protocol;
+    /**
+     * The transfer this coordinator runs the requests of, 0 for the connection's untagged requests.
+     */
+    private final int transferId;
+
     public ClientCoordinator(TftpProtocol protocol) {
+        this(protocol, 0);
+    }
+
+    /**
+     * @param protocol The connection's protocol.
+     * @param transferId The tagged transfer this coordinator runs, 0 for the connection's untagged requests.
+     */
+    public ClientCoordinator(TftpProtocol protocol, int transferId) {
         this.answers = new Object();
         this.lastSentRequest = Operation.NO_OP;
         this.filesHandler = null;
         this.protocol = protocol;
+        this.transferId = transferId;
+    }
+
+    /**
+     * Sends a request, tagged with the coordinator's transfer.
+     * Waits until it's handled unless it runs as a tagged transfer, which the CLI doesn't wait for.
+     * @param packet the request packet.
+     */
+    private void sendRequest(AbstractPacket packet) {
+        packet.setTransferId(transferId);
+        protocol.send(packet);
+        if (transferId == 0) {
+            waitEndHandle();
+        }
+    }
+
+    /**
+     * @param packet a packet to send back to the server.
+     * @return the packet's bytes, tagged with the coordinator's transfer.
+     */
+    private byte[] bytesOf(AbstractPacket packet) {
+        packet.setTransferId(transferId);
+        return packet.getBytes();
+    }
+
+    /**
+     * Sends the packet that ends the request before waking the CLI, so the next request of the CLI doesn't reach
+     * the server ahead of it.
+     * @param packet the last packet of the request.
+     * @return null, the packet was already sent.
+     */
+    private byte[] endRequest(AbstractPacket packet) {
+        packet.setTransferId(transferId);
+        protocol.send(packet);
+        lastSentRequest = Operation.NO_OP;
+        wakeCLI();
+        return null;
+    }
+
+    /**
+     * @return the coordinator to run a RRQ/WRQ/DIRQ: this one if transfers don't run at once or it's a tagged
+     * transfer's coordinator, otherwise the coordinator of an idle tagged transfer, or null if all of them are
+     * running.
+     */
+    private ClientCoordinator transferCoordinator() {
+        if (transferId != 0 || GlobalConstants.TRANSFERS <= 0) {
+            return this;
+        }
+        ClientCoordinator transfer = protocol.idleTransfer();
+        if (transfer == null) {
+            print("Too many transfers are running.");
+        }
+        return transfer;
+    }
+
+    /**
+     * @return true if the coordinator doesn't run a request.
+     */
+    public boolean isIdle() {
+        return lastSentRequest == Operation.NO_OP;
     }
 
     /**
@@ -66,8 +179,7 @@ public class ClientCoordinator {
     public boolean addRequest(LoginRequestPacket packet) {
         if (lastSentRequest == Operation.NO_OP) {
             lastSentRequest = Operation.LOGRQ;
-            protocol.send(packet);
-            waitEndHandle();
+            sendRequest(packet);
             return true;
         }
         return false;
@@ -75,16 +187,17 @@ public class ClientCoordinator {
 
     /**
      * Wait until the last request is handled before allowing user to send another request.
+     * The request's state is checked while holding the lock it's woken up with, so its end can't be missed.
      */
-    private void waitEndHandle() {
-        while (lastSentRequest != Operation.NO_OP) {
-            // Wait for acknowledgement / error:
-            try {
-                synchronized (answers) {
+    void waitEndHandle() {
+        synchronized (answers) {
+            while (lastSentRequest != Operation.NO_OP) {
+                // Wait for acknowledgement / error:
+                try {
                     answers.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
             }
         }
     }
@@ -98,8 +211,7 @@ public class ClientCoordinator {
     public boolean addRequest(DeleteRequestPacket packet) {
         if (lastSentRequest == Operation.NO_OP) {
             lastSentRequest = Operation.DELRQ;
-            protocol.send(packet);
-            waitEndHandle();
+            sendRequest(packet);
             return true;
         }
         return false;
@@ -113,20 +225,29 @@ public class ClientCoordinator {
      * @throws IllegalArgumentException if the file name is empty or contains null character.
      */
     public boolean addRequest(ReadRequestPacket packet) {
+        ClientCoordinator transfer = transferCoordinator();
+        if (transfer != this) {
+            return transfer != null && transfer.addRequest(packet);
+        }
         if (lastSentRequest == Operation.NO_OP) {
             try {
                 lastSentRequest = Operation.RRQ;
+                blockSize = GlobalConstants.MAX_DATA_PACKET_SIZE;
+                windowSize = 1;
+                ackInterval = 1;
+                receivedBlocks = 0;
+                transferSize = -1;
+                reportedProgress = 0;
                 filesHandler = new FilesHandler(packet.getFileName());
-                // Check if the client already has a file with this name.
-                if (filesHandler.fileExists()) {
+                // Check if the client already has a file with this name, a partial file is resumed.
+                if (filesHandler.fileExists() && !GlobalConstants.RESUME) {
                     print("You already have a file with this name.");
                     lastSentRequest = Operation.NO_OP;
                     filesHandler = null;
                     return false;
                 }
                 filesHandler.createNewFile();
-                protocol.send(packet);
-                waitEndHandle();
+                sendRequest(packet);
                 return true;
             }
             catch (IllegalArgumentException e) {
@@ -148,13 +269,20 @@ public class ClientCoordinator {
      * @return true if the request was added to the queue, false otherwise.
      */
     public boolean addRequest(WriteRequestPacket packet) {
+        ClientCoordinator transfer = transferCoordinator();
+        if (transfer != this) {
+            return transfer != null && transfer.addRequest(packet);
+        }
         if (lastSentRequest == Operation.NO_OP) {
             try {
                 lastSentRequest = Operation.WRQ;
+                blockSize = GlobalConstants.MAX_DATA_PACKET_SIZE;
+                windowSize = 1;
+                ackInterval = 1;
+                sentBlocks = 0;
                 filesHandler = new FilesHandler(packet.getFileName());
                 if(filesHandler.fileExists()) {
-                    protocol.send(packet);
-                    waitEndHandle();
+                    sendRequest(packet);
                     return true;
                 } else {
                     print("file does not exists");
@@ -177,10 +305,13 @@ public class ClientCoordinator {
      * @return true if the request was added to the queue, false otherwise.
      */
     public boolean addRequest(DirectoryRequestPacket packet) {
+        ClientCoordinator transfer = transferCoordinator();
+        if (transfer != this) {
+            return transfer != null && transfer.addRequest(packet);
+        }
         if (lastSentRequest == Operation.NO_OP) {
             lastSentRequest = Operation.DIRQ;
-            protocol.send(packet);
-            waitEndHandle();
+            sendRequest(packet);
             return true;
         }
         return false;
@@ -195,10 +326,11 @@ public class ClientCoordinator {
      * @return true if the request was added to the queue, false otherwise.
      */
     public boolean addRequest(DisconnectPacket packet) {
+        // The connection's transfers end before it's closed.
+        protocol.awaitTransfers();
         if (lastSentRequest == Operation.NO_OP) {
             lastSentRequest = Operation.DISC;
-            protocol.send(packet);
-            waitEndHandle();
+            sendRequest(packet);
             return true;
         }
         return false;
@@ -209,32 +341,59 @@ public class ClientCoordinator {
      * RRQ Command or DIRQ Command and send an ACK packet in return with the corresponding block
      * number written in the DATA packet. Once the last block is received, the filesHandler will be
      * reset to null and the lastSentRequest will be reset to NO_OP.
+     * When a window size was negotiated for a RRQ, only the last block of every window and the file's last block
+     * are acknowledged.
      * @param packet the received packet.
-     * @return the ACK packet to send back to the server.
+     * @return the ACK packet to send back to the server, or null if the block is acknowledged with its window.
      */
     public byte[] handle(DataPacket packet) {
         if (lastSentRequest == Operation.RRQ) {
-            filesHandler.WriteData(packet.getData());
-            if (packet.getPacketSize() < GlobalConstants.MAX_DATA_PACKET_SIZE) {
+            try {
+                filesHandler.WriteData(packet.getData());
+            } catch (RuntimeException e) {
+                // The server stops sending the file.
+                print("IO error occurred");
+                filesHandler.close();
+                filesHandler = null;
+                return endRequest(new ErrorPacket((short) 0, "Failed to write the data."));
+            }
+            receivedBlocks++;
+            // The size field is unsigned, negotiated blocks may not fit in a short.
+            if (packet.getData().length < blockSize) {
                 // This is the last packet.
-                print("RRQ " + filesHandler.getFileName() + " complete");
+                try {
+                    filesHandler.endWrite();
+                    print("RRQ " + filesHandler.getFileName() + " complete");
+                } catch (IOException e) {
+                    // The file isn't the server's file, it isn't kept.
+                    print("IO error occurred");
+                    try {
+                        filesHandler.DeleteFile();
+                    } catch (RuntimeException deleteError) {
+                        print("Failed to delete file: " + deleteError.getMessage());
+                    }
+                }
                 filesHandler = null;
-                lastSentRequest = Operation.NO_OP;
-                wakeCLI();
+                return endRequest(new AcknowledgementPacket(packet.getBlockNumber()));
+            } else {
+                reportProgress();
+                if (receivedBlocks % ackInterval != 0) {
+                    return null;
+                }
             }
         } else { // DIRQ
-            directoryList.append(new String(packet.getData()));
+            // Blocks are cut by bytes, a name's character may continue in the next block.
+            directoryList.writeBytes(packet.getData());
             if (packet.getPacketSize() < GlobalConstants.MAX_DATA_PACKET_SIZE) {
                 // This is the last packet.
-                print(directoryList.toString());
-                directoryList = new StringBuilder();
-                lastSentRequest = Operation.NO_OP;
-                wakeCLI();
+                print(directoryList.toString(GlobalConstants.ENCODING_FORMAT));
+                directoryList = new ByteArrayOutputStream();
+                return endRequest(new AcknowledgementPacket(packet.getBlockNumber()));
             }
         }
         AcknowledgementPacket ack = new AcknowledgementPacket(packet.getBlockNumber());
 
-        return ack.getBytes();
+        return bytesOf(ack);
     }
 
     /**
@@ -250,32 +409,18 @@ public class ClientCoordinator {
      * @return
      */
     public byte[] handle(AcknowledgementPacket packet) {
-        print("ACK " + packet.getBlockNumber());
+        print("ACK " + Short.toUnsignedInt(packet.getBlockNumber()));
         if (lastSentRequest == Operation.WRQ) {
-            try {
-                // Prepare the next DATA packet to send to the server.
-                // If the file is done, then filesHandler will be reset to null.
-                byte[] data = filesHandler.ReadFile(packet.getBlockNumber());
-                // Reached the end of the file.
-                if (data.length < GlobalConstants.MAX_DATA_PACKET_SIZE) {
-                    filesHandler = null;
+            long acknowledged = EncodeDecodeHelper.unwrapBlockNumber(packet.getBlockNumber(), sentBlocks);
+            if (filesHandler == null) {
+                // Every block was sent, the request ends once the last one is acknowledged.
+                if (acknowledged == sentBlocks) {
                     lastSentRequest = Operation.NO_OP;
                     wakeCLI();
                 }
-                return new DataPacket((short) data.length, (short) (packet.getBlockNumber() + 1), data).getBytes();
-            } catch (FileNotFoundException e) {
-                filesHandler = null;
-                lastSentRequest = Operation.NO_OP;
-                wakeCLI();
-                print("file not exists");
-                return null;
-            } catch (IOException e) {
-                filesHandler = null;
-                lastSentRequest = Operation.NO_OP;
-                wakeCLI();
-                print("IO error occurred");
                 return null;
             }
+            return nextWriteBlock(acknowledged);
         }
         else if (lastSentRequest == Operation.DISC) {
             // The server responded with an ACK packet with block number 0 when the client asked to disconnect.
@@ -292,6 +437,193 @@ public class ClientCoordinator {
         }
     }
 
+    /**
+     * The server accepted the options of the last RRQ/WRQ.
+     * Applies the accepted block size and window size or credit, then starts the transfer: a read by acknowledging
+     * block 0 and a write by sending the first window of DATA packets.
+     * A read whose size was sent preallocates the file and reports its progress.
+     * A resumed read continues after the bytes the server accepted, a resumed write continues after the server's
+     * partial file if the client's file starts with the same bytes and is cancelled with an ERROR packet otherwise.
+     * @param packet the received packet.
+     * @return the ACK, DATA or ERROR packet to send back to the server.
+     */
+    public byte[] handle(OptionAcknowledgementPacket packet) {
+        String accepted = packet.getOptions().get(GlobalConstants.BLOCK_SIZE_OPTION);
+        if (accepted != null) {
+            blockSize = Integer.parseInt(accepted);
+        }
+        accepted = packet.getOptions().get(GlobalConstants.WINDOW_SIZE_OPTION);
+        if (accepted != null) {
+            windowSize = Integer.parseInt(accepted);
+            ackInterval = windowSize;
+        }
+        accepted = packet.getOptions().get(GlobalConstants.CREDIT_OPTION);
+        if (accepted != null) {
+            windowSize = Integer.parseInt(accepted);
+            ackInterval = Math.max(1, windowSize / 2);
+        }
+        accepted = packet.getOptions().get(GlobalConstants.TRANSFER_SIZE_OPTION);
+        if (accepted != null && lastSentRequest == Operation.RRQ) {
+            transferSize = Long.parseLong(accepted);
+            // The length of a partial file must be the number of bytes received, it isn't preallocated.
+            if (!GlobalConstants.RESUME) {
+                try {
+                    filesHandler.preallocate(transferSize);
+                } catch (IOException e) {
+                    // The file grows block by block instead.
+                    print("IO error occurred");
+                }
+            }
+        }
+        accepted = packet.getOptions().get(GlobalConstants.OFFSET_OPTION);
+        if (accepted != null) {
+            long offset = Long.parseLong(accepted);
+            if (lastSentRequest == Operation.RRQ) {
+                try {
+                    filesHandler.resumeWrite(offset);
+                } catch (IOException e) {
+                    print("IO error occurred");
+                }
+            } else if (lastSentRequest == Operation.WRQ && offset > 0) {
+                if (!resumeUpload(offset, packet.getOptions().get(GlobalConstants.OFFSET_CHECKSUM_OPTION))) {
+                    print("WRQ " + filesHandler.getFileName() + " does not match the server's partial file");
+                    return cancelWrite("Partial file does not match.");
+                }
+            }
+            if (offset > 0) {
+                print(lastSentRequest + " " + filesHandler.getFileName() + " resumed at " + offset);
+            }
+        }
+        accepted = packet.getOptions().get(GlobalConstants.COMPRESSION_OPTION);
+        if (accepted != null) {
+            Codec codec = Codecs.get(accepted);
+            if (codec == null) {
+                print("Unknown codec " + accepted);
+                return rejectOption("Unknown codec.");
+            }
+            if (lastSentRequest == Operation.RRQ) {
+                filesHandler.decompress(codec);
+            } else if (lastSentRequest == Operation.WRQ) {
+                filesHandler.compress(codec);
+            }
+        }
+        accepted = packet.getOptions().get(GlobalConstants.CHECKSUM_OPTION);
+        if (accepted != null) {
+            Digest digest = Digests.create(accepted);
+            if (digest == null) {
+                print("Unknown checksum " + accepted);
+                return rejectOption("Unknown checksum.");
+            }
+            if (lastSentRequest == Operation.RRQ) {
+                filesHandler.verifyDigest(digest);
+            } else if (lastSentRequest == Operation.WRQ) {
+                filesHandler.appendDigest(digest, blockSize);
+            }
+        }
+        if (lastSentRequest == Operation.RRQ) {
+            return bytesOf(new AcknowledgementPacket(GlobalConstants.DEFAULT_ACK));
+        } else if (lastSentRequest == Operation.WRQ) {
+            return nextWriteBlock(GlobalConstants.DEFAULT_ACK);
+        }
+        return null;
+    }
+
+    /**
+     * Stops the current upload before any block was sent, the server deletes its file.
+     * @param message the reason, sent to the server.
+     * @return null, the ERROR packet was already sent.
+     */
+    private byte[] cancelWrite(String message) {
+        filesHandler = null;
+        return endRequest(new ErrorPacket((short) 0, message));
+    }
+
+    /**
+     * Stops the current RRQ/WRQ before any block was sent, the server chose an option that wasn't requested.
+     * @param message the reason, sent to the server.
+     * @return null, the ERROR packet was already sent.
+     */
+    private byte[] rejectOption(String message) {
+        if (lastSentRequest == Operation.WRQ) {
+            return cancelWrite(message);
+        }
+        print("IO error occurred");
+        filesHandler = null;
+        return endRequest(new ErrorPacket((short) 0, message));
+    }
+
+    /**
+     * Continues the current upload after the server's partial file, if the client's file starts with its bytes.
+     * @param offset Length of the server's partial file.
+     * @param checksum CRC32C of the server's partial file, in hexadecimal.
+     * @return True if the upload is resumed, false if the files don't match.
+     */
+    private boolean resumeUpload(long offset, String checksum) {
+        try {
+            if (checksum == null || filesHandler.fileSize() < offset
+                    || filesHandler.prefixChecksum(offset) != Long.parseUnsignedLong(checksum, 16)) {
+                return false;
+            }
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+        filesHandler.resumeRead(offset);
+        return true;
+    }
+
+    /**
+     * Prints the progress of the current download every 10 percents, if the server sent the file's size.
+     * The progress counts the file's bytes, which a compressed download receives fewer of.
+     */
+    private void reportProgress() {
+        if (transferSize <= 0) {
+            return;
+        }
+        int progress = (int) (filesHandler.getWritten() * 100 / transferSize);
+        if (progress >= reportedProgress + 10 && progress < 100) {
+            reportedProgress = progress - progress % 10;
+            print("RRQ " + filesHandler.getFileName() + " " + reportedProgress + "%");
+        }
+    }
+
+    /**
+     * Prepares the next DATA packets to send to the server due to a WRQ command, every block of the window that
+     * follows the acknowledged block and wasn't sent yet.
+     * If the file is done, then filesHandler will be reset to null.
+     * @param acknowledged the last block the server acknowledged.
+     * @return the DATA packets to send to the server one after the other, or null if the file could not be read.
+     */
+    private byte[] nextWriteBlock(long acknowledged) {
+        try {
+            ByteArrayOutputStream window = new ByteArrayOutputStream();
+            long windowEnd = acknowledged + windowSize;
+            for (long block = Math.max(acknowledged, sentBlocks); filesHandler != null && block < windowEnd; block++) {
+                byte[] data = filesHandler.ReadFile(block, blockSize);
+                window.writeBytes(bytesOf(new DataPacket((short) data.length, (short) (block + 1), data)));
+                sentBlocks = block + 1;
+                // Reached the end of the file, the upload is over once its last block is acknowledged.
+                if (data.length < blockSize) {
+                    filesHandler = null;
+                }
+            }
+            return window.size() == 0 ? null : window.toByteArray();
+        } catch (FileNotFoundException e) {
+            filesHandler.close();
+            filesHandler = null;
+            lastSentRequest = Operation.NO_OP;
+            wakeCLI();
+            print("file not exists");
+            return null;
+        } catch (IOException e) {
+            filesHandler.close();
+            filesHandler = null;
+            lastSentRequest = Operation.NO_OP;
+            wakeCLI();
+            print("IO error occurred");
+            return null;
+        }
+    }
+
     /**
      * Shouldn't return anything to the server.
      * Print to the terminal the following:
@@ -309,17 +641,22 @@ public class ClientCoordinator {
      * Print to the terminal the following:
      * Error err_number err_Message(if exist)
      * Should delete the file if the client is copying a file from the server and the server
-     * encountered an error.
+     * encountered an error, a partial file is kept when transfers are resumed.
      * Should reset the filesHandler to null if it's not null.
-     * Should also reset the directoryList to an empty string.
+     * Should also reset the directoryList to no bytes.
      * @param packet
      * @return
      */
     public byte[] handle(ErrorPacket packet) {
         print("Error " + packet.getErrorCode() + " " + packet.getErrorMessage());
-        if (lastSentRequest == Operation.RRQ) {
+        if (lastSentRequest == Operation.RRQ && filesHandler != null) {
             try {
-                filesHandler.DeleteFile();
+                filesHandler.close();
+                if (GlobalConstants.RESUME && filesHandler.fileSize() > 0) {
+                    filesHandler = null;
+                } else {
+                    filesHandler.DeleteFile();
+                }
                 filesHandler = null;
             }
             catch (Exception e) {
@@ -327,9 +664,12 @@ public class ClientCoordinator {
             }
         }
         else if (lastSentRequest == Operation.DIRQ) {
-            directoryList = new StringBuilder();
+            directoryList = new ByteArrayOutputStream();
         }
         else if (lastSentRequest == Operation.WRQ) {
+            if (filesHandler != null) {
+                filesHandler.close();
+            }
             filesHandler = null;
         }
         lastSentRequest = Operation.NO_OP;
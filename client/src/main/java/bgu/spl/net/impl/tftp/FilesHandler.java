@@ -1,6 +1,14 @@
 package bgu.spl.net.impl.tftp;
 
+import bgu.spl.net.impl.tftp.compression.Codec;
+import bgu.spl.net.impl.tftp.compression.CompressedBlocks;
+import bgu.spl.net.impl.tftp.compression.Decompressor;
+import bgu.spl.net.impl.tftp.integrity.Digest;
+import bgu.spl.net.impl.tftp.integrity.DigestAppender;
+import bgu.spl.net.impl.tftp.integrity.DigestVerifier;
+
 import java.io.*;
+import java.util.zip.CRC32C;
 
 import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
 import static bgu.spl.net.impl.tftp.GlobalConstants.WORK_DIR;
@@ -11,6 +19,34 @@ public class FilesHandler {
      * @Exception IllegalArgumentException If the file name is empty or contains a null character.
      */
     private String fileName;
+    /**
+     * Number of bytes written to the client's file, the next block is written after them.
+     */
+    private long written;
+    /**
+     * Position of the first block read from the client's file, not 0 when an upload is resumed.
+     */
+    private long readOffset;
+    /**
+     * Codec the file being uploaded is compressed with, null if it's sent as it is.
+     */
+    private Codec readCodec;
+    /**
+     * The compressed stream of the file being uploaded, opened when its first block is read.
+     */
+    private CompressedBlocks readBlocks;
+    /**
+     * Decompresses the file being downloaded, null if it's received as it is.
+     */
+    private Decompressor decompressor;
+    /**
+     * Sends the digest of the file being uploaded after its blocks, null if the upload isn't checked.
+     */
+    private DigestAppender readDigest;
+    /**
+     * Checks the digest of the file being downloaded, null if the download isn't checked.
+     */
+    private DigestVerifier verifier;
     public FilesHandler(String fileName) throws IllegalArgumentException{
         if (fileName.length() == 0 || fileName.contains("\0")) {
             throw new IllegalArgumentException("File name cannot contain null character or be empty");
@@ -28,21 +64,50 @@ public class FilesHandler {
      * @return The block of data. If the file is done reading, an empty array will be returned.
      * @throws RuntimeException If the file is not found or an I/O error occurred.
      */
-    public byte[] ReadFile(int block) throws RuntimeException, IOException {
+    public byte[] ReadFile(long block) throws RuntimeException, IOException {
+        return ReadFile(block, MAX_DATA_PACKET_SIZE);
+    }
+
+    /**
+     * Reads a block of data from the client's file, with a negotiated block size.
+     * If the file is done reading, the file name will be set to null.
+     * @param block The block to read.
+     * @param blockSize The transfer's block size.
+     * @return The block of data. If the file is done reading, an empty array will be returned.
+     * @throws RuntimeException If the file is not found or an I/O error occurred.
+     */
+    public byte[] ReadFile(long block, int blockSize) throws RuntimeException, IOException {
+        if (readDigest == null) {
+            return readBlock(block, blockSize);
+        }
+        // The blocks of a checked upload are followed by their digest.
+        byte[] output = readDigest.trailerBlock(block);
+        if (output == null) {
+            output = readDigest.add(block, readBlock(block, blockSize));
+        }
+        return output;
+    }
+
+    /**
+     * Reads a block of the client's file, compressed if the upload is.
+     * @param block The block to read.
+     * @param blockSize The transfer's block size.
+     * @return The block, shorter than the block size if it's the last one.
+     * @throws IOException If the file is not found or an I/O error occurred.
+     */
+    private byte[] readBlock(long block, int blockSize) throws IOException {
+        if (readCodec != null) {
+            return readCompressed(block, blockSize);
+        }
         try {
             InputStream stream = new FileInputStream(new File(WORK_DIR + fileName));
-            long skipBytes = block * MAX_DATA_PACKET_SIZE;
+            long skipBytes = readOffset + block * blockSize;
             stream.skip(skipBytes);
-            byte[] output = new byte[MAX_DATA_PACKET_SIZE];
-            int read = stream.read(output);
+            // Large blocks may take several reads, the array is only as long as what was read.
+            byte[] output = stream.readNBytes(blockSize);
             stream.close();
-            if(read == -1) {
-                return new byte[0];
-            } else if (read < MAX_DATA_PACKET_SIZE) {
+            if (output.length > 0 && output.length < blockSize) {
                 fileName = null;
-                byte[] trimmed = new byte[read];
-                System.arraycopy(output, 0, trimmed, 0, read);
-                return trimmed;
             }
             return output;
         } catch (FileNotFoundException e) {
@@ -54,6 +119,87 @@ public class FilesHandler {
         }
     }
 
+    /**
+     * Reads a block of the compressed stream of the client's file, blocks are read in order.
+     * @param block The block to read.
+     * @param blockSize The transfer's block size.
+     * @return The block, shorter than the block size if it's the last one.
+     * @throws IOException If the file is not found or an I/O error occurred.
+     */
+    private byte[] readCompressed(long block, int blockSize) throws IOException {
+        try {
+            if (readBlocks == null) {
+                InputStream stream = new FileInputStream(new File(WORK_DIR + fileName));
+                stream.skipNBytes(readOffset);
+                readBlocks = new CompressedBlocks(stream, readCodec.newCompressor(), blockSize);
+            }
+            while (readBlocks.nextBlock() < block) {
+                readBlocks.next();
+            }
+            byte[] output = readBlocks.next();
+            if (output.length < blockSize) {
+                close();
+                fileName = null;
+            }
+            return output;
+        } catch (IOException e) {
+            close();
+            fileName = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the file being uploaded compressed as a single stream.
+     * @param codec The codec the server agreed to.
+     */
+    public void compress(Codec codec) {
+        readCodec = codec;
+    }
+
+    /**
+     * Receives the file being downloaded compressed as a single stream.
+     * @param codec The codec the server agreed to.
+     */
+    public void decompress(Codec codec) {
+        decompressor = codec.newDecompressor();
+    }
+
+    /**
+     * Sends the digest of the file being uploaded after its blocks.
+     * @param digest The digest the server agreed to.
+     * @param blockSize The transfer's block size.
+     */
+    public void appendDigest(Digest digest, int blockSize) {
+        readDigest = new DigestAppender(digest, blockSize);
+    }
+
+    /**
+     * Checks the digest the last block of the file being downloaded carries.
+     * @param digest The digest the server agreed to.
+     */
+    public void verifyDigest(Digest digest) {
+        verifier = new DigestVerifier(digest);
+    }
+
+    /**
+     * Releases the compression resources of the file's transfer, if it's compressed.
+     */
+    public void close() {
+        if (readBlocks != null) {
+            try {
+                readBlocks.close();
+            } catch (IOException e) {
+                // The file was only read.
+            }
+            readBlocks = null;
+        }
+        if (decompressor != null) {
+            decompressor.end();
+            decompressor = null;
+        }
+    }
+
     /**
      * Writes a block of data to the client's file.
      * If the file is done writing, the file name will be set to null.
@@ -65,11 +211,17 @@ public class FilesHandler {
         if (fileName == null) {
             throw new IllegalStateException("No file currently being written to.");
         }
-        try {
-            File file = new File(WORK_DIR + fileName);
-            OutputStream stream = new FileOutputStream(file, true);
-            stream.write(data, 0, data.length);
-            stream.close();
+        // The file may have been preallocated, so blocks are written at their position rather than appended.
+        try (RandomAccessFile file = new RandomAccessFile(WORK_DIR + fileName, "rw")) {
+            if (verifier != null) {
+                data = verifier.update(data);
+            }
+            if (decompressor != null) {
+                data = decompressor.decompress(data);
+            }
+            file.seek(written);
+            file.write(data, 0, data.length);
+            written += data.length;
         } catch (FileNotFoundException e) {
             fileName = null;
             throw new RuntimeException(e);
@@ -79,6 +231,102 @@ public class FilesHandler {
         }
     }
 
+    /**
+     * Extends the file being downloaded to its final size before its data arrives, so its space is allocated
+     * at once rather than block by block.
+     * @param size The file's size, as sent by the server.
+     * @throws IOException If the file could not be extended.
+     */
+    public void preallocate(long size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(WORK_DIR + fileName, "rw")) {
+            file.setLength(size);
+        }
+    }
+
+    /**
+     * Cuts the file after the data that was written, a preallocated file is longer if the server's file shrank.
+     * @throws IOException If the file could not be cut, if the compressed data ended early or if the file's
+     * checksum doesn't match.
+     */
+    public void endWrite() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(WORK_DIR + fileName, "rw")) {
+            if (file.length() > written) {
+                file.setLength(written);
+            }
+        }
+        if (verifier != null) {
+            boolean matches = verifier.verify();
+            verifier = null;
+            if (!matches) {
+                close();
+                throw new IOException("The file's checksum doesn't match.");
+            }
+        }
+        if (decompressor != null) {
+            boolean finished = decompressor.isFinished();
+            close();
+            if (!finished) {
+                throw new IOException("The compressed data ended early.");
+            }
+        }
+    }
+
+    /**
+     * @return Number of bytes of the client's file that were written, including a resumed partial file.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Continues a download after the bytes of the client's file the server accepted, the rest of the file is cut.
+     * @param offset Number of bytes the client already has.
+     * @throws IOException If the file could not be cut.
+     */
+    public void resumeWrite(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(WORK_DIR + fileName, "rw")) {
+            file.setLength(offset);
+        }
+        written = offset;
+    }
+
+    /**
+     * Continues an upload after the bytes the server already has, blocks are read from the offset.
+     * @param offset Number of bytes the server already has.
+     */
+    public void resumeRead(long offset) {
+        readOffset = offset;
+    }
+
+    /**
+     * @param length Number of bytes from the file's start to check, at most the file's size.
+     * @return CRC32C of the client's file's first bytes.
+     * @throws IOException If the file could not be read.
+     */
+    public long prefixChecksum(long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream stream = new FileInputStream(WORK_DIR + fileName)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = stream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return The size of the client's file, 0 if it doesn't exist.
+     */
+    public long fileSize() {
+        return new File(WORK_DIR + fileName).length();
+    }
+
     /**
      * Deletes the client's file.
      * @throws RuntimeException If the file is not found or an I/O error occurred.
@@ -113,6 +361,6 @@ public class FilesHandler {
      * @return True if and only if the file exists.
      */
     public boolean fileExists() {
-        return new File(fileName).exists();
+        return new File(WORK_DIR + fileName).exists();
     }
 }
@@ -8,9 +8,112 @@ import java.nio.charset.StandardCharsets;
  */
 public class GlobalConstants {
     /**
-     * Max size of data in bytes the data-packet is allowed to transmit per packet.
+     * Max size of data in bytes the data-packet is allowed to transmit per packet, unless a different block size
+     * was negotiated for the transfer.
      */
     public static final short MAX_DATA_PACKET_SIZE = 512;
+    /**
+     * Range of block sizes that can be negotiated with the {@link #BLOCK_SIZE_OPTION} (RFC 2348).
+     */
+    public static final int MIN_BLOCK_SIZE = 8;
+    public static final int MAX_BLOCK_SIZE = 65464;
+    /**
+     * Set in the op code of RRQ/WRQ packets which carry options after the file name.
+     * The options are pairs of name and value strings, and the packet ends with an empty string.
+     */
+    public static final int OPTIONS_FLAG = 0x8000;
+    /**
+     * Set in the op code of packets which belong to one of several transfers running at once over a connection.
+     * The transfer ID follows the op code as a 2 bytes unsigned number, the rest of the packet is laid out as if it
+     * wasn't tagged. Only RRQ, WRQ, DIRQ, DATA, ACK, ERROR and OACK packets are tagged, transfer ID 0 is the
+     * connection's untagged transfer.
+     */
+    public static final int TRANSFER_ID_FLAG = 0x4000;
+    /**
+     * The block size option (RFC 2348).
+     */
+    public static final String BLOCK_SIZE_OPTION = "blksize";
+    /**
+     * The window size option (RFC 7440), number of blocks sent before they must be acknowledged.
+     * Acknowledgements are cumulative and the receiver acknowledges the last block of every window.
+     */
+    public static final String WINDOW_SIZE_OPTION = "windowsize";
+    public static final int MAX_WINDOW_SIZE = 65535;
+    /**
+     * The credit option, streams the transfer instead of acknowledging windows.
+     * The sender may run up to credit blocks ahead of the last acknowledged block, and the receiver acknowledges
+     * every credit / 2 blocks, granting more credit before the sender runs out of it. The transfer never waits for
+     * an acknowledgement, TCP already delivers the blocks reliably and in order.
+     * Takes precedence over the {@link #WINDOW_SIZE_OPTION}.
+     */
+    public static final String CREDIT_OPTION = "credit";
+    public static final int MAX_CREDIT = 65535;
+    /**
+     * The transfer size option, as in RFC 2349.
+     * A WRQ declares the file's size so the server can reserve its space, a RRQ asks with 0 and the server answers
+     * with the file's size.
+     */
+    public static final String TRANSFER_SIZE_OPTION = "tsize";
+    /**
+     * Resumes an interrupted transfer after the bytes the receiver already has.
+     * A RRQ carries the length of the client's partial file and the server answers with the offset the download
+     * starts at, 0 if the partial file doesn't match. A WRQ carries 0 and the server answers with the length of
+     * its partial file.
+     */
+    public static final String OFFSET_OPTION = "offset";
+    /**
+     * CRC32C of the bytes before the offset, in hexadecimal, the side which doesn't have the partial file checks
+     * it against its own file before the transfer is resumed.
+     */
+    public static final String OFFSET_CHECKSUM_OPTION = "offsetcrc";
+    /**
+     * Sends the transfer's data compressed as a single stream, cut into blocks like uncompressed data.
+     * A request lists the codecs it supports separated by commas, in the order it prefers them, and the answer holds
+     * the codec that was chosen. See {@link bgu.spl.net.impl.tftp.compression.Codecs}.
+     */
+    public static final String COMPRESSION_OPTION = "compress";
+    /**
+     * Sends the digest of the transfer's data right after it, in the last block, and the receiver checks it before
+     * the file is complete. The data is the transfer's blocks as they're sent, compressed if they are.
+     * A request lists the digests it supports separated by commas, crc32c or the strong sha256, in the order it
+     * prefers them, and the answer holds the digest that was chosen.
+     * See {@link bgu.spl.net.impl.tftp.integrity.Digests}.
+     */
+    public static final String CHECKSUM_OPTION = "checksum";
+    /**
+     * Block size requested for file transfers, 0 to transfer files with the default block size without negotiating.
+     */
+    public static final int REQUESTED_BLOCK_SIZE = Integer.getInteger("tftp.blksize", 0);
+    /**
+     * Window size requested for file transfers, 0 to send one block per acknowledgement without negotiating.
+     */
+    public static final int REQUESTED_WINDOW_SIZE = Integer.getInteger("tftp.windowsize", 0);
+    /**
+     * Credit requested to stream file transfers, 0 to not stream them.
+     */
+    public static final int REQUESTED_CREDIT = Integer.getInteger("tftp.credit", 0);
+    /**
+     * Whether file transfers exchange the file's size, to report the progress of downloads.
+     */
+    public static final boolean REQUESTED_TRANSFER_SIZE = Boolean.getBoolean("tftp.tsize");
+    /**
+     * Whether interrupted transfers are resumed, a download continues the local partial file and an upload continues
+     * the server's partial file.
+     */
+    public static final boolean RESUME = Boolean.getBoolean("tftp.resume");
+    /**
+     * Number of RRQ/WRQ/DIRQ transfers that may run at once over the connection, tagged with their transfer IDs.
+     * 0 runs one request at a time without transfer IDs, the CLI waits for each request to end.
+     */
+    public static final int TRANSFERS = Integer.getInteger("tftp.transfers", 0);
+    /**
+     * Codecs file transfers ask to be compressed with, separated by commas, empty to send the data as it is.
+     */
+    public static final String REQUESTED_COMPRESSION = System.getProperty("tftp.compress", "");
+    /**
+     * Digests file transfers are checked with, separated by commas, empty to send the data without a digest.
+     */
+    public static final String REQUESTED_CHECKSUM = System.getProperty("tftp.checksum", "");
     /**
      * The default encoding format to use within this project.
      */
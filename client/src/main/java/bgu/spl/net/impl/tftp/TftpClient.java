@@ -26,7 +26,8 @@ public class TftpClient {
         print("Attempting to connect to server");
 
         try (Socket sock = new Socket(host, port);
-             InputStream in = sock.getInputStream();
+             // Packets are decoded byte by byte, read them from a buffer rather than one system call per byte.
+             InputStream in = new BufferedInputStream(sock.getInputStream());
              OutputStream out = sock.getOutputStream()
         ) {
             protocol.setOutputStream(out);
@@ -44,7 +45,10 @@ public class TftpClient {
                     byte[] response = protocol.process(msg);
                     // If the server waits for our response:
                     if (response != null) {
-                        out.write(encdec.encode(response));
+                        // Requests of the CLI are written to the same stream.
+                        synchronized (out) {
+                            out.write(encdec.encode(response));
+                        }
                     }
                 }
             }
@@ -2,79 +2,186 @@ package bgu.spl.net.impl.tftp;
 
 import bgu.spl.net.api.MessageEncoderDecoder;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OPTIONS_FLAG;
 import static bgu.spl.net.impl.tftp.GlobalConstants.TERMINATOR;
+import static bgu.spl.net.impl.tftp.GlobalConstants.TRANSFER_ID_FLAG;
 import static bgu.spl.net.impl.tftp.Operation.*;
 
+/**
+ * Frames TFTP packets out of a byte stream.
+ * The packet being decoded is kept in a primitive buffer that is reused between packets and only grows when a
+ * packet doesn't fit. Once the op code is known the decoder knows the packet's layout: either a fixed length
+ * (DIRQ, DISC, ACK and DATA once its size field arrived) or a terminator that ends the packet after its header.
+ * Packets with options (OACK and flagged RRQ/WRQ) hold several strings and end with an empty one.
+ * Tagged packets have the same layout after their transfer ID.
+ */
 public class TftpEncoderDecoder implements MessageEncoderDecoder<byte[]> {
-    private LinkedList<Byte> message;
+    private static final int OPCODE_SIZE = 2;
+    private static final int TRANSFER_ID_SIZE = 2;
+    /**
+     * Lengths past the op code (and the transfer ID of tagged packets).
+     */
+    private static final int ACK_FIELDS_SIZE = 2;
+    private static final int DATA_FIELDS_SIZE = 4;
+    /**
+     * Header lengths of terminated packets which have fields before their string.
+     */
+    private static final int ERROR_HEADER_SIZE = 4;
+    private static final int BCAST_HEADER_SIZE = 3;
+
+    private byte[] buffer;
+    private int size;
     private Operation operation;
-    private boolean isData;
-    private boolean isWeird;
-    private int weirdness;
+    /**
+     * The length of the current packet, -1 if it isn't known (yet).
+     */
     private int packetSize;
+    /**
+     * Index from which a terminator ends the current packet, -1 if the packet isn't terminated.
+     */
+    private int terminatorFrom;
+    /**
+     * Whether the current packet ends with an empty string rather than with its first terminator.
+     */
+    private boolean endsWithEmptyString;
+    /**
+     * Index of the current DATA packet's size field, after the transfer ID if the packet is tagged.
+     */
+    private int dataSizeField;
 
     public TftpEncoderDecoder() {
-        message = new LinkedList<>();
-        operation = NO_OP;
-        packetSize = -1;
-        isData = false;
-        isWeird = false;
-        weirdness = 0;
+        buffer = new byte[OPCODE_SIZE + DATA_FIELDS_SIZE + MAX_DATA_PACKET_SIZE];
+        reset();
     }
 
     @Override
     public byte[] decodeNextByte(byte nextByte) {
-        message.add(nextByte);
-        // Determine op code:
-        if(message.size() == 2) {
-            // for debug purposes:
-            short opCode = EncodeDecodeHelper.byteToShort(new byte[]{message.getFirst(), message.getLast()});
-            operation = Operation.OPS[opCode];
-            // determine length to read if not terminated by delimiter.
-            if(operation == DIRQ || operation == DISC) {
-                // those are ending after 2 bytes.
-                packetSize = 2;
-            } else if(operation == DATA) {
-                // if that's a data packet, wait until the 4'th byte was read.
-                isData = true;
-            } else if (operation == ACK) {
-                packetSize = 4;
-            } else if(operation == ERROR || operation == BCAST) {
-                isWeird = true;
-                weirdness = operation == ERROR ? 6 : 5;
-            }
-        }
-        if(isData && message.size() == 4) {
-            packetSize = EncodeDecodeHelper.byteToShort(new byte[]{message.get(2), message.getLast()}) + 6;
+        append(nextByte);
+        if(size == OPCODE_SIZE) {
+            determineLayout();
+        } else if(operation == DATA && size == dataSizeField + 2) {
+            packetSize = dataSizeField + DATA_FIELDS_SIZE + readUnsignedShort(dataSizeField);
         }
         if(messageComplete()) {
-            byte[] result = new byte[message.size()];
-            int i = 0;
-            for(byte b : message) {
-                result[i] = b;
-                i++;
-            }
-            // reset for next message
-            message = new LinkedList<>();
-            operation = NO_OP;
-            packetSize = -1;
-            isData = false;
-            isWeird = false;
-            return result;
+            return popMessage();
         }
         return null;
     }
 
     public boolean messageComplete() {
-        return (!isWeird) && (operation.TERMINATED && message.getLast().equals(TERMINATOR))
-                || (message.size() == packetSize)
-                || (isWeird && message.size() > weirdness && message.getLast().equals(TERMINATOR));
+        if(packetSize >= 0) {
+            return size == packetSize;
+        }
+        if(terminatorFrom < 0 || size <= terminatorFrom || buffer[size - 1] != TERMINATOR) {
+            return false;
+        }
+        // The empty string is a terminator right after the terminator of a non-empty string.
+        return !endsWithEmptyString || (size - 2 > terminatorFrom && buffer[size - 2] == TERMINATOR);
     }
 
     @Override
     public byte[] encode(byte[] message) {
         return message;
     }
-}
\ No newline at end of file
+
+    /**
+     * Determines how the current packet ends according to its op code.
+     * Unknown op codes are passed on as 2 bytes packets so the protocol can reject them.
+     */
+    private void determineLayout() {
+        int opCode = readUnsignedShort(0);
+        boolean options = (opCode & OPTIONS_FLAG) != 0;
+        boolean tagged = (opCode & TRANSFER_ID_FLAG) != 0;
+        opCode &= ~(OPTIONS_FLAG | TRANSFER_ID_FLAG);
+        operation = opCode < Operation.OPS.length ? Operation.OPS[opCode] : NO_OP;
+        if(options && operation != RRQ && operation != WRQ) {
+            // Only requests can carry options.
+            operation = NO_OP;
+        }
+        if(tagged && !isTransferOperation(operation)) {
+            operation = NO_OP;
+        }
+        endsWithEmptyString = options || operation == OACK;
+        // The fields of a tagged packet start after its transfer ID.
+        int header = operation != NO_OP && tagged ? OPCODE_SIZE + TRANSFER_ID_SIZE : OPCODE_SIZE;
+        switch(operation) {
+            case ACK:
+                packetSize = header + ACK_FIELDS_SIZE;
+                break;
+            case DATA:
+                // Length is known once the size field was read.
+                dataSizeField = header;
+                break;
+            case ERROR:
+                terminatorFrom = header - OPCODE_SIZE + ERROR_HEADER_SIZE;
+                break;
+            case BCAST:
+                terminatorFrom = BCAST_HEADER_SIZE;
+                break;
+            case RRQ:
+            case WRQ:
+            case OACK:
+            case LOGRQ:
+            case DELRQ:
+                terminatorFrom = header;
+                break;
+            default:
+                // DIRQ, DISC and unknown op codes end after the op code.
+                packetSize = header;
+        }
+    }
+
+    /**
+     * @return Whether packets of the operation may be tagged with a transfer ID.
+     */
+    private static boolean isTransferOperation(Operation operation) {
+        switch(operation) {
+            case RRQ:
+            case WRQ:
+            case DIRQ:
+            case DATA:
+            case ACK:
+            case ERROR:
+            case OACK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int readUnsignedShort(int index) {
+        return ((buffer[index] & 0xff) << 8) | (buffer[index + 1] & 0xff);
+    }
+
+    private void append(byte nextByte) {
+        ensureCapacity(size + 1);
+        buffer[size] = nextByte;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    /**
+     * @return The decoded packet, the decoder is reset for the next one without reallocating its buffer.
+     */
+    private byte[] popMessage() {
+        byte[] result = Arrays.copyOf(buffer, size);
+        reset();
+        return result;
+    }
+
+    private void reset() {
+        size = 0;
+        operation = NO_OP;
+        packetSize = -1;
+        terminatorFrom = -1;
+        endsWithEmptyString = false;
+    }
+}
@@ -14,6 +14,10 @@ public class TftpProtocol implements MessagingProtocol<byte[]> {
      */
     private volatile boolean terminate = false;
     private final ClientCoordinator coordinator;
+    /**
+     * Coordinators of the connection's tagged transfers by their transfer IDs, created when first needed.
+     */
+    private final ClientCoordinator[] transfers = new ClientCoordinator[GlobalConstants.TRANSFERS + 1];
     private final TftpEncoderDecoder encdec;
     private OutputStream out;
 
@@ -27,6 +31,36 @@ public class TftpProtocol implements MessagingProtocol<byte[]> {
         return coordinator;
     }
 
+    /**
+     * @return the coordinator of a tagged transfer that doesn't run a request, or null if all of them do.
+     */
+    public synchronized ClientCoordinator idleTransfer() {
+        for (int transferId = 1; transferId < transfers.length; transferId++) {
+            if (transfers[transferId] == null) {
+                transfers[transferId] = new ClientCoordinator(this, transferId);
+            }
+            if (transfers[transferId].isIdle()) {
+                return transfers[transferId];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits until every tagged transfer has ended.
+     */
+    public void awaitTransfers() {
+        for (int transferId = 1; transferId < transfers.length; transferId++) {
+            ClientCoordinator transfer;
+            synchronized (this) {
+                transfer = transfers[transferId];
+            }
+            if (transfer != null) {
+                transfer.waitEndHandle();
+            }
+        }
+    }
+
     /**
      * Effectively assigns the output stream to write messages to the server (used only to send requests).
      * @param out Sockets output stream.
@@ -53,20 +87,51 @@ public class TftpProtocol implements MessagingProtocol<byte[]> {
             throw new RuntimeException("Message received without operation code");
         }
         // Retrieve op code:
-        short opCode = EncodeDecodeHelper.byteToShort(new byte[]{msg[0], msg[1]});
+        int opCode = EncodeDecodeHelper.byteToShort(new byte[]{msg[0], msg[1]}) & 0xffff;
+        // Tagged packets are handled by their transfer's coordinator as if they weren't tagged.
+        ClientCoordinator target = coordinator;
+        if ((opCode & GlobalConstants.TRANSFER_ID_FLAG) != 0 && msg.length >= 4) {
+            int transferId = EncodeDecodeHelper.byteToShort(new byte[]{msg[2], msg[3]}) & 0xffff;
+            opCode &= ~GlobalConstants.TRANSFER_ID_FLAG;
+            msg = untag(msg, opCode);
+            synchronized (this) {
+                target = transferId < transfers.length ? transfers[transferId] : null;
+            }
+            if (target == null) {
+                // Not a transfer of this client.
+                return null;
+            }
+        }
+        if (opCode >= Operation.OPS.length) {
+            throw new RuntimeException("Unknown operation code");
+        }
         Operation op = Operation.OPS[opCode];
-        return processHelper(msg, op);
+        return processHelper(target, msg, op);
+    }
+
+    /**
+     * @param msg a tagged packet.
+     * @param opCode the packet's op code, without the transfer ID's flag.
+     * @return the packet without its transfer ID.
+     */
+    private static byte[] untag(byte[] msg, int opCode) {
+        byte[] untagged = new byte[msg.length - 2];
+        System.arraycopy(EncodeDecodeHelper.shortToByte((short) opCode), 0, untagged, 0, 2);
+        System.arraycopy(msg, 4, untagged, 2, untagged.length - 2);
+        return untagged;
     }
 
     /**
      * Creates the response to the server based on the operation code.
      * Creates the relevant packet and sends it to the clientCoordinator to handle.
+     * @param coordinator the coordinator of the transfer the message belongs to
      * @param msg the received message from the server
      * @param op the operation code of the received message
      * @return the response to send back to the server or null if no response is expected by the client
      * @exception RuntimeException if the message received without operation code or unknown operation code
      */
-    private byte[] processHelper(byte[] msg, Operation op) throws RuntimeException{
+    private static byte[] processHelper(ClientCoordinator coordinator, byte[] msg, Operation op)
+            throws RuntimeException{
         switch (op) {
             case BCAST:
                 return coordinator.handle(new BroadcastPacket(msg));
@@ -76,14 +141,24 @@ public class TftpProtocol implements MessagingProtocol<byte[]> {
                 return coordinator.handle(new ErrorPacket(msg));
             case ACK:
                 return coordinator.handle(new AcknowledgementPacket(msg));
+            case OACK:
+                return coordinator.handle(new OptionAcknowledgementPacket(msg));
             default:
                 throw new RuntimeException("Unknown operation code");
         }
     }
 
+    /**
+     * Sends a request to the server.
+     * Requests and the listener's responses of transfers running at once share the stream, so whole packets are
+     * written while holding the stream's lock.
+     * @param msg the request.
+     */
     public void send(AbstractPacket msg) {
         try {
-            out.write(encdec.encode(msg.getBytes()));
+            synchronized (out) {
+                out.write(encdec.encode(msg.getBytes()));
+            }
         } catch (IOException e) {
             print(e.getMessage());
         }
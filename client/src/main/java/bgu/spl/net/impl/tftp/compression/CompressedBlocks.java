@@ -0,0 +1,83 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts the compressed stream of a transfer's data into blocks, the data is read and compressed as blocks are needed.
+ * Like uncompressed data, the stream ends with the first block shorter than the block size.
+ */
+public class CompressedBlocks implements Closeable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final Compressor compressor;
+    private final int blockSize;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    /**
+     * Compressed bytes which weren't cut into a block yet.
+     */
+    private byte[] pending = new byte[0];
+    private int pendingLength;
+    /**
+     * Whether all the data was read and compressed.
+     */
+    private boolean finished;
+    /**
+     * Number of the next block, starting from 0.
+     */
+    private long nextBlock;
+
+    /**
+     * @param input The data, closed with the blocks.
+     * @param compressor Compresses the data, ended with the blocks.
+     * @param blockSize The transfer's block size.
+     */
+    public CompressedBlocks(InputStream input, Compressor compressor, int blockSize) {
+        this.input = input;
+        this.compressor = compressor;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return Number of the block {@link #next()} returns, starting from 0.
+     */
+    public long nextBlock() {
+        return nextBlock;
+    }
+
+    /**
+     * @return The next block of the compressed stream, shorter than the block size if it's the last one and empty
+     * after it.
+     * @throws IOException If the data could not be read.
+     */
+    public byte[] next() throws IOException {
+        while(pendingLength < blockSize && !finished) {
+            int read = input.read(chunk);
+            finished = read < 0;
+            append(compressor.compress(chunk, 0, Math.max(read, 0), finished));
+        }
+        int length = Math.min(blockSize, pendingLength);
+        byte[] block = Arrays.copyOf(pending, length);
+        System.arraycopy(pending, length, pending, 0, pendingLength - length);
+        pendingLength -= length;
+        nextBlock++;
+        return block;
+    }
+
+    private void append(byte[] compressed) {
+        if(pendingLength + compressed.length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pendingLength + compressed.length, blockSize * 2));
+        }
+        System.arraycopy(compressed, 0, pending, pendingLength, compressed.length);
+        pendingLength += compressed.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compressor.end();
+        input.close();
+    }
+}
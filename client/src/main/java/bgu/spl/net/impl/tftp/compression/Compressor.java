@@ -0,0 +1,20 @@
+package bgu.spl.net.impl.tftp.compression;
+
+/**
+ * Compresses the data of one transfer as a single stream, the data is passed in the order it's sent.
+ */
+public interface Compressor {
+    /**
+     * @param input Holds the next bytes of the data.
+     * @param offset Index of the first byte.
+     * @param length Number of bytes.
+     * @param last Whether these bytes end the data, the stream is completed after them.
+     * @return The compressed bytes the input produced, may be empty until enough data was passed.
+     */
+    byte[] compress(byte[] input, int offset, int length, boolean last);
+
+    /**
+     * Releases the compressor's resources, it must not be used afterwards.
+     */
+    void end();
+}
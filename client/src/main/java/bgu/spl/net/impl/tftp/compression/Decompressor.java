@@ -0,0 +1,25 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import java.io.IOException;
+
+/**
+ * Decompresses the data of one transfer, the compressed blocks are passed in the order they were received.
+ */
+public interface Decompressor {
+    /**
+     * @param input The next compressed bytes.
+     * @return The data they hold, may be empty.
+     * @throws IOException If the bytes aren't a valid compressed stream.
+     */
+    byte[] decompress(byte[] input) throws IOException;
+
+    /**
+     * @return Whether the end of the compressed stream was reached, a transfer whose stream didn't end is incomplete.
+     */
+    boolean isFinished();
+
+    /**
+     * Releases the decompressor's resources, it must not be used afterwards.
+     */
+    void end();
+}
@@ -0,0 +1,92 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate in the zlib format, whose checksum also catches corrupted data.
+ * The same data always compresses to the same stream, so compressed blocks can be cached.
+ */
+public class DeflateCodec implements Codec {
+    public static final String NAME = "deflate";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Compressor newCompressor() {
+        final Deflater deflater = new Deflater();
+        return new Compressor() {
+            private final byte[] buffer = new byte[BUFFER_SIZE];
+
+            @Override
+            public byte[] compress(byte[] input, int offset, int length, boolean last) {
+                deflater.setInput(input, offset, length);
+                if(last) {
+                    deflater.finish();
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                while(last ? !deflater.finished() : !deflater.needsInput()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return output.toByteArray();
+            }
+
+            @Override
+            public void end() {
+                deflater.end();
+            }
+        };
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        final Inflater inflater = new Inflater();
+        return new Decompressor() {
+            private final byte[] buffer = new byte[BUFFER_SIZE];
+
+            @Override
+            public byte[] decompress(byte[] input) throws IOException {
+                if(inflater.finished()) {
+                    if(input.length > 0) {
+                        throw new IOException("Data after the end of the compressed stream.");
+                    }
+                    return input;
+                }
+                inflater.setInput(input);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try {
+                    while(!inflater.finished() && !inflater.needsInput()) {
+                        int inflated = inflater.inflate(buffer);
+                        if(inflated == 0 && inflater.needsDictionary()) {
+                            throw new IOException("Compressed stream needs a dictionary.");
+                        }
+                        output.write(buffer, 0, inflated);
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Invalid compressed data.", e);
+                }
+                if(inflater.finished() && inflater.getRemaining() > 0) {
+                    throw new IOException("Data after the end of the compressed stream.");
+                }
+                return output.toByteArray();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return inflater.finished();
+            }
+
+            @Override
+            public void end() {
+                inflater.end();
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+/**
+ * The digests transfers can be checked with, by their names.
+ */
+public final class Digests {
+    private Digests() {
+    }
+
+    /**
+     * @param name The digest's name.
+     * @return A new digest for one transfer, or null if there is no such digest.
+     */
+    public static Digest create(String name) {
+        if(name == null) {
+            return null;
+        }
+        switch(name.trim().toLowerCase()) {
+            case Crc32cDigest.NAME:
+                return new Crc32cDigest();
+            case Sha256Digest.NAME:
+                return new Sha256Digest();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param requested Digest names separated by commas, in the order they are preferred.
+     * @return The name of the first digest that's available, or null if none is.
+     */
+    public static String choose(String requested) {
+        if(requested == null) {
+            return null;
+        }
+        for(String name : requested.split(",")) {
+            Digest digest = create(name);
+            if(digest != null) {
+                return digest.name();
+            }
+        }
+        return null;
+    }
+}
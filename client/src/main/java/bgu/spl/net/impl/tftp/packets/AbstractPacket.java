@@ -1,9 +1,14 @@
 package bgu.spl.net.impl.tftp.packets;
 
 import bgu.spl.net.impl.tftp.ClientCoordinator;
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.GlobalConstants;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class AbstractPacket {
     /**
@@ -15,6 +20,11 @@ public abstract class AbstractPacket {
      * If not null, the packet will be broadcast to all the connections.
      */
     public BroadcastPacket broadcast;
+    /**
+     * The transfer the packet belongs to when the connection runs several transfers at once, 0 if it isn't tagged.
+     * @see GlobalConstants#TRANSFER_ID_FLAG
+     */
+    private int transferId;
 
     /**
      * Default Constructor for creating a packet. All packets must have an opcode.
@@ -52,6 +62,36 @@ public abstract class AbstractPacket {
         }
     }
 
+    /**
+     * @return The transfer the packet belongs to, 0 if it isn't tagged.
+     */
+    public int getTransferId() {
+        return transferId;
+    }
+
+    /**
+     * Tags the packet with the transfer it belongs to.
+     * @param transferId The transfer's ID, 0 to leave the packet untagged.
+     */
+    public void setTransferId(int transferId) {
+        this.transferId = transferId;
+    }
+
+    /**
+     * @param flags Flags to set in the op code, other than the transfer ID's flag.
+     * @return The op code, followed by the transfer ID if the packet is tagged.
+     */
+    protected byte[] opCodeBytes(int flags) {
+        if(transferId == 0) {
+            return EncodeDecodeHelper.shortToByte((short) (opCode | flags));
+        }
+        byte[] tagged = new byte[4];
+        System.arraycopy(EncodeDecodeHelper.shortToByte((short) (opCode | flags | GlobalConstants.TRANSFER_ID_FLAG)),
+                0, tagged, 0, 2);
+        System.arraycopy(EncodeDecodeHelper.shortToByte((short) transferId), 0, tagged, 2, 2);
+        return tagged;
+    }
+
     /**
      * Get the opcode of the packet.
      * @return the opcode of the packet.
@@ -61,6 +101,61 @@ public abstract class AbstractPacket {
         return opCode;
     }
 
+    /**
+     * Finds the terminator that ends a string in a packet.
+     * @param packet The packet.
+     * @param from Index of the string's first byte.
+     * @return The terminator's index.
+     * @exception IllegalArgumentException if the string isn't terminated.
+     */
+    protected static int indexOfTerminator(byte[] packet, int from) throws IllegalArgumentException {
+        for(int i = from; i < packet.length; i++) {
+            if(packet[i] == GlobalConstants.TERMINATOR) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("The packet's string is not terminated.");
+    }
+
+    /**
+     * Reads options out of a packet, pairs of name and value strings that end with an empty string.
+     * @param packet The received packet.
+     * @param from Index of the first option's name.
+     * @return The options by their names in lower case, in the order they were sent.
+     * @exception IllegalArgumentException if the options are malformed.
+     */
+    protected static Map<String, String> readOptions(byte[] packet, int from) throws IllegalArgumentException {
+        Map<String, String> options = new LinkedHashMap<>();
+        int index = from;
+        while(index < packet.length && packet[index] != GlobalConstants.TERMINATOR) {
+            int nameEnd = indexOfTerminator(packet, index);
+            int valueEnd = indexOfTerminator(packet, nameEnd + 1);
+            String name = new String(packet, index, nameEnd - index, GlobalConstants.ENCODING_FORMAT);
+            String value = new String(packet, nameEnd + 1, valueEnd - nameEnd - 1, GlobalConstants.ENCODING_FORMAT);
+            options.put(name.toLowerCase(), value);
+            index = valueEnd + 1;
+        }
+        return options;
+    }
+
+    /**
+     * Encodes options, each name and value followed by a terminator.
+     * The empty string which ends the options is not included.
+     * @param options The options.
+     * @return The encoded options.
+     */
+    protected static List<byte[]> optionsBytes(Map<String, String> options) {
+        List<byte[]> bytes = new ArrayList<>();
+        byte[] terminator = {GlobalConstants.TERMINATOR};
+        for(Map.Entry<String, String> option : options.entrySet()) {
+            bytes.add(option.getKey().getBytes(GlobalConstants.ENCODING_FORMAT));
+            bytes.add(terminator);
+            bytes.add(option.getValue().getBytes(GlobalConstants.ENCODING_FORMAT));
+            bytes.add(terminator);
+        }
+        return bytes;
+    }
+
     /**
      * Utility function that concats arrays together.
      * @param arrays Collection of byte arrays to combine.
@@ -11,9 +11,11 @@ import java.util.Arrays;
  * This class represents a Data Packet.
  * Opcode designated by: {@link Operation#DATA}
  * A Data packet is used to transfer data from the client to the server or vice versa.
- * The data field is a sequence of 0 to {@link GlobalConstants#MAX_DATA_PACKET_SIZE} bytes of data.
- * If it is {@link GlobalConstants#MAX_DATA_PACKET_SIZE} bytes, the block is not the last block of data;
- * if it is less than {@link GlobalConstants#MAX_DATA_PACKET_SIZE} bytes, it is the last block of data.
+ * The data field is a sequence of 0 to block size bytes of data, the block size is
+ * {@link GlobalConstants#MAX_DATA_PACKET_SIZE} unless a different one was negotiated.
+ * If it is block size bytes, the block is not the last block of data;
+ * if it is less than block size bytes, it is the last block of data.
+ * The packet size field is unsigned, blocks may be up to {@link GlobalConstants#MAX_BLOCK_SIZE} bytes long.
  * This packet is sent from the client to the server and vice versa.
  */
 public class DataPacket extends AbstractPacket {
@@ -30,8 +32,9 @@ public class DataPacket extends AbstractPacket {
      */
     public DataPacket(short packetSize, short blockNumber, byte[] data) throws IllegalArgumentException {
         super(Operation.DATA.OP_CODE);
-        if(data.length > GlobalConstants.MAX_DATA_PACKET_SIZE) {
-            throw new IllegalArgumentException("Not allowed to transmit over 512 bytes of data per packet.");
+        if(data.length > GlobalConstants.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Not allowed to transmit over " + GlobalConstants.MAX_BLOCK_SIZE
+                    + " bytes of data per packet.");
         }
         this.packetSize  = packetSize;
         this.blockNumber = blockNumber;
@@ -82,7 +85,7 @@ public class DataPacket extends AbstractPacket {
     @Override
     public byte[] getBytes() {
         return concatArrays(Arrays.asList(
-                EncodeDecodeHelper.shortToByte(opCode),
+                opCodeBytes(0),
                 EncodeDecodeHelper.shortToByte(packetSize),
                 EncodeDecodeHelper.shortToByte(blockNumber),
                 data), false);
@@ -1,7 +1,6 @@
 package bgu.spl.net.impl.tftp.packets;
 
 import bgu.spl.net.impl.tftp.ClientCoordinator;
-import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.Operation;
 
 /**
@@ -31,7 +30,7 @@ public class DirectoryRequestPacket extends AbstractPacket{
 
     @Override
     public byte[] getBytes() {
-        return EncodeDecodeHelper.shortToByte(this.opCode);
+        return opCodeBytes(0);
     }
 
     @Override
@@ -0,0 +1,61 @@
+package bgu.spl.net.impl.tftp.packets;
+
+import bgu.spl.net.impl.tftp.ClientCoordinator;
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
+import bgu.spl.net.impl.tftp.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents an Option Acknowledgement Packet (RFC 2347).
+ * Opcode designated by: {@link Operation#OACK}
+ * Sent by the server instead of the first response to a {@link ReadRequestPacket} or a {@link WriteRequestPacket}
+ * which carried options, and holds the options the server accepted with their final values.
+ * A read is then started by acknowledging block 0, a write by sending block 1.
+ * This packet is sent from the server to the client.
+ */
+public class OptionAcknowledgementPacket extends AbstractPacket {
+    /**
+     * The accepted options by their names.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * Reconstructs a packet when receiving a byte array.
+     * @param received the received array from the server. (includes opcode).
+     * @exception IllegalArgumentException if the packet is malformed.
+     */
+    public OptionAcknowledgementPacket(byte[] received) throws IllegalArgumentException {
+        super(Operation.OACK.OP_CODE);
+        this.options = Collections.unmodifiableMap(readOptions(received, 2));
+    }
+
+    /**
+     * Get the accepted options
+     * @return the options by their names
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        List<byte[]> arrays = new ArrayList<>();
+        arrays.add(EncodeDecodeHelper.shortToByte(opCode));
+        arrays.addAll(optionsBytes(options));
+        return concatArrays(arrays, true);
+    }
+
+    /**
+     * This should not be called.
+     * @param coordinator The client coordinator to visit.
+     * @return
+     */
+    @Override
+    public boolean addSelf(ClientCoordinator coordinator) {
+        return false;
+    }
+}
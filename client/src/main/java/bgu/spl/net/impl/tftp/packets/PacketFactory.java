@@ -1,6 +1,27 @@
 package bgu.spl.net.impl.tftp.packets;
 
+import bgu.spl.net.impl.tftp.FilesHandler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static bgu.spl.net.impl.tftp.DisplayMessage.print;
+import static bgu.spl.net.impl.tftp.GlobalConstants.BLOCK_SIZE_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.CHECKSUM_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.COMPRESSION_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.CREDIT_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OFFSET_CHECKSUM_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OFFSET_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_BLOCK_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_CHECKSUM;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_COMPRESSION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_CREDIT;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_TRANSFER_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.REQUESTED_WINDOW_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.RESUME;
+import static bgu.spl.net.impl.tftp.GlobalConstants.TRANSFER_SIZE_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.WINDOW_SIZE_OPTION;
 
 /**
  * A factory class for creating packets according to the user input
@@ -50,16 +71,37 @@ public class PacketFactory {
                 }
             case "RRQ":
                 try {
-                    ReadRequestPacket packet = new ReadRequestPacket(endOfCommand);
+                    // The server answers with the file's size.
+                    Map<String, String> options = transferOptions(0);
+                    if (RESUME) {
+                        // The download continues after the partial file if the server has the same bytes.
+                        FilesHandler partial = new FilesHandler(endOfCommand);
+                        long offset = partial.fileSize();
+                        options.put(OFFSET_OPTION, String.valueOf(offset));
+                        if (offset > 0) {
+                            options.put(OFFSET_CHECKSUM_OPTION, Long.toHexString(partial.prefixChecksum(offset)));
+                        }
+                    }
+                    ReadRequestPacket packet = new ReadRequestPacket(endOfCommand, options);
                     return packet;
                 }
                 catch (IllegalArgumentException e) {
                     print("Illegal file name");
                     return null;
                 }
+                catch (IOException e) {
+                    print("IO error occurred");
+                    return null;
+                }
             case "WRQ":
                 try {
-                    WriteRequestPacket packet = new WriteRequestPacket(endOfCommand);
+                    long size = new FilesHandler(endOfCommand).fileSize();
+                    Map<String, String> options = transferOptions(size);
+                    if (RESUME) {
+                        // The server answers with the length of its partial file.
+                        options.put(OFFSET_OPTION, "0");
+                    }
+                    WriteRequestPacket packet = new WriteRequestPacket(endOfCommand, options);
                     return packet;
                 }
                 catch (IllegalArgumentException e) {
@@ -74,4 +116,32 @@ public class PacketFactory {
                 return null;
         }
     }
+
+    /**
+     * @param size The size of the file to transfer, sent if the transfer size option was configured.
+     * @return The options to append to file transfer requests, the block size, window size, credit and transfer size
+     * if they were configured.
+     */
+    private static Map<String, String> transferOptions(long size) {
+        Map<String, String> options = new LinkedHashMap<>();
+        if (REQUESTED_BLOCK_SIZE > 0) {
+            options.put(BLOCK_SIZE_OPTION, String.valueOf(REQUESTED_BLOCK_SIZE));
+        }
+        if (REQUESTED_WINDOW_SIZE > 0) {
+            options.put(WINDOW_SIZE_OPTION, String.valueOf(REQUESTED_WINDOW_SIZE));
+        }
+        if (REQUESTED_CREDIT > 0) {
+            options.put(CREDIT_OPTION, String.valueOf(REQUESTED_CREDIT));
+        }
+        if (REQUESTED_TRANSFER_SIZE) {
+            options.put(TRANSFER_SIZE_OPTION, String.valueOf(size));
+        }
+        if (!REQUESTED_COMPRESSION.isEmpty()) {
+            options.put(COMPRESSION_OPTION, REQUESTED_COMPRESSION);
+        }
+        if (!REQUESTED_CHECKSUM.isEmpty()) {
+            options.put(CHECKSUM_OPTION, REQUESTED_CHECKSUM);
+        }
+        return options;
+    }
 }
\ No newline at end of file
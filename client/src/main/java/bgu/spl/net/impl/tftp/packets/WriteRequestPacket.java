@@ -1,17 +1,23 @@
 package bgu.spl.net.impl.tftp.packets;
 
 import bgu.spl.net.impl.tftp.ClientCoordinator;
-import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.GlobalConstants;
 import bgu.spl.net.impl.tftp.Operation;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class WriteRequestPacket extends AbstractPacket{
     /**
      * The file name to write. Must not be empty or contain null character.
      */
     private final String fileName;
+    /**
+     * Options appended to the request, empty if there are none.
+     */
+    private final Map<String, String> options;
 
     /**
      * Constructor for creating a WriteRequestPacket.
@@ -19,11 +25,22 @@ public class WriteRequestPacket extends AbstractPacket{
      * @throws IllegalArgumentException if the file name is empty or contains null character.
      */
     public WriteRequestPacket(String fileName) throws IllegalArgumentException{
+        this(fileName, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor for creating a WriteRequestPacket with options.
+     * @param fileName the file name to write. Must not be empty or contain null character.
+     * @param options the options to append, by their names.
+     * @throws IllegalArgumentException if the file name is empty or contains null character.
+     */
+    public WriteRequestPacket(String fileName, Map<String, String> options) throws IllegalArgumentException{
         super(Operation.WRQ.OP_CODE);
         if (fileName.length() == 0 || fileName.contains("\0")) {
             throw new IllegalArgumentException("File name cannot contain null character or be empty");
         }
         this.fileName = fileName;
+        this.options = Collections.unmodifiableMap(options);
     }
 
     /**
@@ -41,6 +58,7 @@ public class WriteRequestPacket extends AbstractPacket{
         // Create a byte array to contain only the file name bytes.
         // (excluding the opcode and the null terminated symbol at the end).
         this.fileName = new String(packet, 2, packet.length - 3);
+        this.options = Collections.emptyMap();
     }
 
     /**
@@ -51,11 +69,27 @@ public class WriteRequestPacket extends AbstractPacket{
         return fileName;
     }
 
+    /**
+     * Get the options appended to the request
+     * @return the options by their names, empty if there are none
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
     @Override
     public byte[] getBytes() {
-        byte[] opcode = EncodeDecodeHelper.shortToByte(this.opCode);
         byte[] fileName = this.fileName.getBytes(GlobalConstants.ENCODING_FORMAT);
-        return concatArrays(Arrays.asList(opcode, fileName), true);
+        if (options.isEmpty()) {
+            return concatArrays(List.of(opCodeBytes(0), fileName), true);
+        }
+        // Packets with options are flagged, and end with an empty string after the options.
+        List<byte[]> arrays = new ArrayList<>();
+        arrays.add(opCodeBytes(GlobalConstants.OPTIONS_FLAG));
+        arrays.add(fileName);
+        arrays.add(new byte[]{GlobalConstants.TERMINATOR});
+        arrays.addAll(optionsBytes(options));
+        return concatArrays(arrays, true);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package bgu.spl.net.api;
 
+import java.util.function.Consumer;
+
 public interface MessageEncoderDecoder<T> {
 
     /**
@@ -11,6 +13,26 @@ public interface MessageEncoderDecoder<T> {
      */
     T decodeNextByte(byte nextByte);
 
+    /**
+     * add a range of bytes to the decoding process, every message completed
+     * by these bytes is passed to the consumer in the order it was decoded.
+     * the default implementation decodes byte by byte, override it when the
+     * decoder can consume whole ranges at once.
+     *
+     * @param bytes  the buffer holding the next bytes
+     * @param offset the index of the first byte to consider
+     * @param length the number of bytes to consider
+     * @param consumer receives the decoded messages
+     */
+    default void decodeNextBytes(byte[] bytes, int offset, int length, Consumer<T> consumer) {
+        for (int i = offset; i < offset + length; i++) {
+            T nextMessage = decodeNextByte(bytes[i]);
+            if (nextMessage != null) {
+                consumer.accept(nextMessage);
+            }
+        }
+    }
+
     /**
      * encodes the given message to bytes array
      *
@@ -23,4 +23,15 @@ public class EncodeDecodeHelper {
         }
         return (short) ((short) ((bytes[0] & 0xff) << 8) | (short) (bytes[1] & 0xff));
     }
+
+    /**
+     * Recovers a block's number in its transfer from the 16 bits a packet carries.
+     * Block numbers are unsigned and roll over to 0 after 65535, so a transfer isn't limited to 65535 blocks.
+     * @param block The block number as found in the packet.
+     * @param latest The latest block of the transfer the packet may refer to.
+     * @return The latest block number, not after {@code latest}, whose low 16 bits are {@code block}.
+     */
+    public static long unwrapBlockNumber(short block, long latest) {
+        return latest - ((latest - Short.toUnsignedInt(block)) & 0xffff);
+    }
 }
@@ -11,9 +11,10 @@ public enum Operation {
     LOGRQ((short) 7, true),
     DELRQ((short) 8, true),
     BCAST((short) 9, true),
-    DISC((short) 10, false);
+    DISC((short) 10, false),
+    OACK((short) 11, true);
 
-    public static final Operation[] OPS = {NO_OP, RRQ, WRQ, DATA, ACK, ERROR, DIRQ, LOGRQ, DELRQ, BCAST, DISC};
+    public static final Operation[] OPS = {NO_OP, RRQ, WRQ, DATA, ACK, ERROR, DIRQ, LOGRQ, DELRQ, BCAST, DISC, OACK};
 
     public final boolean TERMINATED;
     public final short OP_CODE;
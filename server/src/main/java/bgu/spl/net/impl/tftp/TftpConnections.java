@@ -3,74 +3,125 @@ package bgu.spl.net.impl.tftp;
 import bgu.spl.net.impl.tftp.packets.AcknowledgementPacket;
 import bgu.spl.net.srv.ConnectionHandler;
 import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.FileRegion;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static bgu.spl.net.impl.tftp.GlobalConstants.DEFAULT_ACK;
 
 
+/**
+ * Keeps the active connections and the logged-in listeners in concurrent maps, so no operation here holds a lock
+ * while writing to a socket. Writes are serialized by each {@link ConnectionHandler} on its own, so a slow client
+ * only ever delays its own messages.
+ * A connection ID that isn't connected, e.g. because it was already disconnected, is ignored by all operations.
+ */
 public class TftpConnections implements Connections<byte[]> {
     private final Map<Integer, ConnectionHandler<byte[]>> connections;
     private final Map<Integer, String> listeners;
+    /**
+     * Reverse index of listeners, used to make sure a username is logged-in only once.
+     */
+    private final Map<String, Integer> usernames;
     public TftpConnections() {
-        connections = new HashMap<>();
-        listeners = new HashMap<>();
+        connections = new ConcurrentHashMap<>();
+        listeners = new ConcurrentHashMap<>();
+        usernames = new ConcurrentHashMap<>();
     }
 
     @Override
-    public synchronized void connect(int connectionId, ConnectionHandler<byte[]> handler) {
-        if(connections.containsKey(connectionId)) {
+    public void connect(int connectionId, ConnectionHandler<byte[]> handler) {
+        if(connections.putIfAbsent(connectionId, handler) != null) {
             throw new KeyAlreadyExistsException("Connection ID " + connectionId + " is already in use.");
         }
-        connections.put(connectionId, handler);
         // return true;
         // FIXME if https://moodle.bgu.ac.il/moodle/mod/forum/discuss.php?d=703060#p1061585
     }
 
     @Override
-    public synchronized boolean send(int connectionId, byte[] msg) {
+    public boolean send(int connectionId, byte[] msg) {
         ConnectionHandler<byte[]> connection = connections.get(connectionId);
         if(connection == null) {
-            throw new NoSuchElementException("No connection with the ID " + connectionId + " exists");
+            return false;
         }
         connection.send(msg);
         return true;
     }
 
+    /**
+     * Handlers that can't write file regions get the region read into memory and appended to the header.
+     */
     @Override
-    public synchronized void disconnect(int connectionId) {
-        ConnectionHandler<byte[]> con = connections.get(connectionId);
+    public boolean sendFile(int connectionId, byte[] header, FileRegion region) {
+        ConnectionHandler<byte[]> connection = connections.get(connectionId);
+        if(connection == null) {
+            region.release();
+            return false;
+        }
+        if(connection.supportsFileRegions()) {
+            connection.sendFile(header, region);
+            return true;
+        }
+        try {
+            byte[] payload = region.read();
+            byte[] message = new byte[header.length + payload.length];
+            System.arraycopy(header, 0, message, 0, header.length);
+            System.arraycopy(payload, 0, message, header.length, payload.length);
+            connection.send(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            region.release();
+        }
+        return true;
+    }
+
+    @Override
+    public void disconnect(int connectionId) {
+        ConnectionHandler<byte[]> con = connections.remove(connectionId);
+        if(con == null) {
+            return;
+        }
+        String username = listeners.remove(connectionId);
+        if(username != null) {
+            usernames.remove(username, connectionId);
+        }
         try {
-            connections.remove(connectionId);
-            listeners.remove(connectionId);
             con.send(new AcknowledgementPacket(DEFAULT_ACK).getBytes());
             con.close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            // The connection is removed either way, and there's no one left to report the failure to.
         }
     }
 
     @Override
-    public synchronized void subscribe(int connectionId, String username) throws SecurityException {
+    public void subscribe(int connectionId, String username) throws SecurityException {
         if(!connections.containsKey(connectionId)) {
-            throw new NoSuchElementException("No connection exists with ID: " + connectionId);
+            return;
         }
-        for(Map.Entry<Integer, String> listener : listeners.entrySet()) {
-            if(username.equals(listener.getValue())) {
-                throw new SecurityException("User already connected to the server from another place.");
-            }
+        if(usernames.putIfAbsent(username, connectionId) != null) {
+            throw new SecurityException("User already connected to the server from another place.");
         }
         listeners.put(connectionId, username);
+        // Disconnected meanwhile, don't keep the username taken.
+        if(!connections.containsKey(connectionId)) {
+            listeners.remove(connectionId);
+            usernames.remove(username, connectionId);
+        }
     }
 
     @Override
-    public synchronized void broadcast(byte[] broadcastMessage) {
-        for(Map.Entry<Integer, String> listener : listeners.entrySet()) {
-            connections.get(listener.getKey()).send(broadcastMessage);
+    public void broadcast(byte[] broadcastMessage) {
+        for(Integer listener : listeners.keySet()) {
+            ConnectionHandler<byte[]> connection = connections.get(listener);
+            // The listener might have disconnected while broadcasting.
+            if(connection != null) {
+                connection.sendBroadcast(broadcastMessage);
+            }
         }
     }
 }
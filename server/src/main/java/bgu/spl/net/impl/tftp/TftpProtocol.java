@@ -9,20 +9,39 @@ import bgu.spl.net.impl.tftp.packets.LoginRequestPacket;
 import bgu.spl.net.impl.tftp.services.TftpService;
 import bgu.spl.net.srv.Connections;
 
-import java.util.NoSuchElementException;
 
 import static bgu.spl.net.impl.tftp.GlobalConstants.DEFAULT_ACK;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OPTIONS_FLAG;
+import static bgu.spl.net.impl.tftp.GlobalConstants.TRANSFER_ID_FLAG;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.MAX_TRANSFERS;
 import static bgu.spl.net.impl.tftp.TftpErrorCodes.*;
 
 public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
 
     private TftpApi controller;
+    /**
+     * Controllers of the connection's tagged transfers by their transfer IDs, each with a service of its own so
+     * transfers run side by side. Created when a transfer ID is first used.
+     */
+    private final TftpApi[] transfers = new TftpApi[MAX_TRANSFERS + 1];
 
     private int connectionId;
     private Connections<byte[]> connections;
 
     private boolean terminate = false;
     private boolean isLogged  = false;
+    /**
+     * Whether downloads should be sent as file regions, worth it when the connections write to socket channels.
+     */
+    private final boolean zeroCopy;
+
+    public TftpProtocol() {
+        this(false);
+    }
+
+    public TftpProtocol(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
 
     @Override
     public void start(int connectionId, Connections<byte[]> connections) {
@@ -30,7 +49,7 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
         this.connections  = connections;
 
         // High coupling here buddy: TODO FIX COUPLING
-        controller = new TftpApi(new TftpService());
+        controller = new TftpApi(new TftpService(), zeroCopy);
         // Check if anything else should be done here.
     }
 
@@ -40,12 +59,23 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
             throw new RuntimeException("Message received without operation code");
         }
 
-        // Retrieve op code:
-        short opCode = EncodeDecodeHelper.byteToShort(new byte[]{message[0], message[1]});
+        // Retrieve op code, requests with options are flagged:
+        int opCode = EncodeDecodeHelper.byteToShort(new byte[]{message[0], message[1]}) & 0xffff;
+        // Tagged packets are handled by their transfer's controller as if they weren't tagged.
+        int transferId = 0;
+        if((opCode & TRANSFER_ID_FLAG) != 0 && message.length >= 4) {
+            transferId = EncodeDecodeHelper.byteToShort(new byte[]{message[2], message[3]}) & 0xffff;
+            opCode &= ~TRANSFER_ID_FLAG;
+            message = untag(message, opCode);
+        }
+        boolean hasOptions = (opCode & OPTIONS_FLAG) != 0;
         Operation op;
 
         try {
-            op = Operation.OPS[opCode];
+            op = Operation.OPS[opCode & ~OPTIONS_FLAG];
+            if(hasOptions && op != Operation.RRQ && op != Operation.WRQ) {
+                throw new IndexOutOfBoundsException("Only requests can carry options.");
+            }
         } catch (IndexOutOfBoundsException e) {
             connections.send(connectionId,
                     new ErrorPacket(ILLEGAL_OPERATION.ERROR_CODE, "Illegal TFTP operation").getBytes());
@@ -69,8 +99,15 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
             return;
         }
 
+        if(transferId > MAX_TRANSFERS) {
+            ErrorPacket error = new ErrorPacket(ILLEGAL_OPERATION.ERROR_CODE, "Too many transfers.");
+            error.setTransferId(transferId);
+            connections.send(connectionId, error.getBytes());
+            return;
+        }
+
         // Call the API and get response:
-        AbstractPacket controllerResponse = mapMessageToApi(controller, op, message);
+        AbstractPacket controllerResponse = mapMessageToApi(controllerOf(transferId), op, message);
 
         // Handle response:
         if(controllerResponse != null) {
@@ -82,23 +119,53 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
             }
 
             // Respond to the user.
-            connections.send(connectionId, controllerResponse.getBytes());
+            controllerResponse.setTransferId(transferId);
+            controllerResponse.sendTo(connections, connectionId);
         }
     }
 
+    /**
+     * @param message A tagged packet.
+     * @param opCode The packet's op code, without the transfer ID's flag.
+     * @return The packet without its transfer ID.
+     */
+    private static byte[] untag(byte[] message, int opCode) {
+        byte[] untagged = new byte[message.length - 2];
+        System.arraycopy(EncodeDecodeHelper.shortToByte((short) opCode), 0, untagged, 0, 2);
+        System.arraycopy(message, 4, untagged, 2, untagged.length - 2);
+        return untagged;
+    }
+
+    /**
+     * @param transferId The transfer's ID, 0 for the connection's untagged transfer.
+     * @return The controller of the transfer.
+     */
+    private TftpApi controllerOf(int transferId) {
+        if(transferId == 0) {
+            return controller;
+        }
+        if(transfers[transferId] == null) {
+            transfers[transferId] = new TftpApi(new TftpService(), zeroCopy);
+        }
+        return transfers[transferId];
+    }
+
     /**
      * Disconnects the connection.
      */
     public void disconnect() {
-        try {
-            connections.disconnect(connectionId);
-            terminate = true;
-            isLogged  = false;
-        } catch (RuntimeException e) {
-            // TBH THIS IS NOT GOOD, THE CONNECTION IS DELETED AND CLOSED ALREADY
-            // WE CAN'T CHANGE THE INTERFACE SO WE CAN'T GET THE CONNECTION AFTER THIS:
-            connections.send(connectionId, new ErrorPacket(NOT_DEF.ERROR_CODE, e.getMessage()).getBytes());
+        if(controller != null) {
+            controller.disconnect();
+        }
+        for(TftpApi transfer : transfers) {
+            if(transfer != null) {
+                transfer.disconnect();
+            }
         }
+        // Does nothing if the connection was already disconnected.
+        connections.disconnect(connectionId);
+        terminate = true;
+        isLogged  = false;
     }
 
     /**
@@ -108,14 +175,12 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
     private void login(String username) {
         try {
             connections.subscribe(connectionId, username);
-            connections.send(connectionId, new AcknowledgementPacket(DEFAULT_ACK).getBytes());
-            isLogged = true;
+            // Not sent if the connection was closed meanwhile.
+            isLogged = connections.send(connectionId, new AcknowledgementPacket(DEFAULT_ACK).getBytes());
         } catch (SecurityException e) {
             //we need a logger.
             connections.send(connectionId, new ErrorPacket(USER_ALREADY_LOGGED.ERROR_CODE, e.getMessage()).getBytes());
             isLogged = false;
-        } catch (NoSuchElementException e) {
-            //log that this connection doesn't exist.
         }
     }
 
@@ -140,6 +205,8 @@ public class TftpProtocol implements BidiMessagingProtocol<byte[]>  {
                 return controller.deleteRequest(request);
             case ACK:
                 return controller.acknowledgementRequest(request);
+            case ERROR:
+                return controller.errorRequest();
             case LOGRQ:
                 return new ErrorPacket(NOT_DEF.ERROR_CODE, "User is already logged in.");
             default:
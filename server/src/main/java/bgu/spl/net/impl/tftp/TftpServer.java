@@ -1,14 +1,21 @@
 package bgu.spl.net.impl.tftp;
 
+import bgu.spl.net.impl.tftp.services.DirectoryCatalog;
+import bgu.spl.net.impl.tftp.services.ServicesConstants;
 import bgu.spl.net.api.BidiMessagingProtocol;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
 import bgu.spl.net.srv.BaseServer;
 import bgu.spl.net.srv.BlockingConnectionHandler;
 import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.Server;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.util.MissingFormatArgumentException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 /**
@@ -17,6 +24,33 @@ import java.util.function.Supplier;
  */
 public class TftpServer extends BaseServer<byte[]> {
 
+    /**
+     * Server mode where every client gets its own thread, this is the default.
+     */
+    public static final String THREAD_PER_CLIENT_MODE = "tpc";
+    /**
+     * Server mode where a selector thread multiplexes all the clients over a fixed worker pool.
+     */
+    public static final String REACTOR_MODE = "reactor";
+    /**
+     * Server mode where every client gets its own virtual thread, blocking IO stays as is.
+     */
+    public static final String VIRTUAL_THREADS_MODE = "virtual";
+    /**
+     * Server mode where the clients are served by a bounded pool of platform threads.
+     * Clients beyond the pool's size wait until a thread is freed.
+     */
+    public static final String BOUNDED_POOL_MODE = "pool";
+
+    /**
+     * Runs the connection handlers, null means a new platform thread per client.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Usage: TftpServer &lt;port&gt; [tpc | virtual | pool &lt;threads&gt; | reactor [worker threads]]
+     * @param args the port, optionally followed by the server mode.
+     */
     public static void main(String[] args) {
         if(args.length == 0) {
             throw new MissingFormatArgumentException("Missing port.");
@@ -24,7 +58,11 @@ public class TftpServer extends BaseServer<byte[]> {
         int port = Integer.parseInt(args[0]);
         try {
             System.out.println("Starting server...");
-            BaseServer<byte[]> server = new TftpServer(port);
+            // Load the directory's catalog before the first client lists it.
+            if(ServicesConstants.CATALOG_ENABLED) {
+                DirectoryCatalog.getInstance();
+            }
+            Server<byte[]> server = createServer(port, args);
             server.serve();
             server.close();
         } catch(Exception e) {
@@ -34,17 +72,79 @@ public class TftpServer extends BaseServer<byte[]> {
         System.out.println("Server was forced to shut down.");
     }
 
+    /**
+     * Creates the server according to the mode requested in the command line arguments.
+     * @param port The port to listen on.
+     * @param args The command line arguments, args[1] is the mode and args[2] the pool's/reactor's thread count.
+     * @return The server to run.
+     * @throws IllegalArgumentException If the mode is unknown.
+     */
+    private static Server<byte[]> createServer(int port, String[] args) {
+        String mode = args.length > 1 ? args[1] : THREAD_PER_CLIENT_MODE;
+        switch (mode) {
+            case THREAD_PER_CLIENT_MODE:
+                return new TftpServer(port);
+            case VIRTUAL_THREADS_MODE:
+                return new TftpServer(port, Executors.newVirtualThreadPerTaskExecutor());
+            case BOUNDED_POOL_MODE:
+                if(args.length < 3) {
+                    throw new MissingFormatArgumentException("Missing pool size.");
+                }
+                return new TftpServer(port, Executors.newFixedThreadPool(Integer.parseInt(args[2])));
+            case REACTOR_MODE:
+                int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                // The reactor writes to socket channels, so downloads can be sent without copying the files.
+                return Server.reactor(threads, port, () -> new TftpProtocol(true), TftpEncoderDecoder::new,
+                        new TftpConnections());
+            default:
+                throw new IllegalArgumentException("Unknown server mode: " + mode);
+        }
+    }
+
     public TftpServer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * @param port The port to listen on.
+     * @param executor Runs the connection handlers, shut down when the server is closed.
+     *                 If null, every client gets a new platform thread.
+     */
+    public TftpServer(int port, ExecutorService executor) {
         super(port, TftpProtocol::new, TftpEncoderDecoder::new, new TftpConnections());
+        this.executor = executor;
     }
 
     /**
-     * Using the thread-per-client model.
+     * Using the thread-per-client model, unless an executor was given.
      * Change in the future when you'll use this in the portfolio.
      * @param handler the connection handler created by {@link BaseServer}.serve().
      */
     @Override
     protected void execute(BlockingConnectionHandler<byte[]> handler) {
-        new Thread(handler).start();
+        if(executor == null) {
+            new Thread(handler).start();
+        } else {
+            executor.execute(handler);
+        }
+    }
+
+    /**
+     * Platform writers for the thread-per-client mode, so each client costs exactly two platform threads.
+     * The other modes get virtual writers: the virtual mode's own kind of thread, and in the bounded pool a writer
+     * can't take a pool thread, since it lives as long as its connection and would starve the readers.
+     * @return The factory of the connections' writer threads.
+     */
+    @Override
+    protected ThreadFactory writerFactory() {
+        return executor == null ? Thread.ofPlatform().factory() : Thread.ofVirtual().factory();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if(executor != null) {
+            executor.shutdownNow();
+        }
     }
 }
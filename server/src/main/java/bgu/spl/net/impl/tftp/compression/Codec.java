@@ -0,0 +1,24 @@
+package bgu.spl.net.impl.tftp.compression;
+
+/**
+ * A compression format the data of a transfer can be sent in, negotiated with the compression option.
+ * The whole transfer is compressed as a single stream, which is cut into blocks like uncompressed data.
+ * Codecs are looked up by their names in {@link Codecs}, where more of them can be registered.
+ * @see bgu.spl.net.impl.tftp.GlobalConstants#COMPRESSION_OPTION
+ */
+public interface Codec {
+    /**
+     * @return The codec's name as sent in the compression option, in lower case.
+     */
+    String name();
+
+    /**
+     * @return A compressor for the data of one transfer.
+     */
+    Compressor newCompressor();
+
+    /**
+     * @return A decompressor for the data of one transfer.
+     */
+    Decompressor newDecompressor();
+}
@@ -0,0 +1,52 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the codecs transfers can be compressed with, by their names.
+ * Deflate is always available, other codecs are registered at startup.
+ */
+public final class Codecs {
+    private static final Map<String, Codec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        register(new DeflateCodec());
+    }
+
+    private Codecs() {
+    }
+
+    /**
+     * Makes a codec available to transfers, replacing a codec of the same name.
+     * @param codec The codec.
+     */
+    public static void register(Codec codec) {
+        codecs.put(codec.name(), codec);
+    }
+
+    /**
+     * @param name The codec's name.
+     * @return The codec, or null if there is no such codec.
+     */
+    public static Codec get(String name) {
+        return name == null ? null : codecs.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * @param requested Codec names separated by commas, in the order they are preferred.
+     * @return The first codec that's available, or null if none is.
+     */
+    public static Codec choose(String requested) {
+        if(requested == null) {
+            return null;
+        }
+        for(String name : requested.split(",")) {
+            Codec codec = get(name);
+            if(codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
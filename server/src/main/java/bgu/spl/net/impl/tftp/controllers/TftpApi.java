@@ -1,12 +1,29 @@
 package bgu.spl.net.impl.tftp.controllers;
 
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.packets.*;
+import bgu.spl.net.impl.tftp.services.DiskFullException;
 import bgu.spl.net.impl.tftp.services.ITftpService;
+import bgu.spl.net.srv.FileRegion;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
 
+import static bgu.spl.net.impl.tftp.GlobalConstants.BLOCK_SIZE_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.CHECKSUM_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.COMPRESSION_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.CREDIT_OPTION;
 import static bgu.spl.net.impl.tftp.GlobalConstants.DEFAULT_ACK;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OFFSET_CHECKSUM_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.OFFSET_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.TRANSFER_SIZE_OPTION;
+import static bgu.spl.net.impl.tftp.GlobalConstants.WINDOW_SIZE_OPTION;
 import static bgu.spl.net.impl.tftp.TftpErrorCodes.*;
 
 /**
@@ -15,9 +32,18 @@ import static bgu.spl.net.impl.tftp.TftpErrorCodes.*;
 public class TftpApi {
 
     private final ITftpService service;
+    /**
+     * Whether file downloads are answered with packets holding file regions instead of the file's bytes.
+     */
+    private final boolean zeroCopy;
 
     public TftpApi(ITftpService service) {
+        this(service, false);
+    }
+
+    public TftpApi(ITftpService service, boolean zeroCopy) {
         this.service = service;
+        this.zeroCopy = zeroCopy;
     }
 
     /**
@@ -45,13 +71,40 @@ public class TftpApi {
 
     /**
      * Download a file from the server.
+     * A download with an offset is resumed after the bytes the client already has if their checksum matches the
+     * file's, the accepted offset is sent back and is 0 if it doesn't.
      * @param request User's request.
-     * @return {@link bgu.spl.net.impl.tftp.packets.DataPacket}'s containing file data or
+     * @return {@link bgu.spl.net.impl.tftp.packets.DataPacket}'s containing file data,
+     * {@link bgu.spl.net.impl.tftp.packets.OptionAcknowledgementPacket} if options were negotiated or
      * {@link bgu.spl.net.impl.tftp.packets.ErrorPacket}.
      */
     public AbstractPacket readRequest(byte[] request) {
         try {
             ReadRequestPacket requestPacket = new ReadRequestPacket(request);
+            Map<String, String> accepted = negotiateOptions(requestPacket.getOptions());
+            boolean sizeRequested = longOption(requestPacket.getOptions(), TRANSFER_SIZE_OPTION) >= 0;
+            long offset = longOption(requestPacket.getOptions(), OFFSET_OPTION);
+            if(!accepted.isEmpty() || sizeRequested || offset >= 0) {
+                // The client starts the transfer by acknowledging block 0.
+                service.startRead(requestPacket.getFileName(), blockSize(accepted), windowSize(accepted));
+                if(sizeRequested) {
+                    accepted.put(TRANSFER_SIZE_OPTION, String.valueOf(service.getReadSize()));
+                }
+                if(offset >= 0) {
+                    offset = service.seekRead(offset, requestPacket.getOptions().get(OFFSET_CHECKSUM_OPTION));
+                    accepted.put(OFFSET_OPTION, String.valueOf(offset));
+                }
+                if(accepted.containsKey(COMPRESSION_OPTION)) {
+                    service.compressRead(accepted.get(COMPRESSION_OPTION));
+                }
+                if(accepted.containsKey(CHECKSUM_OPTION)) {
+                    service.digestRead(accepted.get(CHECKSUM_OPTION));
+                }
+                return new OptionAcknowledgementPacket(accepted);
+            }
+            if(zeroCopy) {
+                return new DataPacket((short) 1, service.readFileRegion(requestPacket.getFileName()));
+            }
             byte[] firstBlock = service.readFile(requestPacket.getFileName());
             return new DataPacket((short) firstBlock.length, (short) 1, firstBlock);
         } catch (FileNotFoundException e) {
@@ -65,18 +118,40 @@ public class TftpApi {
 
     /**
      * Used to support continuous reading of a file.
+     * Acknowledgements are cumulative, every block of the window that follows the acknowledged block and wasn't
+     * sent yet is sent.
      * @param request User's request.
-     * @return {@link bgu.spl.net.impl.tftp.packets.DataPacket}'s containing file data or
+     * @return {@link bgu.spl.net.impl.tftp.packets.DataPacket}'s containing file data,
+     * {@link bgu.spl.net.impl.tftp.packets.DataWindow} if more than one block is sent or
      * {@link bgu.spl.net.impl.tftp.packets.ErrorPacket}.
      */
     public AbstractPacket acknowledgementRequest(byte[] request) {
         try {
             AcknowledgementPacket requestPacket = new AcknowledgementPacket(request);
-            byte[] nextBlock = service.handleAcknowledgement((short) (requestPacket.getBlockNumber()));
+            // Block numbers roll over, an acknowledgement is for one of the blocks that were sent.
+            long sent = service.getSentBlocks();
+            long acknowledged = EncodeDecodeHelper.unwrapBlockNumber(requestPacket.getBlockNumber(), sent);
+            // Acknowledgements may arrive before the whole window was received, blocks already sent aren't sent again.
+            long first = Math.max(acknowledged, sent) + 1;
+            List<DataPacket> window = new ArrayList<>();
+            // Compressed or digested blocks aren't regions of the file.
+            if(zeroCopy && !service.isReadTransformed()) {
+                for(FileRegion region : service.nextFileRegions(acknowledged)) {
+                    window.add(new DataPacket((short) (first + window.size()), region));
+                }
+            } else {
+                for(byte[] block : service.readWindow(acknowledged)) {
+                    window.add(new DataPacket((short) block.length, (short) (first + window.size()), block));
+                }
+            }
+            if(!window.isEmpty()) {
+                return window.size() == 1 ? window.get(0) : new DataWindow(window);
+            }
+            byte[] nextBlock = service.handleAcknowledgement(acknowledged);
             if(nextBlock == null) {
                 return null;
             }
-            return new DataPacket((short) nextBlock.length, (short) (requestPacket.getBlockNumber() + 1), nextBlock);
+            return new DataPacket((short) nextBlock.length, (short) (acknowledged + 1), nextBlock);
         } catch (FileNotFoundException e) {
             return new ErrorPacket(FILE_NOT_FOUND.ERROR_CODE, e.getMessage());
         } catch (IllegalArgumentException | ConcurrentModificationException e) {
@@ -89,17 +164,47 @@ public class TftpApi {
     /**
      * Upload file request, just a request to upload file not the writing yet.
      * @param request User's request.
-     * @return {@link bgu.spl.net.impl.tftp.packets.AcknowledgementPacket} if possible to upload
-     * and {@link bgu.spl.net.impl.tftp.packets.ErrorPacket} otherwise.
+     * @return {@link bgu.spl.net.impl.tftp.packets.AcknowledgementPacket} if possible to upload,
+     * {@link bgu.spl.net.impl.tftp.packets.OptionAcknowledgementPacket} instead if options were negotiated
+     * and {@link bgu.spl.net.impl.tftp.packets.ErrorPacket} otherwise, a full disk error if the file's declared
+     * size doesn't fit.
+     * An upload with an offset is resumable, the server answers with the number of bytes it already has from an
+     * interrupted upload of the file and their checksum, the client sends the rest or reports an error if its file
+     * doesn't start with the same bytes.
      */
     public AbstractPacket writeRequest(byte[] request) {
         try {
             WriteRequestPacket requestPacket = new WriteRequestPacket(request);
-            if(service.writeRequest(requestPacket.getFileName())) {
+            Map<String, String> accepted = negotiateOptions(requestPacket.getOptions());
+            long size = longOption(requestPacket.getOptions(), TRANSFER_SIZE_OPTION);
+            if(size >= 0) {
+                accepted.put(TRANSFER_SIZE_OPTION, String.valueOf(size));
+            }
+            boolean resumable = longOption(requestPacket.getOptions(), OFFSET_OPTION) >= 0;
+            if(!accepted.isEmpty() || resumable) {
+                if(service.writeRequest(requestPacket.getFileName(), blockSize(accepted), ackInterval(accepted),
+                        size, resumable)) {
+                    if(accepted.containsKey(COMPRESSION_OPTION)) {
+                        service.decompressUpload(accepted.get(COMPRESSION_OPTION));
+                    }
+                    if(accepted.containsKey(CHECKSUM_OPTION)) {
+                        service.verifyUpload(accepted.get(CHECKSUM_OPTION));
+                    }
+                    if(resumable) {
+                        long offset = service.getUploadOffset();
+                        accepted.put(OFFSET_OPTION, String.valueOf(offset));
+                        if(offset > 0) {
+                            accepted.put(OFFSET_CHECKSUM_OPTION, service.getUploadChecksum());
+                        }
+                    }
+                    return new OptionAcknowledgementPacket(accepted);
+                }
+            } else if(service.writeRequest(requestPacket.getFileName())) {
                 return new AcknowledgementPacket(DEFAULT_ACK);
-            } else {
-                return new ErrorPacket(FILE_ALREADY_EXISTS.ERROR_CODE, "File name exists.");
             }
+            return new ErrorPacket(FILE_ALREADY_EXISTS.ERROR_CODE, "File name exists.");
+        } catch (DiskFullException e) {
+            return new ErrorPacket(FULL_DISK.ERROR_CODE, e.getMessage());
         } catch (Exception e) {
             return new ErrorPacket(NOT_DEF.ERROR_CODE, e.getMessage());
         }
@@ -108,7 +213,8 @@ public class TftpApi {
     /**
      * Writes a file to the server, accepting data.
      * @param request User's request.
-     * @return returns AcknowledgementPacket(+block) if succeeded saving and
+     * @return returns AcknowledgementPacket(+block) if succeeded saving and the block ends its window or the file,
+     * null if the block is acknowledged later with its window and
      * {@link bgu.spl.net.impl.tftp.packets.ErrorPacket} if something went wrong.
      */
     public AbstractPacket writeData(byte[] request) {
@@ -118,13 +224,26 @@ public class TftpApi {
             String filename = service.writeData(requestPacket.getData());
             if(filename != null) {
                 response.setBroadcastPacket(new BroadcastPacket(true, filename));
+            } else if(!service.shouldAcknowledge()) {
+                return null;
             }
             return response;
+        } catch (DiskFullException e) {
+            return new ErrorPacket(FULL_DISK.ERROR_CODE, e.getMessage());
         } catch (Exception e) {
             return new ErrorPacket(NOT_DEF.ERROR_CODE, e.getMessage());
         }
     }
 
+    /**
+     * Stops the connection's transfers after the client reported an error, an unfinished upload is deleted.
+     * @return Null, errors aren't answered.
+     */
+    public AbstractPacket errorRequest() {
+        service.cancelTransfer();
+        return null;
+    }
+
     /**
      * Lists files in the server's directory.
      * @return {@link bgu.spl.net.impl.tftp.packets.DataPacket} containing the server's files and
@@ -138,4 +257,109 @@ public class TftpApi {
             return new ErrorPacket(NOT_DEF.ERROR_CODE, e.getMessage());
         }
     }
+
+    /**
+     * Agrees with the service on the options of a request that it supports.
+     * Options that are unknown, malformed or can't be honoured are left out.
+     * @param options The request's options.
+     * @return The accepted options with their final values, empty if none were accepted.
+     */
+    private Map<String, String> negotiateOptions(Map<String, String> options) {
+        Map<String, String> accepted = new LinkedHashMap<>();
+        int blockSize = negotiate(options.get(BLOCK_SIZE_OPTION), service::negotiateBlockSize);
+        if(blockSize > 0) {
+            accepted.put(BLOCK_SIZE_OPTION, String.valueOf(blockSize));
+        }
+        String codec = options.containsKey(COMPRESSION_OPTION)
+                ? service.negotiateCompression(options.get(COMPRESSION_OPTION)) : null;
+        if(codec != null) {
+            accepted.put(COMPRESSION_OPTION, codec);
+        }
+        String digest = options.containsKey(CHECKSUM_OPTION)
+                ? service.negotiateChecksum(options.get(CHECKSUM_OPTION)) : null;
+        if(digest != null) {
+            accepted.put(CHECKSUM_OPTION, digest);
+        }
+        int credit = negotiate(options.get(CREDIT_OPTION), service::negotiateCredit);
+        if(credit > 0) {
+            // Streaming replaces acknowledging windows.
+            accepted.put(CREDIT_OPTION, String.valueOf(credit));
+            return accepted;
+        }
+        int windowSize = negotiate(options.get(WINDOW_SIZE_OPTION), service::negotiateWindowSize);
+        if(windowSize > 0) {
+            accepted.put(WINDOW_SIZE_OPTION, String.valueOf(windowSize));
+        }
+        return accepted;
+    }
+
+    /**
+     * @param requested The option's value, null if it's missing.
+     * @param negotiator Decides the option's value.
+     * @return The negotiated value, or -1 if the option is missing or can't be accepted.
+     */
+    private static int negotiate(String requested, IntUnaryOperator negotiator) {
+        if(requested == null) {
+            return -1;
+        }
+        try {
+            return negotiator.applyAsInt(Integer.parseInt(requested));
+        } catch (NumberFormatException e) {
+            // Options that can't be understood are ignored.
+            return -1;
+        }
+    }
+
+    /**
+     * @param options The request's options.
+     * @param name The option's name.
+     * @return The option's value, a size or an offset, or -1 if it's missing or malformed.
+     */
+    private static long longOption(Map<String, String> options, String name) {
+        String requested = options.get(name);
+        if(requested == null) {
+            return -1;
+        }
+        try {
+            return Math.max(-1, Long.parseLong(requested));
+        } catch (NumberFormatException e) {
+            // Options that can't be understood are ignored.
+            return -1;
+        }
+    }
+
+    private static int blockSize(Map<String, String> accepted) {
+        return Integer.parseInt(accepted.getOrDefault(BLOCK_SIZE_OPTION, String.valueOf(MAX_DATA_PACKET_SIZE)));
+    }
+
+    /**
+     * @return Number of blocks the sender may send past the last acknowledged block.
+     */
+    private static int windowSize(Map<String, String> accepted) {
+        String credit = accepted.get(CREDIT_OPTION);
+        if(credit != null) {
+            return Integer.parseInt(credit);
+        }
+        return Integer.parseInt(accepted.getOrDefault(WINDOW_SIZE_OPTION, "1"));
+    }
+
+    /**
+     * @return Number of blocks the receiver receives between two acknowledgements, streaming transfers grant more
+     * credit once half of it was used.
+     */
+    private static int ackInterval(Map<String, String> accepted) {
+        String credit = accepted.get(CREDIT_OPTION);
+        if(credit != null) {
+            return Math.max(1, Integer.parseInt(credit) / 2);
+        }
+        return windowSize(accepted);
+    }
+
+    /**
+     * Releases the resources the service holds for this connection.
+     * Should be called once the connection is closed.
+     */
+    public void disconnect() {
+        service.disconnect();
+    }
 }
@@ -0,0 +1,30 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+/**
+ * A running digest of the data of one transfer, negotiated with the checksum option.
+ * The data is added in the order it's sent, the digest is only computed once all of it was added.
+ * @see bgu.spl.net.impl.tftp.GlobalConstants#CHECKSUM_OPTION
+ */
+public interface Digest {
+    /**
+     * @return The digest's name as sent in the checksum option, in lower case.
+     */
+    String name();
+
+    /**
+     * @return Number of bytes of the computed digest.
+     */
+    int length();
+
+    /**
+     * @param data Holds the next bytes of the transfer's data.
+     * @param offset Position of the first byte to add.
+     * @param length Number of bytes to add.
+     */
+    void update(byte[] data, int offset, int length);
+
+    /**
+     * @return The digest of all the data that was added, the digest must not be updated afterwards.
+     */
+    byte[] finish();
+}
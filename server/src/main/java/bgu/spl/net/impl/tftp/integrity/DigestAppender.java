@@ -0,0 +1,72 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+import java.util.Arrays;
+
+/**
+ * Sends the digest of a transfer's data right after it, so the transfer's last block carries it.
+ * The data's blocks are digested as they're sent. The data's last block followed by the digest is the trailer,
+ * which is cut again into blocks of the transfer's block size, the last of them shorter than the block size.
+ */
+public class DigestAppender {
+    private final Digest digest;
+    private final int blockSize;
+    /**
+     * Number of the data's blocks that were digested, each block is digested once and in order.
+     */
+    private long digested;
+    /**
+     * Number of the trailer's first block, which replaces the data's last block.
+     */
+    private long trailerStart;
+    /**
+     * The data's last block followed by the digest, null until the data's last block was sent.
+     */
+    private byte[] trailer;
+
+    /**
+     * @param digest The digest the receiver agreed to.
+     * @param blockSize The transfer's block size.
+     */
+    public DigestAppender(Digest digest, int blockSize) {
+        this.digest = digest;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @param block The block's number in the transfer, starting from 0.
+     * @return The block if it's part of the trailer, or null if it's a block of the data, which must be passed to
+     * {@link #add(long, byte[])}.
+     */
+    public byte[] trailerBlock(long block) {
+        if(trailer == null || block < trailerStart) {
+            return null;
+        }
+        int from = (int) Math.min(trailer.length, (block - trailerStart) * blockSize);
+        return Arrays.copyOfRange(trailer, from, Math.min(trailer.length, from + blockSize));
+    }
+
+    /**
+     * Digests a block of the data.
+     * @param block The block's number in the transfer, starting from 0.
+     * @param data The block's data, shorter than the block size if it's the data's last block.
+     * @return The block to send, the data itself or the trailer's first block if the data ended.
+     * @throws IllegalStateException If a block was skipped, the digest can't be computed.
+     */
+    public byte[] add(long block, byte[] data) {
+        if(block > digested) {
+            throw new IllegalStateException("Blocks must be digested in order.");
+        }
+        if(block == digested) {
+            digest.update(data, 0, data.length);
+            digested++;
+        }
+        if(data.length < blockSize) {
+            byte[] value = digest.finish();
+            trailer = Arrays.copyOf(data, data.length + value.length);
+            System.arraycopy(value, 0, trailer, data.length, value.length);
+            trailerStart = block;
+            return trailerBlock(block);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,48 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Checks the digest a transfer's last block carries after the data.
+ * The last bytes received are held back, since they may be the digest, until more bytes arrive after them.
+ */
+public class DigestVerifier {
+    private final Digest digest;
+    /**
+     * The last bytes received, at most as many as the digest's length.
+     */
+    private byte[] held = new byte[0];
+
+    /**
+     * @param digest The digest the sender agreed to.
+     */
+    public DigestVerifier(Digest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Digests the data of a received block.
+     * @param block The block, in the order the blocks were sent.
+     * @return The data that's known not to be the digest, may be empty.
+     */
+    public byte[] update(byte[] block) {
+        byte[] received = block;
+        if(held.length > 0) {
+            received = Arrays.copyOf(held, held.length + block.length);
+            System.arraycopy(block, 0, received, held.length, block.length);
+        }
+        int length = Math.max(0, received.length - digest.length());
+        held = Arrays.copyOfRange(received, length, received.length);
+        digest.update(received, 0, length);
+        return Arrays.copyOf(received, length);
+    }
+
+    /**
+     * Called once, after the transfer's last block.
+     * @return Whether the transfer ended with the digest of its data.
+     */
+    public boolean verify() {
+        return MessageDigest.isEqual(held, digest.finish());
+    }
+}
@@ -0,0 +1,41 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256, the strong mode, which also catches data that was altered on purpose.
+ */
+public class Sha256Digest implements Digest {
+    public static final String NAME = "sha256";
+    private final MessageDigest digest;
+
+    public Sha256Digest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int length() {
+        return digest.getDigestLength();
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        digest.update(data, offset, length);
+    }
+
+    @Override
+    public byte[] finish() {
+        return digest.digest();
+    }
+}
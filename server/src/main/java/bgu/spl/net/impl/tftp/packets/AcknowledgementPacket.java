@@ -22,6 +22,7 @@ public class AcknowledgementPacket extends AbstractPacket{
      * The block number is used when acknowledging a {@link DataPacket}. Once a {@link DataPacket} is acknowledged,
      * The next block can be sent. Other packets: {@link LoginRequestPacket}, {@link WriteRequestPacket},
      * {@link DeleteRequestPacket} or {@link DisconnectPacket} should be acknowledged with block = 0 if successful.
+     * The block number is unsigned and rolls over to 0 after 65535, so the short may be negative.
      * @see DataPacket
      */
     private final short blockNumber;
@@ -29,13 +30,9 @@ public class AcknowledgementPacket extends AbstractPacket{
     /**
      * Constructor for creating an AcknowledgementPacket.
      * @param blockNumber the block number to acknowledge.
-     * @exception IndexOutOfBoundsException if the block number is negative.
      */
-    public AcknowledgementPacket(short blockNumber) throws IndexOutOfBoundsException {
+    public AcknowledgementPacket(short blockNumber) {
         super(Operation.ACK.OP_CODE);
-        if (blockNumber < 0) {
-            throw new IndexOutOfBoundsException("Block number cannot be negative.");
-        }
         this.blockNumber = blockNumber;
     }
 
@@ -43,20 +40,15 @@ public class AcknowledgementPacket extends AbstractPacket{
      * Constructor for decoding an AcknowledgementPacket from a byte array.
      * @param packet the byte array to decode (includes opcode).
      * @exception IllegalArgumentException if the packet is too short.
-     * @exception IndexOutOfBoundsException if the block number is negative.
      */
-    public AcknowledgementPacket(byte[] packet) throws IllegalArgumentException, IndexOutOfBoundsException{
+    public AcknowledgementPacket(byte[] packet) throws IllegalArgumentException {
         super(Operation.ACK.OP_CODE);
         if (packet.length < 4) {
             throw new IllegalArgumentException("The packet is too short.");
         }
         // Create byte array containing the block number bytes.
         byte[] blockNumberBytes = new byte[]{packet[2], packet[3]};
-        short blockNumber = EncodeDecodeHelper.byteToShort(blockNumberBytes);
-        if (blockNumber < 0) {
-            throw new IndexOutOfBoundsException("Block number cannot be negative.");
-        }
-        this.blockNumber = blockNumber;
+        this.blockNumber = EncodeDecodeHelper.byteToShort(blockNumberBytes);
     }
 
     /**
@@ -69,7 +61,7 @@ public class AcknowledgementPacket extends AbstractPacket{
 
     @Override
     public byte[] getBytes() {
-        byte[] opcode = EncodeDecodeHelper.shortToByte(this.opCode);
+        byte[] opcode = opCodeBytes(0);
         byte[] blockNumber = EncodeDecodeHelper.shortToByte(this.blockNumber);
         return concatArrays(Arrays.asList(opcode, blockNumber), false);
     }
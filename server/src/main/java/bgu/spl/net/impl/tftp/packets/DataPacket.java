@@ -3,22 +3,32 @@ package bgu.spl.net.impl.tftp.packets;
 import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.GlobalConstants;
 import bgu.spl.net.impl.tftp.Operation;
+import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.FileRegion;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 
 /**
  * This class represents a Data Packet.
  * Opcode designated by: {@link Operation#DATA}
  * A Data packet is used to transfer data from the client to the server or vice versa.
- * The data field is a sequence of 0 to {@link bgu.spl.net.impl.tftp.GlobalConstants#MAX_DATA_PACKET_SIZE} bytes of data.
- * If it is {@link bgu.spl.net.impl.tftp.GlobalConstants#MAX_DATA_PACKET_SIZE} bytes, the block is not the last block of data;
- * if it is less than {@link bgu.spl.net.impl.tftp.GlobalConstants#MAX_DATA_PACKET_SIZE} bytes, it is the last block of data.
+ * The data field is a sequence of 0 to block size bytes of data, the block size is
+ * {@link bgu.spl.net.impl.tftp.GlobalConstants#MAX_DATA_PACKET_SIZE} unless a different one was negotiated.
+ * If it is block size bytes, the block is not the last block of data;
+ * if it is less than block size bytes, it is the last block of data.
+ * The packet size field is unsigned, blocks may be up to {@link GlobalConstants#MAX_BLOCK_SIZE} bytes long.
  * This packet is sent from the client to the server and vice versa.
  */
 public class DataPacket extends AbstractPacket {
     private final short packetSize;
     private final short blockNumber;
     private final byte[] data;
+    /**
+     * The data as a region of a file, used instead of data when sending a file's block without reading it.
+     */
+    private final FileRegion region;
 
     /**
      * Default constructor to build an internal contract for data-packets.
@@ -29,12 +39,33 @@ public class DataPacket extends AbstractPacket {
      */
     public DataPacket(short packetSize, short blockNumber, byte[] data) throws IllegalArgumentException {
         super(Operation.DATA.OP_CODE);
-        if(data.length > GlobalConstants.MAX_DATA_PACKET_SIZE) {
-            throw new IllegalArgumentException("Not allowed to transmit over 512 bytes of data per packet.");
+        if(data.length > GlobalConstants.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Not allowed to transmit over " + GlobalConstants.MAX_BLOCK_SIZE
+                    + " bytes of data per packet.");
         }
         this.packetSize  = packetSize;
         this.blockNumber = blockNumber;
         this.data = data;
+        this.region = null;
+    }
+
+    /**
+     * Builds a data-packet whose data is a region of a file, the region is written straight from the file when the
+     * packet is sent.
+     * @param blockNumber The block number denotes the specific location in a file where the data is intended to be stored.
+     * @param region The block's region in the file.
+     * @exception IllegalArgumentException if the region is too long.
+     */
+    public DataPacket(short blockNumber, FileRegion region) throws IllegalArgumentException {
+        super(Operation.DATA.OP_CODE);
+        if(region.getCount() > GlobalConstants.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Not allowed to transmit over " + GlobalConstants.MAX_BLOCK_SIZE
+                    + " bytes of data per packet.");
+        }
+        this.packetSize  = (short) region.getCount();
+        this.blockNumber = blockNumber;
+        this.data = null;
+        this.region = region;
     }
 
     /**
@@ -52,6 +83,7 @@ public class DataPacket extends AbstractPacket {
         this.blockNumber = EncodeDecodeHelper.byteToShort(new byte[]{received[4], received[5]});
         this.data = new byte[received.length - 6];
         System.arraycopy(received, 6, this.data, 0, this.data.length);
+        this.region = null;
     }
 
     /**
@@ -67,6 +99,13 @@ public class DataPacket extends AbstractPacket {
      * @return the data
      */
     public byte[] getData() {
+        if(region != null) {
+            try {
+                return region.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return data;
     }
 
@@ -78,12 +117,34 @@ public class DataPacket extends AbstractPacket {
         return packetSize;
     }
 
+    /**
+     * @return The packet without its data.
+     */
+    public byte[] getHeaderBytes() {
+        return concatArrays(Arrays.asList(
+                opCodeBytes(0),
+                EncodeDecodeHelper.shortToByte(packetSize),
+                EncodeDecodeHelper.shortToByte(blockNumber)), false);
+    }
+
     @Override
     public byte[] getBytes() {
         return concatArrays(Arrays.asList(
-                EncodeDecodeHelper.shortToByte(opCode),
+                opCodeBytes(0),
                 EncodeDecodeHelper.shortToByte(packetSize),
                 EncodeDecodeHelper.shortToByte(blockNumber),
-                data), false);
+                getData()), false);
+    }
+
+    /**
+     * Packets holding a file region send the header and let the connection write the region from the file.
+     */
+    @Override
+    public void sendTo(Connections<byte[]> connections, int connectionId) {
+        if(region == null) {
+            super.sendTo(connections, connectionId);
+        } else {
+            connections.sendFile(connectionId, getHeaderBytes(), region);
+        }
     }
 }
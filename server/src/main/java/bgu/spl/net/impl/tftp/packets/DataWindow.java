@@ -0,0 +1,68 @@
+package bgu.spl.net.impl.tftp.packets;
+
+import bgu.spl.net.impl.tftp.Operation;
+import bgu.spl.net.srv.Connections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a window of consecutive {@link DataPacket}s sent in response to a single acknowledgement,
+ * when a window size was negotiated for the transfer (RFC 7440).
+ * It isn't a packet of its own, its packets are sent one after the other.
+ * This packet is sent from the server to the client.
+ */
+public class DataWindow extends AbstractPacket {
+    private final List<DataPacket> packets;
+
+    /**
+     * @param packets The window's packets in the order they are sent.
+     * @exception IllegalArgumentException if the window is empty.
+     */
+    public DataWindow(List<DataPacket> packets) throws IllegalArgumentException {
+        super(Operation.DATA.OP_CODE);
+        if(packets.isEmpty()) {
+            throw new IllegalArgumentException("A window must hold at least one packet.");
+        }
+        this.packets = Collections.unmodifiableList(packets);
+    }
+
+    /**
+     * Tags every packet of the window.
+     */
+    @Override
+    public void setTransferId(int transferId) {
+        super.setTransferId(transferId);
+        for(DataPacket packet : packets) {
+            packet.setTransferId(transferId);
+        }
+    }
+
+    /**
+     * Get the window's packets
+     * @return the packets in the order they are sent
+     */
+    public List<DataPacket> getPackets() {
+        return packets;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        List<byte[]> arrays = new ArrayList<>(packets.size());
+        for(DataPacket packet : packets) {
+            arrays.add(packet.getBytes());
+        }
+        return concatArrays(arrays, false);
+    }
+
+    /**
+     * Each packet is sent on its own, so packets holding file regions are still written straight from the file.
+     */
+    @Override
+    public void sendTo(Connections<byte[]> connections, int connectionId) {
+        for(DataPacket packet : packets) {
+            packet.sendTo(connections, connectionId);
+        }
+    }
+}
@@ -84,7 +84,7 @@ public class ErrorPacket extends AbstractPacket{
 
     @Override
     public byte[] getBytes() {
-        byte[] opcode = EncodeDecodeHelper.shortToByte(this.opCode);
+        byte[] opcode = opCodeBytes(0);
         byte[] errorCode = EncodeDecodeHelper.shortToByte(this.errorCode);
         byte[] errorMessage = this.errorMessage.getBytes(GlobalConstants.ENCODING_FORMAT);
         return concatArrays(Arrays.asList(opcode, errorCode, errorMessage), true);
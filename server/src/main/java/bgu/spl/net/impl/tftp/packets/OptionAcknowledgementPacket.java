@@ -0,0 +1,62 @@
+package bgu.spl.net.impl.tftp.packets;
+
+import bgu.spl.net.impl.tftp.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents an Option Acknowledgement Packet (RFC 2347).
+ * Opcode designated by: {@link Operation#OACK}
+ * Sent instead of the first response to a {@link ReadRequestPacket} or a {@link WriteRequestPacket} which carried
+ * options, and holds the options the server accepted with their final values.
+ * A read is then started by the client acknowledging block 0, a write by the client sending block 1.
+ * This packet is sent from the server to the client.
+ */
+public class OptionAcknowledgementPacket extends AbstractPacket {
+    /**
+     * The accepted options, never empty.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * Default constructor to build an option acknowledgement.
+     * @param options The accepted options, by their names.
+     * @exception IllegalArgumentException if there are no options.
+     */
+    public OptionAcknowledgementPacket(Map<String, String> options) throws IllegalArgumentException {
+        super(Operation.OACK.OP_CODE);
+        if (options.isEmpty()) {
+            throw new IllegalArgumentException("Option acknowledgement must hold at least one option.");
+        }
+        this.options = Collections.unmodifiableMap(options);
+    }
+
+    /**
+     * Reconstructs a packet when receiving a byte array.
+     * @param received the received array from the client/server. (includes opcode).
+     * @exception IllegalArgumentException if the packet is malformed.
+     */
+    public OptionAcknowledgementPacket(byte[] received) throws IllegalArgumentException {
+        super(Operation.OACK.OP_CODE);
+        this.options = Collections.unmodifiableMap(readOptions(received, 2));
+    }
+
+    /**
+     * Get the accepted options
+     * @return the options by their names
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        List<byte[]> arrays = new ArrayList<>();
+        arrays.add(opCodeBytes(0));
+        arrays.addAll(optionsBytes(options));
+        return concatArrays(arrays, true);
+    }
+}
@@ -4,7 +4,10 @@ import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
 import bgu.spl.net.impl.tftp.GlobalConstants;
 import bgu.spl.net.impl.tftp.Operation;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A class representing a ReadRequestPacket.
@@ -19,6 +22,10 @@ public class ReadRequestPacket extends AbstractPacket{
      * The file name to read. Must not be empty or contain null character.
      */
     private final String fileName;
+    /**
+     * Options appended to the request, empty if there are none.
+     */
+    private final Map<String, String> options;
 
     /**
      * Constructor for creating a ReadRequestPacket.
@@ -26,11 +33,22 @@ public class ReadRequestPacket extends AbstractPacket{
      * @exception IllegalArgumentException if the file name is empty or contains null character.
      */
     public ReadRequestPacket(String fileName) throws IllegalArgumentException{
+        this(fileName, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor for creating a ReadRequestPacket with options.
+     * @param fileName the file name to read. Must not be empty or contain null character.
+     * @param options the options to append, by their names.
+     * @exception IllegalArgumentException if the file name is empty or contains null character.
+     */
+    public ReadRequestPacket(String fileName, Map<String, String> options) throws IllegalArgumentException{
         super(Operation.RRQ.OP_CODE);
         if (fileName.length() == 0 || fileName.contains("\0")) {
             throw new IllegalArgumentException("File name cannot contain null character or be empty");
         }
         this.fileName = fileName;
+        this.options = Collections.unmodifiableMap(options);
     }
 
     /**
@@ -45,9 +63,15 @@ public class ReadRequestPacket extends AbstractPacket{
         if (packet.length < 4) {
             throw new IllegalArgumentException("The packet is too short.");
         }
-        // Create a byte array to contain only the file name bytes.
-        // (excluding the opcode and the null terminated symbol at the end).
-        this.fileName = new String(packet, 2, packet.length - 3);
+        // The file name ends at the first null terminated symbol, options may follow it.
+        int fileNameEnd = indexOfTerminator(packet, 2);
+        this.fileName = new String(packet, 2, fileNameEnd - 2, GlobalConstants.ENCODING_FORMAT);
+        short opCode = EncodeDecodeHelper.byteToShort(new byte[]{packet[0], packet[1]});
+        if ((opCode & GlobalConstants.OPTIONS_FLAG) != 0) {
+            this.options = Collections.unmodifiableMap(readOptions(packet, fileNameEnd + 1));
+        } else {
+            this.options = Collections.emptyMap();
+        }
     }
 
     /**
@@ -58,10 +82,26 @@ public class ReadRequestPacket extends AbstractPacket{
         return fileName;
     }
 
+    /**
+     * Get the options appended to the request
+     * @return the options by their names in lower case, empty if there are none
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
     @Override
     public byte[] getBytes() {
-        byte[] opcode = EncodeDecodeHelper.shortToByte(this.opCode);
         byte[] fileName = this.fileName.getBytes(GlobalConstants.ENCODING_FORMAT);
-        return concatArrays(Arrays.asList(opcode, fileName), true);
+        if (options.isEmpty()) {
+            return concatArrays(List.of(EncodeDecodeHelper.shortToByte(this.opCode), fileName), true);
+        }
+        // Packets with options are flagged, and end with an empty string after the options.
+        List<byte[]> arrays = new ArrayList<>();
+        arrays.add(EncodeDecodeHelper.shortToByte((short) (this.opCode | GlobalConstants.OPTIONS_FLAG)));
+        arrays.add(fileName);
+        arrays.add(new byte[]{GlobalConstants.TERMINATOR});
+        arrays.addAll(optionsBytes(options));
+        return concatArrays(arrays, true);
     }
 }
@@ -0,0 +1,284 @@
+package bgu.spl.net.impl.tftp.services;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.BLOCK_CACHE_CAPACITY;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.BLOCK_CACHE_SEGMENTS;
+
+/**
+ * Process wide cache of file blocks, shared by all the connections so a file downloaded by many clients at once is
+ * read from the disk about once per block. <br/>
+ * Blocks are keyed by the file's name, the file's version, the transfer's block size and the block's position in the
+ * file, so resumed downloads which don't start at a block boundary share the cache as well.
+ * Blocks of compressed downloads are also keyed by their codec, their position is in the compressed stream. The
+ * stream only depends on the file's data, so readers of a hot file don't compress it again.
+ * The version changes whenever the file is invalidated, so a block read before a deletion or an upload can never be
+ * served afterwards.
+ * The cache is split into segments by the file's name, each with its own lock and an equal share of the capacity,
+ * so connections reading different files rarely wait for each other. A segment evicts its least recently used block
+ * first. A file's version is only kept while it has cached blocks or transfers reading it, see
+ * {@link #startReading(String)}.
+ */
+public class BlockCache {
+
+    private static class BlockCacheHolder {
+        private static final BlockCache instance = new BlockCache(BLOCK_CACHE_CAPACITY, BLOCK_CACHE_SEGMENTS);
+    }
+
+    private record Key(String file, long version, String codec, int blockSize, long position) {
+    }
+
+    /**
+     * What a segment knows about one of its files.
+     */
+    private static class FileEntry {
+        private long version = 0;
+        private int readers = 0;
+        private final Set<Key> blocks = new HashSet<>();
+    }
+
+    private static class Segment {
+        /**
+         * Maximal number of bytes held by the segment.
+         */
+        private final long capacity;
+        /**
+         * In access order, the eldest entry is the least recently used.
+         */
+        private final LinkedHashMap<Key, byte[]> blocks;
+        private final Map<String, FileEntry> files;
+        private long size;
+
+        private Segment(long capacity) {
+            this.capacity = capacity;
+            this.blocks = new LinkedHashMap<>(16, 0.75f, true);
+            this.files = new HashMap<>();
+            this.size = 0;
+        }
+
+        /**
+         * Forgets the file's version once nothing depends on it, the next version starts over.
+         */
+        private void dropIfUnused(String file, FileEntry entry) {
+            if(entry.readers == 0 && entry.blocks.isEmpty()) {
+                files.remove(file);
+            }
+        }
+    }
+
+    private final Segment[] segments;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /*package*/ BlockCache(long capacity) {
+        this(capacity, 1);
+    }
+
+    /*package*/ BlockCache(long capacity, int segmentCount) {
+        this.segments = new Segment[segmentCount];
+        for(int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(capacity / segmentCount);
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    public static BlockCache getInstance() {
+        return BlockCacheHolder.instance;
+    }
+
+    private Segment segment(String file) {
+        return segments[Math.floorMod(file.hashCode(), segments.length)];
+    }
+
+    /**
+     * @param file The file's name as it is found in the server's directory.
+     * @return The file's current version, blocks of other versions are stale.
+     */
+    public long version(String file) {
+        Segment segment = segment(file);
+        synchronized(segment) {
+            FileEntry entry = segment.files.get(file);
+            return entry == null ? 0 : entry.version;
+        }
+    }
+
+    /**
+     * Registers a transfer reading the file, its version is kept until {@link #stopReading(String)} even if the
+     * file has no cached blocks, so an invalidation during the transfer is always noticed.
+     * @param file The file's name as it is found in the server's directory.
+     * @return The file's current version.
+     */
+    public long startReading(String file) {
+        Segment segment = segment(file);
+        synchronized(segment) {
+            FileEntry entry = segment.files.computeIfAbsent(file, name -> new FileEntry());
+            entry.readers++;
+            return entry.version;
+        }
+    }
+
+    /**
+     * Ends a transfer registered by {@link #startReading(String)}.
+     * @param file The file's name as it is found in the server's directory.
+     */
+    public void stopReading(String file) {
+        Segment segment = segment(file);
+        synchronized(segment) {
+            FileEntry entry = segment.files.get(file);
+            if(entry != null && entry.readers > 0) {
+                entry.readers--;
+                segment.dropIfUnused(file, entry);
+            }
+        }
+    }
+
+    /**
+     * @param file The file's name as it is found in the server's directory.
+     * @param version The file's version when its transfer started.
+     * @param blockSize The transfer's block size.
+     * @param position The block's position in the file.
+     * @return The block, or null if it isn't cached.
+     */
+    public byte[] get(String file, long version, int blockSize, long position) {
+        return get(file, version, null, blockSize, position);
+    }
+
+    /**
+     * @param file The file's name as it is found in the server's directory.
+     * @param version The file's version when its transfer started.
+     * @param codec Name of the codec the block was compressed with, null if it isn't compressed.
+     * @param blockSize The transfer's block size.
+     * @param position The block's position in the file, or in the compressed stream.
+     * @return The block, or null if it isn't cached.
+     */
+    public byte[] get(String file, long version, String codec, int blockSize, long position) {
+        Segment segment = segment(file);
+        byte[] data;
+        synchronized(segment) {
+            data = segment.blocks.get(new Key(file, version, codec, blockSize, position));
+        }
+        if(data == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return data;
+    }
+
+    /**
+     * Caches a block that was read from the disk, evicting the segment's least recently used blocks if needed.
+     * Blocks of a version which is no longer current are ignored.
+     * @param file The file's name as it is found in the server's directory.
+     * @param version The file's version when the block was read.
+     * @param blockSize The transfer's block size.
+     * @param position The block's position in the file.
+     * @param data The block, must not be modified after it was cached.
+     */
+    public void put(String file, long version, int blockSize, long position, byte[] data) {
+        put(file, version, null, blockSize, position, data);
+    }
+
+    /**
+     * Same as {@link #put(String, long, int, long, byte[])}, for a block compressed with a codec.
+     * @param codec Name of the codec the block was compressed with, null if it isn't compressed.
+     * @param position The block's position in the compressed stream.
+     */
+    public void put(String file, long version, String codec, int blockSize, long position, byte[] data) {
+        Segment segment = segment(file);
+        synchronized(segment) {
+            FileEntry entry = segment.files.get(file);
+            if(data.length > segment.capacity || version != (entry == null ? 0 : entry.version)) {
+                return;
+            }
+            if(entry == null) {
+                entry = new FileEntry();
+                segment.files.put(file, entry);
+            }
+            Key key = new Key(file, version, codec, blockSize, position);
+            byte[] previous = segment.blocks.put(key, data);
+            entry.blocks.add(key);
+            segment.size += data.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<Key, byte[]>> eldest = segment.blocks.entrySet().iterator();
+            while(segment.size > segment.capacity) {
+                Map.Entry<Key, byte[]> evicted = eldest.next();
+                eldest.remove();
+                segment.size -= evicted.getValue().length;
+                String evictedFile = evicted.getKey().file();
+                FileEntry evictedEntry = segment.files.get(evictedFile);
+                evictedEntry.blocks.remove(evicted.getKey());
+                segment.dropIfUnused(evictedFile, evictedEntry);
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached blocks of a file and moves it to a new version.
+     * Called whenever the file's contents change, i.e. when it is deleted or uploaded.
+     * @param file The file's name as it is found in the server's directory.
+     */
+    public void invalidate(String file) {
+        Segment segment = segment(file);
+        synchronized(segment) {
+            FileEntry entry = segment.files.get(file);
+            if(entry == null) {
+                // Nothing was read from this version, so nothing can tell it from the next one.
+                return;
+            }
+            entry.version++;
+            for(Key key : entry.blocks) {
+                segment.size -= segment.blocks.remove(key).length;
+            }
+            entry.blocks.clear();
+            segment.dropIfUnused(file, entry);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Number of bytes currently cached.
+     */
+    public long getSize() {
+        long size = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of files whose version is kept, because they have cached blocks or transfers reading them.
+     */
+    /*package*/ int trackedFiles() {
+        int count = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                count += segment.files.size();
+            }
+        }
+        return count;
+    }
+}
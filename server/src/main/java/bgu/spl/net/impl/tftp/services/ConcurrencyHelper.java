@@ -1,9 +1,35 @@
 package bgu.spl.net.impl.tftp.services;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.ADMISSION_TIMEOUT_MILLIS;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.LEASE_TIMEOUT_MILLIS;
 
 /**
- * Maps files to number of reading connections.
+ * Tracks what is being done with each file: how many connections read it, whether it is being written and whether
+ * it is being deleted. <br/>
+ * Readers don't hold back deletions or writes: every reader keeps the file it reads open for the whole transfer, so
+ * it keeps reading the version it started with even if the file is deleted or replaced meanwhile. The storage of an
+ * old version is freed by the OS once its last reader closes it. <br/>
+ * Every file has a single atomic state word, so all the checks are done with compare-and-set and operations on
+ * different files never contend with each other. Free files keep their entry until more than {@value #IDLE_STATES}
+ * files are tracked, so a file that is used over and over doesn't insert and remove its entry every time. <br/>
+ * When an admission timeout is configured, a request for a busy file waits in the file's queue instead of failing
+ * at once. Waiting requests are admitted in the order they arrived, and fail if the file stays busy for too long.
+ * <br/>
+ * Operations done on behalf of an owner (a connection's service) are recorded as leases. The owner's leases are
+ * reclaimed when it disconnects, and a sweeper reclaims leases their owner hasn't renewed for too long, so a
+ * connection that died mid-transfer can't keep a file busy forever.
  */
 public class ConcurrencyHelper {
 
@@ -17,21 +43,102 @@ public class ConcurrencyHelper {
         private static final ConcurrencyHelper instance = new ConcurrencyHelper();
     }
 
+    /*
+     * Layout of a file's state word.
+     */
+    private static final int WRITING = 1 << 30;
+    private static final int DELETING = 1 << 29;
+    private static final int READERS = DELETING - 1;
+    /**
+     * The state of an entry that is being removed from the table, it can't be used anymore.
+     */
+    private static final int RETIRED = -1;
+    /**
+     * How many files are tracked before the entries of the free ones are removed.
+     */
+    private static final int IDLE_STATES = 1024;
+
+    /**
+     * Files that are being read, written or deleted mapped to their state.
+     */
+    private final Map<String, AtomicInteger> states;
+
+    /**
+     * Requests waiting for a busy file, in arrival order.
+     */
+    private static class Waiters {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Busy files that requests are waiting for, mapped to the waiting requests.
+     */
+    private final Map<String, Waiters> waiters;
+    /**
+     * How long a request waits for a busy file, 0 for not waiting at all.
+     */
+    private final long admissionTimeoutNanos;
+
+    private final LongAdder waits;
+    private final LongAdder waitNanos;
+    private final LongAdder timeouts;
+
     /**
-     * Files being currently read, cannot be deleted;
+     * An operation an owner is doing with a file, released exactly once by its owner or when it's reclaimed.
      */
-    private final Map<String, Integer> filesToReaders;
+    private static class Lease {
+        private final String file;
+        private final int held;
+        private final int delta;
+        private volatile long expiresAt;
+        private final AtomicBoolean released = new AtomicBoolean(false);
 
+        private Lease(String file, int held, int delta, long expiresAt) {
+            this.file = file;
+            this.held = held;
+            this.delta = delta;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Owners mapped to the leases they hold.
+     */
+    private final Map<Object, Queue<Lease>> leases;
     /**
-     * Files currently being deleted, cannot be read.
+     * How long a lease lasts without being renewed, 0 for forever.
      */
-    private final List<String> beingDeleted;
-    private final List<String> beingWritten;
+    private final long leaseTimeoutNanos;
+
+    private final LongAdder reclaimedLeases;
+    private final LongAdder expiredLeases;
 
     private ConcurrencyHelper() {
-        filesToReaders = new HashMap<>();
-        beingDeleted = new Vector<>();
-        beingWritten = new Vector<>();
+        this(ADMISSION_TIMEOUT_MILLIS, LEASE_TIMEOUT_MILLIS);
+    }
+
+    /*package*/ ConcurrencyHelper(long admissionTimeoutMillis, long leaseTimeoutMillis) {
+        states = new ConcurrentHashMap<>();
+        waiters = new ConcurrentHashMap<>();
+        admissionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(admissionTimeoutMillis);
+        waits = new LongAdder();
+        waitNanos = new LongAdder();
+        timeouts = new LongAdder();
+        leases = new ConcurrentHashMap<>();
+        leaseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis);
+        reclaimedLeases = new LongAdder();
+        expiredLeases = new LongAdder();
+        if(leaseTimeoutMillis > 0) {
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "lease-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, leaseTimeoutMillis / 2);
+            sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
     }
 
     public static ConcurrencyHelper getInstance() {
@@ -43,39 +150,56 @@ public class ConcurrencyHelper {
      * @param file The file's name as it is found in the server's directory.
      * @throws ConcurrentModificationException If the file currently being deleted.
      */
-    public synchronized void read(String file) throws ConcurrentModificationException {
-        if(beingDeleted.contains(file) || beingWritten.contains(file)) {
-            throw new ConcurrentModificationException("File cannot be read.");
-        }
+    public void read(String file) throws ConcurrentModificationException {
+        read(file, null);
+    }
 
-        Integer readers = filesToReaders.putIfAbsent(file, 1);
-        if(readers != null) {
-            filesToReaders.replace(file, readers + 1);
-        }
+    /**
+     * Flags the file as being read by the owner.
+     * @param file The file's name as it is found in the server's directory.
+     * @param owner The lease's owner, null for no lease.
+     * @throws ConcurrentModificationException If the file currently being deleted.
+     */
+    public void read(String file, Object owner) throws ConcurrentModificationException {
+        acquire(file, WRITING | DELETING, 1, "File cannot be read.");
+        addLease(owner, file, READERS, 1);
     }
 
     /**
      * Frees the file for modification if no one else is currently reading this file as well.
      * @param file The file's name as it is found in the server's directory.
      */
-    public synchronized void free(String file) {
-        Integer readers = filesToReaders.computeIfPresent(file, (k, v) -> v - 1);
-        if(readers != null && readers == 0) {
-            filesToReaders.remove(file);
-        }
+    public void free(String file) {
+        free(file, null);
+    }
+
+    /**
+     * Frees the file for modification if no one else is currently reading this file as well.
+     * @param file The file's name as it is found in the server's directory.
+     * @param owner The lease's owner, null if the file was read without a lease.
+     */
+    public void free(String file, Object owner) {
+        releaseOwned(file, READERS, 1, owner);
     }
 
     /**
      * Flags the file as being deleted.
      * @param file The file's name as it is found in the server's directory.
-     * @throws ConcurrentModificationException If the file currently being read.
+     * @throws ConcurrentModificationException If the file currently being written or deleted.
      */
-    public synchronized void delete(String file) throws ConcurrentModificationException {
-        if(filesToReaders.containsKey(file) || beingWritten.contains(file) || beingDeleted.contains(file)) {
-            throw new ConcurrentModificationException("File cannot be deleted.");
-        }
+    public void delete(String file) throws ConcurrentModificationException {
+        delete(file, null);
+    }
 
-        beingDeleted.add(file);
+    /**
+     * Flags the file as being deleted by the owner.
+     * @param file The file's name as it is found in the server's directory.
+     * @param owner The lease's owner, null for no lease.
+     * @throws ConcurrentModificationException If the file currently being written or deleted.
+     */
+    public void delete(String file, Object owner) throws ConcurrentModificationException {
+        acquire(file, WRITING | DELETING, DELETING, "File cannot be deleted.");
+        addLease(owner, file, DELETING, DELETING);
     }
 
     /**
@@ -83,11 +207,19 @@ public class ConcurrencyHelper {
      * @param file The file's name as it is found in the server's directory.
      * @throws ConcurrentModificationException If the file currently being written.
      */
-    public synchronized void write(String file) throws ConcurrentModificationException {
-        if(filesToReaders.containsKey(file) || beingDeleted.contains(file) || beingWritten.contains(file)) {
-            throw new ConcurrentModificationException("File cannot be written.");
-        }
-        beingWritten.add(file);
+    public void write(String file) throws ConcurrentModificationException {
+        write(file, null);
+    }
+
+    /**
+     * Flags the file as being written by the owner.
+     * @param file The file's name as it is found in the server's directory.
+     * @param owner The lease's owner, null for no lease.
+     * @throws ConcurrentModificationException If the file currently being written.
+     */
+    public void write(String file, Object owner) throws ConcurrentModificationException {
+        acquire(file, WRITING | DELETING, WRITING, "File cannot be written.");
+        addLease(owner, file, WRITING, WRITING);
     }
 
     /**
@@ -95,11 +227,18 @@ public class ConcurrencyHelper {
      * @param file File
      */
     public void deletionCompleted(String file) {
-        if(!beingDeleted.contains(file)) {
+        deletionCompleted(file, null);
+    }
+
+    /**
+     * Deletion was completed.
+     * @param file File
+     * @param owner The lease's owner, null if the file was deleted without a lease.
+     */
+    public void deletionCompleted(String file, Object owner) {
+        if(!releaseOwned(file, DELETING, DELETING, owner)) {
             throw new NoSuchElementException();
         }
-
-        beingDeleted.remove(file);
     }
 
     /**
@@ -107,10 +246,55 @@ public class ConcurrencyHelper {
      * @param file File
      */
     public void writeCompleted(String file) {
-        if(!beingWritten.contains(file)) {
+        writeCompleted(file, null);
+    }
+
+    /**
+     * Writing was completed.
+     * @param file File
+     * @param owner The lease's owner, null if the file was written without a lease.
+     */
+    public void writeCompleted(String file, Object owner) {
+        if(!releaseOwned(file, WRITING, WRITING, owner)) {
             throw new NoSuchElementException();
         }
-        beingWritten.remove(file);
+    }
+
+    /**
+     * Extends all the owner's leases, called whenever the owner makes progress with its files.
+     * @param owner The leases' owner.
+     */
+    public void renew(Object owner) {
+        Queue<Lease> owned = leases.get(owner);
+        if(owned == null || leaseTimeoutNanos <= 0) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + leaseTimeoutNanos;
+        for(Lease lease : owned) {
+            lease.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Releases all the leases the owner still holds, called when the owner is gone.
+     * Owners are expected to release their files on their own, so these are counted as leaked.
+     * @param owner The leases' owner.
+     * @return Number of leases that were released.
+     */
+    public int releaseAll(Object owner) {
+        Queue<Lease> owned = leases.remove(owner);
+        if(owned == null) {
+            return 0;
+        }
+        int released = 0;
+        for(Lease lease : owned) {
+            if(lease.released.compareAndSet(false, true)) {
+                release(lease.file, lease.held, lease.delta);
+                released++;
+            }
+        }
+        reclaimedLeases.add(released);
+        return released;
     }
 
     /**
@@ -119,6 +303,263 @@ public class ConcurrencyHelper {
      * @return True if the file is currently being written, false otherwise.
      */
     public boolean isBeingWritten(String file) {
-        return beingWritten.contains(file);
+        AtomicInteger state = states.get(file);
+        if(state == null) {
+            return false;
+        }
+        int current = state.get();
+        return current != RETIRED && (current & WRITING) != 0;
+    }
+
+    /**
+     * @return Number of leases that were still held when their owner was gone.
+     */
+    public long getReclaimedLeases() {
+        return reclaimedLeases.sum();
+    }
+
+    /**
+     * @return Number of leases the sweeper reclaimed because they weren't renewed in time.
+     */
+    public long getExpiredLeases() {
+        return expiredLeases.sum();
+    }
+
+    /**
+     * @return Number of leases currently held.
+     */
+    public int getActiveLeases() {
+        int active = 0;
+        for(Queue<Lease> owned : leases.values()) {
+            active += owned.size();
+        }
+        return active;
+    }
+
+    /**
+     * @return Number of requests that had to wait for a busy file.
+     */
+    public long getAdmissionWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * @return Total time requests spent waiting for busy files, in nanoseconds.
+     */
+    public long getAdmissionWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @return Number of requests that gave up waiting for a busy file.
+     */
+    public long getAdmissionTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Adds to the file's state, waiting for the file if it's busy and waiting is enabled.
+     * @param file The file's name as it is found in the server's directory.
+     * @param conflicts The state bits that forbid the operation.
+     * @param delta The value added to the state.
+     * @param message The exception's message if the operation is forbidden.
+     * @throws ConcurrentModificationException If the operation conflicts with the file's state, or still does once
+     * the admission timeout passed.
+     */
+    private void acquire(String file, int conflicts, int delta, String message) {
+        if(admissionTimeoutNanos <= 0) {
+            if(!tryAcquire(file, conflicts, delta)) {
+                throw new ConcurrentModificationException(message);
+            }
+            return;
+        }
+        // Don't overtake the requests which are already waiting for the file.
+        Waiters queued = waiters.get(file);
+        if((queued == null || queued.queue.isEmpty()) && tryAcquire(file, conflicts, delta)) {
+            return;
+        }
+        awaitAcquire(file, conflicts, delta, message);
+    }
+
+    /**
+     * Waits in the file's queue until the request is first and the operation is allowed, or until the admission
+     * timeout passed.
+     * @throws ConcurrentModificationException If the admission timeout passed or the thread was interrupted.
+     */
+    private void awaitAcquire(String file, int conflicts, int delta, String message) {
+        final long start = System.nanoTime();
+        final Object ticket = new Object();
+        Waiters w;
+        while(true) {
+            w = waiters.computeIfAbsent(file, k -> new Waiters());
+            w.lock.lock();
+            // The queue might have been retired while we were getting its lock.
+            if(waiters.get(file) == w) {
+                break;
+            }
+            w.lock.unlock();
+        }
+        try {
+            w.queue.add(ticket);
+            long remaining = admissionTimeoutNanos;
+            while(true) {
+                if(w.queue.peek() == ticket && tryAcquire(file, conflicts, delta)) {
+                    waits.increment();
+                    waitNanos.add(System.nanoTime() - start);
+                    return;
+                }
+                if(remaining <= 0) {
+                    timeouts.increment();
+                    waits.increment();
+                    waitNanos.add(System.nanoTime() - start);
+                    throw new ConcurrentModificationException(message);
+                }
+                try {
+                    remaining = w.changed.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConcurrentModificationException(message);
+                }
+            }
+        } finally {
+            w.queue.remove(ticket);
+            // The next request in line may be allowed now.
+            w.changed.signalAll();
+            if(w.queue.isEmpty()) {
+                waiters.remove(file, w);
+            }
+            w.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds to the file's state unless it conflicts with what is already being done with the file.
+     * @param file The file's name as it is found in the server's directory.
+     * @param conflicts The state bits that forbid the operation.
+     * @param delta The value added to the state.
+     * @return false if the operation conflicts with the file's state.
+     */
+    private boolean tryAcquire(String file, int conflicts, int delta) {
+        while(true) {
+            AtomicInteger state = states.get(file);
+            if(state == null) {
+                state = states.computeIfAbsent(file, k -> new AtomicInteger());
+            }
+            int current = state.get();
+            if(current == RETIRED) {
+                // Being removed, help remove it and start over with a new entry.
+                states.remove(file, state);
+                continue;
+            }
+            if((current & conflicts) != 0) {
+                return false;
+            }
+            if(state.compareAndSet(current, current + delta)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Subtracts from the file's state, removing the entries of free files once too many files are tracked.
+     * @param file The file's name as it is found in the server's directory.
+     * @param held The state bits which must be set for the release to be valid.
+     * @param delta The value subtracted from the state.
+     * @return false if the file was not in the released state.
+     */
+    private boolean release(String file, int held, int delta) {
+        AtomicInteger state = states.get(file);
+        if(state == null) {
+            return false;
+        }
+        while(true) {
+            int current = state.get();
+            if(current == RETIRED || (current & held) == 0) {
+                return false;
+            }
+            int next = current - delta;
+            if(state.compareAndSet(current, next)) {
+                if(next == 0 && states.size() > IDLE_STATES) {
+                    retireIdle();
+                }
+                signalWaiters(file);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the files that are free, an entry that is being used again is left alone.
+     */
+    private void retireIdle() {
+        for(Map.Entry<String, AtomicInteger> entry : states.entrySet()) {
+            if(entry.getValue().compareAndSet(0, RETIRED)) {
+                states.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Records the lease of an operation that was just admitted.
+     */
+    private void addLease(Object owner, String file, int held, int delta) {
+        if(owner == null) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + leaseTimeoutNanos;
+        leases.computeIfAbsent(owner, k -> new ConcurrentLinkedQueue<>()).add(new Lease(file, held, delta, expiresAt));
+    }
+
+    /**
+     * Releases an operation the owner did with the file.
+     * @return false if the file was not in the released state.
+     */
+    private boolean releaseOwned(String file, int held, int delta, Object owner) {
+        if(owner == null) {
+            return release(file, held, delta);
+        }
+        Queue<Lease> owned = leases.get(owner);
+        if(owned != null) {
+            for(Lease lease : owned) {
+                if(lease.held == held && lease.file.equals(file) && lease.released.compareAndSet(false, true)) {
+                    owned.remove(lease);
+                    return release(file, held, delta);
+                }
+            }
+        }
+        // The lease was already reclaimed along with the file.
+        return true;
+    }
+
+    /**
+     * Reclaims the leases that weren't renewed in time.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        for(Queue<Lease> owned : leases.values()) {
+            for(Lease lease : owned) {
+                if(now - lease.expiresAt > 0 && lease.released.compareAndSet(false, true)) {
+                    owned.remove(lease);
+                    release(lease.file, lease.held, lease.delta);
+                    expiredLeases.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wakes the requests waiting for the file, if there are any, to check whether they are allowed now.
+     * @param file The file's name as it is found in the server's directory.
+     */
+    private void signalWaiters(String file) {
+        Waiters w = waiters.get(file);
+        if(w != null) {
+            w.lock.lock();
+            try {
+                w.changed.signalAll();
+            } finally {
+                w.lock.unlock();
+            }
+        }
     }
 }
@@ -0,0 +1,185 @@
+package bgu.spl.net.impl.tftp.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.ENCODING_FORMAT;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.CATALOG_WATCH;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.WORK_DIR;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * In-memory catalog of the files in the server's directory, so listing the directory doesn't scan it. <br/>
+ * The catalog is loaded once and kept current by the service, which reports the files it uploads and deletes.
+ * Changes made to the directory from outside the server are picked up by a {@link WatchService}.
+ * The encoded listing is built once and reused until the catalog changes.
+ */
+public class DirectoryCatalog {
+
+    private static class DirectoryCatalogHolder {
+        private static final DirectoryCatalog instance = new DirectoryCatalog(Paths.get(WORK_DIR), CATALOG_WATCH);
+    }
+
+    /**
+     * An encoded listing and the catalog's modification count it was built from.
+     */
+    private record Listing(long modifications, byte[] bytes) {
+    }
+
+    private final Path directory;
+    private final NavigableSet<String> files;
+    private final AtomicLong modifications;
+    private volatile Listing listing;
+    private volatile boolean loaded;
+
+    /*package*/ DirectoryCatalog(Path directory, boolean watch) {
+        this.directory = directory;
+        this.files = new ConcurrentSkipListSet<>();
+        this.modifications = new AtomicLong();
+        this.listing = null;
+        try {
+            reload();
+        } catch (IOException e) {
+            // Retried when the directory is listed.
+        }
+        if(watch) {
+            watch();
+        }
+    }
+
+    public static DirectoryCatalog getInstance() {
+        return DirectoryCatalogHolder.instance;
+    }
+
+    /**
+     * A file was added to the directory.
+     * @param file The file's name as it is found in the server's directory.
+     */
+    public void added(String file) {
+        if(files.add(file)) {
+            modifications.incrementAndGet();
+        }
+    }
+
+    /**
+     * A file was removed from the directory.
+     * @param file The file's name as it is found in the server's directory.
+     */
+    public void removed(String file) {
+        if(files.remove(file)) {
+            modifications.incrementAndGet();
+        }
+    }
+
+    /**
+     * Lists the files in the directory in the following format:
+     * (file name 1)\n
+     * (file name 2)\n
+     * ...
+     * (file name n)\n
+     * @return The encoded listing, must not be modified.
+     * @throws IOException If the directory could not be read.
+     */
+    public byte[] listing() throws IOException {
+        if(!loaded) {
+            reload();
+        }
+        // Read the count first, a change made while encoding makes this listing stale right away.
+        long current = modifications.get();
+        Listing cached = listing;
+        if(cached != null && cached.modifications() == current) {
+            return cached.bytes();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(String file : files) {
+            out.writeBytes(file.getBytes(ENCODING_FORMAT));
+            out.write('\n');
+        }
+        byte[] bytes = out.toByteArray();
+        listing = new Listing(current, bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the directory again, files that are still being uploaded are left out.
+     * @throws IOException If the directory could not be read.
+     */
+    private void reload() throws IOException {
+        Set<String> found = new HashSet<>();
+        final ConcurrencyHelper helper = ConcurrencyHelper.getInstance();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(Path path : stream) {
+                String file = path.getFileName().toString();
+                if(!helper.isBeingWritten(file)) {
+                    found.add(file);
+                }
+            }
+        }
+        files.retainAll(found);
+        files.addAll(found);
+        modifications.incrementAndGet();
+        loaded = true;
+    }
+
+    /**
+     * Starts a daemon thread which applies changes made to the directory from outside the server.
+     */
+    private void watch() {
+        final WatchService watcher;
+        try {
+            watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, ENTRY_CREATE, ENTRY_DELETE);
+        } catch (IOException e) {
+            // The catalog still follows the server's own changes.
+            e.printStackTrace();
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                WatchKey key;
+                do {
+                    key = watcher.take();
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        apply(event);
+                    }
+                } while(key.reset());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void apply(WatchEvent<?> event) {
+        if(event.kind() == OVERFLOW) {
+            try {
+                reload();
+            } catch (IOException e) {
+                loaded = false;
+            }
+            return;
+        }
+        String file = ((Path) event.context()).toString();
+        if(event.kind() == ENTRY_DELETE) {
+            removed(file);
+        } else if(!ConcurrencyHelper.getInstance().isBeingWritten(file)) {
+            // Uploads are added by the service once they're complete.
+            added(file);
+        }
+    }
+}
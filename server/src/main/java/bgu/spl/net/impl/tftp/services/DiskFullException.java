@@ -0,0 +1,19 @@
+package bgu.spl.net.impl.tftp.services;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server's directory has no room for the data of an upload.
+ */
+public class DiskFullException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DiskFullException(String message) {
+        super(message);
+    }
+
+    public DiskFullException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
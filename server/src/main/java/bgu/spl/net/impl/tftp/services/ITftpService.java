@@ -1,5 +1,9 @@
 package bgu.spl.net.impl.tftp.services;
 
+import bgu.spl.net.srv.FileRegion;
+
+import java.util.List;
+
 /**
  * This interface represents the TFTP service.
  * The TFTP service is used to handle all the requests from the client after the request has been decoded.
@@ -36,7 +40,129 @@ public interface ITftpService {
      * @return byte array of the file
      * @throws Exception depends on the implementation, but there will be exceptions.
      */
-    byte[] readFile(short block) throws Exception;
+    byte[] readFile(long block) throws Exception;
+
+    /**
+     * Decides the block size of a transfer whose client asked for a specific one.
+     * @param requested The block size the client asked for.
+     * @return The block size to use, at most the requested one, or -1 if the request can't be honoured.
+     */
+    int negotiateBlockSize(int requested);
+
+    /**
+     * Decides the window size of a transfer whose client asked for a specific one.
+     * @param requested The window size the client asked for.
+     * @return The window size to use, at most the requested one, or -1 if the request can't be honoured.
+     */
+    int negotiateWindowSize(int requested);
+
+    /**
+     * Decides the credit of a streaming transfer whose client asked for a specific one.
+     * @param requested The credit the client asked for, in blocks.
+     * @return The credit to use, at most the requested one, or -1 if the request can't be honoured.
+     */
+    int negotiateCredit(int requested);
+
+    /**
+     * Decides the codec a transfer whose client asked for compression is compressed with.
+     * @param requested The codecs the client supports separated by commas, in the order it prefers them.
+     * @return The codec's name, or null if the transfer isn't compressed.
+     */
+    String negotiateCompression(String requested);
+
+    /**
+     * Sends the file being read compressed as a single stream, cut into blocks of the transfer's block size.
+     * Must be called after {@link #startRead(String, int, int)}, before the first block is read.
+     * @param codec The negotiated codec's name.
+     */
+    void compressRead(String codec);
+
+    /**
+     * Decides the digest a transfer whose client asked for a checksum is checked with.
+     * @param requested The digests the client supports separated by commas, in the order it prefers them.
+     * @return The digest's name, or null if the transfer isn't checked.
+     */
+    String negotiateChecksum(String requested);
+
+    /**
+     * Sends the digest of the blocks of the file being read after them, in the transfer's last block.
+     * Must be called after {@link #startRead(String, int, int)}, before the first block is read.
+     * @param digest The negotiated digest's name.
+     */
+    void digestRead(String digest);
+
+    /**
+     * @return Whether the blocks of the file being read aren't the file as it is, because they're compressed or
+     * followed by a digest, they aren't regions of the file then.
+     */
+    boolean isReadTransformed();
+
+    /**
+     * Starts reading a file with a negotiated block size and window size, without reading its first block.
+     * The first window is read once the client acknowledges block 0.
+     * @param filename The file's name in the server's working directory.
+     * @param blockSize The transfer's block size.
+     * @param windowSize Number of blocks that may be sent before the client acknowledges them.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    void startRead(String filename, int blockSize, int windowSize) throws Exception;
+
+    /**
+     * @return Size of the file being read, or -1 if no file is being read.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    long getReadSize() throws Exception;
+
+    /**
+     * Resumes the download of a file the client already has the beginning of, the transfer's first block starts
+     * at the offset. Must be called after {@link #startRead(String, int, int)}, before the first block is read.
+     * @param offset Number of bytes the client already has.
+     * @param checksum CRC32C of the client's bytes, in hexadecimal.
+     * @return The offset the download starts at, 0 if the client's bytes don't match the file's.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    long seekRead(long offset, String checksum) throws Exception;
+
+    /**
+     * @return Number of blocks of the file being read or of the directory listing that were already sent, the block
+     * that follows them is the first block {@link #readWindow(long)} returns.
+     */
+    long getSentBlocks();
+
+    /**
+     * Slides the window of the file being read after an acknowledgement.
+     * @param block The last block the client acknowledged, acknowledgements are cumulative.
+     * @return The blocks that weren't sent yet and fit in the window, the last one ends the file if it's shorter
+     * than the block size. Empty if no file is being read.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    List<byte[]> readWindow(long block) throws Exception;
+
+    /**
+     * Zero-copy variant of {@link #readFile(String)}.
+     * Used in the first time we want to read a file.
+     * @param filename The file's name in the server's working directory.
+     * @return The file's first block as a region of the file.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    FileRegion readFileRegion(String filename) throws Exception;
+
+    /**
+     * Zero-copy variant of {@link #handleAcknowledgement(long)} for file downloads.
+     * @param block The last block the client acknowledged.
+     * @return The next block as a region of the file, or null if no file is being read.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    FileRegion nextFileRegion(long block) throws Exception;
+
+    /**
+     * Zero-copy variant of {@link #readWindow(long)}.
+     * @param block The last block the client acknowledged, acknowledgements are cumulative.
+     * @return The blocks that weren't sent yet and fit in the window as regions of the file.
+     * Empty if no file is being read.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    List<FileRegion> nextFileRegions(long block) throws Exception;
 
     /**
      * Request to write file to server
@@ -47,6 +173,63 @@ public interface ITftpService {
      */
     boolean writeRequest(String filename) throws Exception;
 
+    /**
+     * Request to write file to server with a negotiated block size and acknowledgement interval.
+     * @param filename The file's name.
+     * @param blockSize The transfer's block size, the upload ends with a block shorter than it.
+     * @param ackInterval Number of blocks received between two acknowledgements, the window size when a window
+     * was negotiated or half the credit when streaming.
+     * @param size The file's size as declared by the client, or -1 if it's unknown.
+     * @return Whether the file can be written.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    boolean writeRequest(String filename, int blockSize, int ackInterval, long size) throws Exception;
+
+    /**
+     * Same as {@link #writeRequest(String, int, int, long)}, a resumable upload continues the partial file of an
+     * interrupted resumable upload of the same file and keeps its own partial file if it's interrupted.
+     * @param resumable Whether the upload can be resumed.
+     * @return Whether the file can be written.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    boolean writeRequest(String filename, int blockSize, int ackInterval, long size, boolean resumable)
+            throws Exception;
+
+    /**
+     * Receives the file being uploaded compressed as a single stream, the upload fails if its last block doesn't
+     * end the stream. Must be called after a successful write request, before the first block is received.
+     * @param codec The negotiated codec's name.
+     */
+    void decompressUpload(String codec);
+
+    /**
+     * Checks the digest the last block of the file being uploaded carries, the upload fails and its file is deleted
+     * if it doesn't match. Must be called after a successful write request, before the first block is received.
+     * @param digest The negotiated digest's name.
+     */
+    void verifyUpload(String digest);
+
+    /**
+     * @return Number of bytes of the file being uploaded that the server already has, the client sends the rest.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    long getUploadOffset() throws Exception;
+
+    /**
+     * @return CRC32C of the bytes of the file being uploaded that the server already has, in hexadecimal.
+     * The client resumes the upload only if its file starts with the same bytes.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    String getUploadChecksum() throws Exception;
+
+    /**
+     * Whether the last block written to the file being uploaded is acknowledged, only every acknowledgement
+     * interval's last block and the file's last block are.
+     * Blocks are counted by the service, the block numbers of the packets roll over.
+     * @return True if the block should be acknowledged.
+     */
+    boolean shouldAcknowledge();
+
     /**
      * Data to write to file
      * Make sure to broadcast to all users the file was added after the complete write was successful.
@@ -65,5 +248,23 @@ public interface ITftpService {
      */
     byte[] directoryRequest() throws Exception;
 
-    byte[] handleAcknowledgement(short block) throws Exception;
+    /**
+     * Answers an acknowledgement of a lock-step download or of a directory listing.
+     * @param block The last block the client acknowledged, unwrapped against {@link #getSentBlocks()}.
+     * @return The block that follows it, or null if nothing is being sent.
+     * @throws Exception depends on the implementation, but there will be exceptions.
+     */
+    byte[] handleAcknowledgement(long block) throws Exception;
+
+    /**
+     * Stops the connection's transfers after the client reported an error, an unfinished upload is deleted even
+     * if it's resumable.
+     */
+    void cancelTransfer();
+
+    /**
+     * Releases everything held for the connection's transfers (open files, file flags).
+     * Called when the connection is closed, whether the client asked for it or not.
+     */
+    void disconnect();
 }
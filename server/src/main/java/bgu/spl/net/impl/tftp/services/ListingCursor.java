@@ -0,0 +1,141 @@
+package bgu.spl.net.impl.tftp.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.ENCODING_FORMAT;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
+
+/**
+ * Encodes a directory listing into data blocks one block at a time, while the directory is being read. <br/>
+ * The listing has the format (file name)\n for every file. Blocks are cut by encoded bytes, so a name may be split
+ * between two blocks, and every block but the last is exactly 512 bytes long.
+ * Only the current block and the name being encoded are kept in memory.
+ */
+public class ListingCursor implements Closeable {
+
+    private final Iterator<String> names;
+    private final Closeable source;
+    /**
+     * The encoded entry being written to the blocks, null if the next entry wasn't encoded yet.
+     */
+    private byte[] entry;
+    private int entryOffset;
+    /**
+     * The last block that was produced, sent again if the client acknowledges the block before it again.
+     */
+    private byte[] last;
+    private long produced;
+    private boolean done;
+
+    /**
+     * @param names The names to list.
+     * @param source Closed once the listing is over, may be null.
+     */
+    public ListingCursor(Iterator<String> names, Closeable source) {
+        this.names = names;
+        this.source = source;
+        this.entry = null;
+        this.entryOffset = 0;
+        this.last = null;
+        this.produced = 0;
+        this.done = false;
+    }
+
+    /**
+     * Opens a cursor that reads the directory as the listing is sent.
+     * Files that are still being uploaded are left out.
+     * @param directory The directory to list.
+     * @return The cursor, must be closed.
+     * @throws IOException If the directory could not be opened.
+     */
+    public static ListingCursor open(Path directory) throws IOException {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+        Iterator<Path> paths = stream.iterator();
+        Iterator<String> names = new Iterator<>() {
+            private String next = advance();
+
+            private String advance() {
+                while(paths.hasNext()) {
+                    String name = paths.next().getFileName().toString();
+                    if(!ConcurrencyHelper.getInstance().isBeingWritten(name)) {
+                        return name;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if(next == null) {
+                    throw new NoSuchElementException();
+                }
+                String current = next;
+                next = advance();
+                return current;
+            }
+        };
+        return new ListingCursor(names, stream);
+    }
+
+    /**
+     * Returns the block following the acknowledged one.
+     * @param acknowledged The number of the last block the client acknowledged, 0 for the first block.
+     * @return The block, shorter than a full block if it's the last one, or null if the whole listing was sent.
+     */
+    public byte[] block(long acknowledged) {
+        if(acknowledged == produced - 1) {
+            return last;
+        }
+        if(done || acknowledged != produced) {
+            return null;
+        }
+        byte[] block = new byte[MAX_DATA_PACKET_SIZE];
+        int size = 0;
+        while(size < block.length) {
+            if(entry == null) {
+                if(!names.hasNext()) {
+                    break;
+                }
+                byte[] name = names.next().getBytes(ENCODING_FORMAT);
+                entry = new byte[name.length + 1];
+                System.arraycopy(name, 0, entry, 0, name.length);
+                entry[name.length] = '\n';
+                entryOffset = 0;
+            }
+            int length = Math.min(block.length - size, entry.length - entryOffset);
+            System.arraycopy(entry, entryOffset, block, size, length);
+            size += length;
+            entryOffset += length;
+            if(entryOffset == entry.length) {
+                entry = null;
+            }
+        }
+        if(size < block.length) {
+            byte[] shorter = new byte[size];
+            System.arraycopy(block, 0, shorter, 0, size);
+            block = shorter;
+            done = true;
+        }
+        last = block;
+        produced++;
+        return block;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(source != null) {
+            source.close();
+        }
+    }
+}
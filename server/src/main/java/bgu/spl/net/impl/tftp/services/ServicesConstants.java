@@ -1,6 +1,91 @@
 package bgu.spl.net.impl.tftp.services;
 
+import bgu.spl.net.impl.tftp.GlobalConstants;
+
 public class ServicesConstants {
     public static final String WORK_DIR = "Files";
 
+    /**
+     * The largest block size the server agrees to when a client asks for one, see
+     * {@link bgu.spl.net.impl.tftp.GlobalConstants#BLOCK_SIZE_OPTION}.
+     */
+    public static final int MAX_NEGOTIATED_BLOCK_SIZE =
+            Integer.getInteger("tftp.blksize.max", GlobalConstants.MAX_BLOCK_SIZE);
+    /**
+     * The largest window size the server agrees to when a client asks for one, see
+     * {@link bgu.spl.net.impl.tftp.GlobalConstants#WINDOW_SIZE_OPTION}.
+     * Bounds the number of blocks a download queues on its connection at once.
+     */
+    public static final int MAX_NEGOTIATED_WINDOW_SIZE = Integer.getInteger("tftp.windowsize.max", 64);
+    /**
+     * The largest credit the server agrees to when a client asks to stream a transfer, see
+     * {@link bgu.spl.net.impl.tftp.GlobalConstants#CREDIT_OPTION}.
+     * Bounds the number of blocks a download queues on its connection at once, so it shouldn't exceed the
+     * connection's outbound queue capacity.
+     */
+    public static final int MAX_NEGOTIATED_CREDIT = Integer.getInteger("tftp.credit.max", 128);
+
+    /**
+     * Number of tagged transfers a connection may run at once, the transfer IDs go from 1 to this number.
+     * See {@link bgu.spl.net.impl.tftp.GlobalConstants#TRANSFER_ID_FLAG}.
+     */
+    public static final int MAX_TRANSFERS = Integer.getInteger("tftp.transfers.max", 16);
+
+    /**
+     * Whether transfers may be compressed, see {@link bgu.spl.net.impl.tftp.GlobalConstants#COMPRESSION_OPTION}.
+     */
+    public static final boolean COMPRESSION_ENABLED =
+            Boolean.parseBoolean(System.getProperty("tftp.compression", "true"));
+
+    /**
+     * Directory where the partial files of interrupted resumable uploads are kept until they are resumed, see
+     * {@link bgu.spl.net.impl.tftp.GlobalConstants#OFFSET_OPTION}.
+     * Must not be inside {@link #WORK_DIR}, partial files aren't listed or downloaded.
+     */
+    public static final String PARTIAL_DIR = System.getProperty("tftp.partial.dir", "Partial");
+
+    /**
+     * Size of the buffer uploads collect blocks in before writing them to the file.
+     */
+    public static final int UPLOAD_BUFFER_SIZE = Integer.getInteger("tftp.upload.buffer", 64 * 1024);
+    /**
+     * When uploads force their data to the disk, see {@link SyncPolicy}.
+     */
+    public static final SyncPolicy UPLOAD_SYNC_POLICY =
+            SyncPolicy.valueOf(System.getProperty("tftp.upload.sync", SyncPolicy.ON_COMPLETION.name()));
+    /**
+     * Number of bytes between syncs when using {@link SyncPolicy#EVERY_N_BYTES}.
+     */
+    public static final long UPLOAD_SYNC_BYTES = Long.getLong("tftp.upload.syncBytes", 16L * 1024 * 1024);
+
+    /**
+     * Maximal number of bytes held by the {@link BlockCache}, 0 disables it.
+     */
+    public static final long BLOCK_CACHE_CAPACITY = Long.getLong("tftp.cache.bytes", 32L * 1024 * 1024);
+    /**
+     * Number of independently locked segments of the {@link BlockCache}, each holds an equal share of its capacity.
+     */
+    public static final int BLOCK_CACHE_SEGMENTS = Integer.getInteger("tftp.cache.segments", 8);
+
+    /**
+     * How long a request for a busy file waits for it in milliseconds, see {@link ConcurrencyHelper}.
+     * 0 rejects such requests at once.
+     */
+    public static final long ADMISSION_TIMEOUT_MILLIS = Long.getLong("tftp.admission.timeout", 0);
+
+    /**
+     * How long a connection may hold a file without touching it in milliseconds, before the file is reclaimed.
+     * 0 disables the reclaiming of expired leases.
+     */
+    public static final long LEASE_TIMEOUT_MILLIS = Long.getLong("tftp.lease.timeout", 5 * 60 * 1000);
+
+    /**
+     * Whether directory listings are served from the {@link DirectoryCatalog}.
+     * Otherwise the directory is read while the listing is sent, see {@link ListingCursor}.
+     */
+    public static final boolean CATALOG_ENABLED = Boolean.parseBoolean(System.getProperty("tftp.catalog", "true"));
+    /**
+     * Whether the {@link DirectoryCatalog} watches the directory for changes made from outside the server.
+     */
+    public static final boolean CATALOG_WATCH = Boolean.parseBoolean(System.getProperty("tftp.catalog.watch", "true"));
 }
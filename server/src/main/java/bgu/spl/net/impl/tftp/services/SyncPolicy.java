@@ -0,0 +1,20 @@
+package bgu.spl.net.impl.tftp.services;
+
+/**
+ * When an upload forces its written data to the storage device.
+ * @see UploadSession
+ */
+public enum SyncPolicy {
+    /**
+     * Never, the OS decides when the data reaches the disk.
+     */
+    NEVER,
+    /**
+     * Once, after the last block was written.
+     */
+    ON_COMPLETION,
+    /**
+     * Every {@link ServicesConstants#UPLOAD_SYNC_BYTES} bytes and after the last block was written.
+     */
+    EVERY_N_BYTES
+}
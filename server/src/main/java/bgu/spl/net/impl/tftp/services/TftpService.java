@@ -1,17 +1,39 @@
 package bgu.spl.net.impl.tftp.services;
 
+import bgu.spl.net.impl.tftp.compression.Codec;
+import bgu.spl.net.impl.tftp.compression.Codecs;
+import bgu.spl.net.impl.tftp.compression.CompressedBlocks;
+import bgu.spl.net.impl.tftp.compression.Decompressor;
+import bgu.spl.net.impl.tftp.integrity.DigestAppender;
+import bgu.spl.net.impl.tftp.integrity.DigestVerifier;
+import bgu.spl.net.impl.tftp.integrity.Digests;
+import bgu.spl.net.srv.FileRegion;
 
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.zip.CRC32C;
 
-import static bgu.spl.net.impl.tftp.GlobalConstants.ENCODING_FORMAT;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_BLOCK_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_CREDIT;
 import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_WINDOW_SIZE;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MIN_BLOCK_SIZE;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.CATALOG_ENABLED;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.COMPRESSION_ENABLED;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.MAX_NEGOTIATED_BLOCK_SIZE;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.MAX_NEGOTIATED_CREDIT;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.MAX_NEGOTIATED_WINDOW_SIZE;
 import static bgu.spl.net.impl.tftp.services.ServicesConstants.WORK_DIR;
 
 /**
@@ -21,7 +43,80 @@ import static bgu.spl.net.impl.tftp.services.ServicesConstants.WORK_DIR;
 public class TftpService implements ITftpService {
 
     private String currentFileName;
-    private String filesList;
+    /**
+     * The directory listing being sent, shared with other connections so it must not be modified.
+     * Null if the directory isn't being listed.
+     */
+    private byte[] filesList;
+    /**
+     * The directory listing being sent when the catalog is disabled. Null if the directory isn't being listed.
+     */
+    private ListingCursor listingCursor;
+    /**
+     * The file being downloaded, open for the whole transfer. Null if no file is being read.
+     */
+    private FileChannel readChannel;
+    /**
+     * Version of the file being downloaded, used to look its blocks up in the {@link BlockCache}.
+     */
+    private long readVersion;
+    /**
+     * Block size of the file being downloaded.
+     */
+    private int readBlockSize = MAX_DATA_PACKET_SIZE;
+    /**
+     * Position of the first block of the file being downloaded, not 0 when the download is resumed.
+     */
+    private long readOffset;
+    /**
+     * Codec the file being downloaded is compressed with, null if it's sent as it is.
+     */
+    private Codec readCodec;
+    /**
+     * The compressed stream of the file being downloaded, created once a block isn't found in the cache.
+     */
+    private CompressedBlocks readBlocks;
+    /**
+     * Sends the digest of the file being downloaded after its blocks, null if the download isn't checked.
+     * It outlives the file, which is closed once its last block was read, until the digest's last block is sent.
+     */
+    private DigestAppender readDigest;
+    /**
+     * Reused for every block read, reallocated when a transfer uses a different block size.
+     */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(MAX_DATA_PACKET_SIZE);
+    /**
+     * Number of blocks of the file being downloaded that may be sent before the client acknowledges them.
+     */
+    private int readWindowSize = 1;
+    /**
+     * Number of blocks of the file being downloaded or of the directory listing that were already sent.
+     */
+    private long sentBlocks;
+    /**
+     * The file being uploaded. Null if no file is being written.
+     */
+    private UploadSession upload;
+    /**
+     * Block size of the file being uploaded.
+     */
+    private int uploadBlockSize = MAX_DATA_PACKET_SIZE;
+    /**
+     * Number of blocks of the file being uploaded that are received between two acknowledgements.
+     */
+    private int uploadAckInterval = 1;
+    /**
+     * Number of blocks of the file being uploaded that were already written.
+     */
+    private long receivedBlocks;
+    /**
+     * Decompresses the file being uploaded, null if it's received as it is.
+     */
+    private Decompressor uploadDecompressor;
+    /**
+     * Checks the digest of the file being uploaded, null if the upload isn't checked.
+     */
+    private DigestVerifier uploadVerifier;
 
     /**
      * Checks whether the user is trying any funny business.
@@ -35,7 +130,8 @@ public class TftpService implements ITftpService {
     /**
      * Attempts to delete a file from the server.
      * @param filename File to delete.
-     * @throws ConcurrentModificationException If the file is currently being read.
+     * @throws ConcurrentModificationException If the file is currently being written or deleted. Readers of the file
+     * don't prevent the deletion, they keep reading the version they opened.
      * @throws IllegalArgumentException If the file name contains illegal characters.
      * @throws RuntimeException If the file deletion was not successful.
      * @throws FileNotFoundException If the file is not found.
@@ -45,24 +141,24 @@ public class TftpService implements ITftpService {
         if(isIllegalFileName(filename)) {
             throw new IllegalArgumentException("Illegal file name!");
         }
-        try {
-            ConcurrencyHelper.getInstance().delete(filename);
-        } catch (ConcurrentModificationException e) {
-            throw e;
-        }
+        ConcurrencyHelper.getInstance().delete(filename, this);
         File f = new File(new File(WORK_DIR), filename);
         if(!f.exists()) {
-            ConcurrencyHelper.getInstance().deletionCompleted(filename);
+            ConcurrencyHelper.getInstance().deletionCompleted(filename, this);
             throw new FileNotFoundException("File not found.");
         }
         try {
             if (!f.delete()) {
-                ConcurrencyHelper.getInstance().deletionCompleted(filename);
+                ConcurrencyHelper.getInstance().deletionCompleted(filename, this);
                 throw new RuntimeException("Failed to delete file.");
             }
-            ConcurrencyHelper.getInstance().deletionCompleted(filename);
+            BlockCache.getInstance().invalidate(filename);
+            if(CATALOG_ENABLED) {
+                DirectoryCatalog.getInstance().removed(filename);
+            }
+            ConcurrencyHelper.getInstance().deletionCompleted(filename, this);
         } catch (Exception e) {
-            ConcurrencyHelper.getInstance().deletionCompleted(filename);
+            ConcurrencyHelper.getInstance().deletionCompleted(filename, this);
             throw e;
         }
     }
@@ -70,58 +166,427 @@ public class TftpService implements ITftpService {
     /**
      * Used to make continuous file reading easier.
      * Reads a file block and returns it, might return an array smaller than a block size or equals to 0.
-     * @param block The current block of file being read.
+     * The file is opened once, when the first block is read, and is read with positional reads until the transfer
+     * ends. Once a block smaller than the data-packet size was read the transfer is over and the file is freed.
+     * Blocks are looked up in the shared {@link BlockCache} first, blocks read from the disk are added to it.
+     * The blocks of a checked download are followed by their digest, see {@link DigestAppender}.
+     * @param block The number of the last block the client acknowledged, 0 for the first block of the file.
      * @return A byte array containing the file's contents in the specified block. Might return a smaller
-     * array then data-packet size if the block is the last of the file, if no bytes we're read due to the
-     * request of a block which isn't found in the file or if there was an undetected IO error within the OS.
+     * array then data-packet size if the block is the last of the file or if no bytes we're read due to the
+     * request of a block which isn't found in the file.
+     * @throws ConcurrentModificationException If the file is currently being deleted.
+     * @throws FileNotFoundException If the OS could not locate the file.
+     * @throws IOException If there was some kind of IO faulty while reading the file.
+     */
+    private byte[] readFileHelper(long block) throws Exception{
+        if(readDigest == null) {
+            return readFileBlock(block);
+        }
+        try {
+            byte[] output = readDigest.trailerBlock(block);
+            if(output == null) {
+                output = readDigest.add(block, readFileBlock(block));
+            }
+            if(output.length < readBlockSize) {
+                readDigest = null;
+            }
+            return output;
+        } catch (Exception e) {
+            readDigest = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a block of the file being downloaded, compressed if the download is.
+     * Once a block smaller than the block size was read the file is closed and freed.
+     * @param block The block's number, starting from 0.
+     * @return The block, shorter than the block size if it's the last one.
      * @throws ConcurrentModificationException If the file is currently being deleted.
      * @throws FileNotFoundException If the OS could not locate the file.
-     * @throws IOException If there was some kind of IO faulty while reading the file.     * @throws Exception
+     * @throws IOException If there was some kind of IO faulty while reading the file.
      */
-    private byte[] readFileHelper(short block) throws Exception{
+    private byte[] readFileBlock(long block) throws Exception {
         if(currentFileName == null) {
             return new byte[0];
         }
         try {
-            if(block == 0) {
-                ConcurrencyHelper.getInstance().read(currentFileName);
-            } else {
-                block--;
+            if(readChannel == null) {
+                openReadChannel();
+            }
+            ConcurrencyHelper.getInstance().renew(this);
+            if(readCodec != null) {
+                return readCompressedBlock(block);
             }
 
-            InputStream stream = new FileInputStream(new File(new File(WORK_DIR), currentFileName));
-            long skipBytes = block * MAX_DATA_PACKET_SIZE;
-            stream.skip(skipBytes);
-
-            byte[] output = new byte[MAX_DATA_PACKET_SIZE];
-            int read = stream.read(output);
-            stream.close();
+            final BlockCache cache = BlockCache.getInstance();
+            long position = readOffset + block * readBlockSize;
+            byte[] cached = cache.get(currentFileName, readVersion, readBlockSize, position);
+            if(cached != null) {
+                if(cached.length < readBlockSize) {
+                    endReadTransfer();
+                }
+                return cached;
+            }
 
-            if(read == -1 || read == 0) {
-                currentFileName = null;
-                return new byte[0];
-            } else if (read < MAX_DATA_PACKET_SIZE) {
-                ConcurrencyHelper.getInstance().free(currentFileName);
-                currentFileName = null;
+            if(readBuffer.capacity() != readBlockSize) {
+                readBuffer = ByteBuffer.allocate(readBlockSize);
+            }
+            readBuffer.clear();
+            int read = 0;
+            while(readBuffer.hasRemaining()) {
+                int current = readChannel.read(readBuffer, position + read);
+                if(current < 0) {
+                    break;
+                }
+                read += current;
+            }
 
-                byte[] trimmed = new byte[read];
-                System.arraycopy(output, 0, trimmed, 0, read);
-                return trimmed;
+            byte[] output = new byte[read];
+            readBuffer.flip();
+            readBuffer.get(output);
+            cache.put(currentFileName, readVersion, readBlockSize, position, output);
+            if(read < readBlockSize) {
+                endReadTransfer();
             }
             return output;
-            // We're not calling free in finally because the file may be still in reading progress.
+        } catch (IOException e) {
+            endReadTransfer();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a block of the compressed stream of the file being downloaded, looking it up in the {@link BlockCache}
+     * first. Blocks are compressed in order, blocks that were found in the cache are compressed again to get to a
+     * block that wasn't.
+     * @param block The block's number in the compressed stream, starting from 0.
+     * @return The block, shorter than the block size if it's the last one.
+     * @throws IOException If the file could not be read.
+     */
+    private byte[] readCompressedBlock(long block) throws IOException {
+        final BlockCache cache = BlockCache.getInstance();
+        // Only streams of the whole file are the same for all the readers.
+        boolean cacheable = readOffset == 0;
+        long position = block * readBlockSize;
+        byte[] output = cacheable
+                ? cache.get(currentFileName, readVersion, readCodec.name(), readBlockSize, position) : null;
+        if(output == null) {
+            if(readBlocks == null) {
+                readChannel.position(readOffset);
+                readBlocks = new CompressedBlocks(Channels.newInputStream(readChannel), readCodec.newCompressor(),
+                        readBlockSize);
+            }
+            while(readBlocks.nextBlock() < block) {
+                readBlocks.next();
+            }
+            output = readBlocks.next();
+            if(cacheable) {
+                cache.put(currentFileName, readVersion, readCodec.name(), readBlockSize, position, output);
+            }
+        }
+        if(output.length < readBlockSize) {
+            endReadTransfer();
+        }
+        return output;
+    }
+
+    /**
+     * Zero-copy variant of {@link #readFile(String)}.
+     * @param filename The file's name in the server's working directory.
+     * @return The file's first block as a region of the file.
+     * @throws ConcurrentModificationException If the file is currently being deleted.
+     * @throws IllegalArgumentException If the file's name is not allowed.
+     * @throws FileNotFoundException If the OS could not locate the file.
+     * @throws IOException If there was some kind of IO faulty while reading the file.
+     */
+    @Override
+    public FileRegion readFileRegion(String filename) throws Exception {
+        if(isIllegalFileName(filename)) {
+            throw new IllegalArgumentException("Illegal file name!");
+        }
+        endReadTransfer();
+        currentFileName = filename;
+        readBlockSize = MAX_DATA_PACKET_SIZE;
+        readOffset = 0;
+        readCodec = null;
+        readDigest = null;
+        readWindowSize = 1;
+        sentBlocks = 1;
+        return nextFileRegion(0);
+    }
+
+    /**
+     * Agrees to any block size in the allowed range, up to {@link ServicesConstants#MAX_NEGOTIATED_BLOCK_SIZE}.
+     */
+    @Override
+    public int negotiateBlockSize(int requested) {
+        if(requested < MIN_BLOCK_SIZE || requested > MAX_BLOCK_SIZE) {
+            return -1;
+        }
+        return Math.max(MIN_BLOCK_SIZE, Math.min(requested, MAX_NEGOTIATED_BLOCK_SIZE));
+    }
+
+    /**
+     * Agrees to any window size in the allowed range, up to {@link ServicesConstants#MAX_NEGOTIATED_WINDOW_SIZE}.
+     */
+    @Override
+    public int negotiateWindowSize(int requested) {
+        if(requested < 1 || requested > MAX_WINDOW_SIZE) {
+            return -1;
+        }
+        return Math.max(1, Math.min(requested, MAX_NEGOTIATED_WINDOW_SIZE));
+    }
+
+    /**
+     * Agrees to any credit in the allowed range, up to {@link ServicesConstants#MAX_NEGOTIATED_CREDIT}.
+     */
+    @Override
+    public int negotiateCredit(int requested) {
+        if(requested < 1 || requested > MAX_CREDIT) {
+            return -1;
+        }
+        return Math.max(1, Math.min(requested, MAX_NEGOTIATED_CREDIT));
+    }
+
+    /**
+     * Opens the file for a download with a negotiated block size and window size.
+     * @param filename The file's name in the server's working directory.
+     * @param blockSize The transfer's block size.
+     * @param windowSize Number of blocks that may be sent before the client acknowledges them.
+     * @throws ConcurrentModificationException If the file is currently being deleted.
+     * @throws IllegalArgumentException If the file's name is not allowed.
+     * @throws FileNotFoundException If the OS could not locate the file.
+     */
+    @Override
+    public void startRead(String filename, int blockSize, int windowSize) throws Exception {
+        if(isIllegalFileName(filename)) {
+            throw new IllegalArgumentException("Illegal file name!");
+        }
+        endReadTransfer();
+        currentFileName = filename;
+        readBlockSize = blockSize;
+        readOffset = 0;
+        readCodec = null;
+        readDigest = null;
+        readWindowSize = windowSize;
+        sentBlocks = 0;
+        openReadChannel();
+    }
+
+    /**
+     * Agrees to the first requested codec that's registered in {@link Codecs}, unless compression is disabled.
+     */
+    @Override
+    public String negotiateCompression(String requested) {
+        if(!COMPRESSION_ENABLED) {
+            return null;
+        }
+        Codec codec = Codecs.choose(requested);
+        return codec == null ? null : codec.name();
+    }
+
+    @Override
+    public void compressRead(String codec) {
+        readCodec = Codecs.get(codec);
+    }
+
+    /**
+     * Agrees to the first requested digest that's supported.
+     */
+    @Override
+    public String negotiateChecksum(String requested) {
+        return Digests.choose(requested);
+    }
+
+    @Override
+    public void digestRead(String digest) {
+        readDigest = new DigestAppender(Digests.create(digest), readBlockSize);
+    }
+
+    @Override
+    public boolean isReadTransformed() {
+        return readCodec != null || readDigest != null;
+    }
+
+    /**
+     * Accepts the offset only if it's within the file and the file's bytes before it have the client's checksum.
+     */
+    @Override
+    public long seekRead(long offset, String checksum) throws IOException {
+        if(readChannel == null || offset <= 0 || offset > readChannel.size() || checksum == null) {
+            return 0;
+        }
+        try {
+            if(Long.parseUnsignedLong(checksum, 16) != prefixChecksum(readChannel, offset)) {
+                return 0;
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        readOffset = offset;
+        return offset;
+    }
+
+    /**
+     * @param channel The file, read with positional reads.
+     * @param length Number of bytes from the file's start to check.
+     * @return CRC32C of the file's first bytes.
+     * @throws IOException If the file could not be read.
+     */
+    private static long prefixChecksum(FileChannel channel, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while(position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    @Override
+    public long getReadSize() throws IOException {
+        if(readChannel == null) {
+            return -1;
+        }
+        return readChannel.size();
+    }
+
+    @Override
+    public long getSentBlocks() {
+        return sentBlocks;
+    }
+
+    /**
+     * Reads the blocks that fit in the window after the acknowledged block and weren't sent yet.
+     * The transfer ends with the first block shorter than the block size.
+     */
+    @Override
+    public List<byte[]> readWindow(long block) throws Exception {
+        List<byte[]> blocks = new ArrayList<>();
+        long windowEnd = block + readWindowSize;
+        // The digest's blocks are sent after the file was closed.
+        for(long next = Math.max(block, sentBlocks);
+                (currentFileName != null || readDigest != null) && next < windowEnd; next++) {
+            blocks.add(readFileHelper(next));
+            sentBlocks = next + 1;
+        }
+        return blocks;
+    }
+
+    /**
+     * Zero-copy variant of {@link #readWindow(long)}, the region of the file's last block closes the file.
+     */
+    @Override
+    public List<FileRegion> nextFileRegions(long block) throws Exception {
+        List<FileRegion> regions = new ArrayList<>();
+        long windowEnd = block + readWindowSize;
+        for(long next = Math.max(block, sentBlocks); currentFileName != null && next < windowEnd; next++) {
+            regions.add(nextFileRegion(next));
+            sentBlocks = next + 1;
+        }
+        return regions;
+    }
+
+    /**
+     * Zero-copy variant of {@link #readFileHelper(long)}, the block isn't read, only located in the file.
+     * The region of the last block takes ownership of the file and closes it once it was sent.
+     * @param block The number of the last block the client acknowledged, 0 for the first block of the file.
+     * @return The next block as a region of the file, or null if no file is being read.
+     * @throws ConcurrentModificationException If the file is currently being deleted.
+     * @throws FileNotFoundException If the OS could not locate the file.
+     * @throws IOException If there was some kind of IO faulty while reading the file.
+     */
+    @Override
+    public FileRegion nextFileRegion(long block) throws Exception {
+        if(currentFileName == null) {
+            return null;
+        }
+        try {
+            if(readChannel == null) {
+                openReadChannel();
+            }
+            ConcurrencyHelper.getInstance().renew(this);
+            long position = readOffset + block * readBlockSize;
+            int count = (int) Math.max(0, Math.min(readBlockSize, readChannel.size() - position));
+            if(count < readBlockSize) {
+                FileRegion last = new FileRegion(readChannel, position, count, true);
+                readChannel = null;
+                BlockCache.getInstance().stopReading(currentFileName);
+                ConcurrencyHelper.getInstance().free(currentFileName, this);
+                currentFileName = null;
+                return last;
+            }
+            return new FileRegion(readChannel, position, count, false);
+        } catch (IOException e) {
+            endReadTransfer();
+            throw e;
+        }
+    }
+
+    /**
+     * Flags the current file as being read and opens it for the transfer.
+     * @throws ConcurrentModificationException If the file is currently being deleted or written.
+     * @throws FileNotFoundException If the OS could not locate the file.
+     */
+    private void openReadChannel() throws FileNotFoundException {
+        final ConcurrencyHelper helper = ConcurrencyHelper.getInstance();
+        try {
+            helper.read(currentFileName, this);
         } catch (ConcurrentModificationException e) {
+            // The transfer ends, like it does when the file isn't found.
             currentFileName = null;
             throw e;
+        }
+        readVersion = BlockCache.getInstance().startReading(currentFileName);
+        try {
+            readChannel = new FileInputStream(new File(new File(WORK_DIR), currentFileName)).getChannel();
         } catch (FileNotFoundException e) {
-            ConcurrencyHelper.getInstance().free(currentFileName);
-            currentFileName = null;
-            throw e;
-        } catch (IOException e) {
-            ConcurrencyHelper.getInstance().free(currentFileName);
+            BlockCache.getInstance().stopReading(currentFileName);
+            helper.free(currentFileName, this);
             currentFileName = null;
             throw e;
         }
+        // Readers don't stop deletions or writes, so the file might have been replaced before it was opened.
+        // Once it's open the transfer keeps reading this version, whatever happens to the file's name.
+        if(helper.isBeingWritten(currentFileName)
+                || readVersion != BlockCache.getInstance().version(currentFileName)) {
+            endReadTransfer();
+            throw new ConcurrentModificationException("File cannot be read.");
+        }
+    }
+
+    /**
+     * Ends the current read transfer, if there is one, closing its file and freeing it for modification.
+     */
+    private void endReadTransfer() {
+        if(readBlocks != null) {
+            try {
+                readBlocks.close();
+            } catch (IOException e) {
+                // Nothing to do, the file was only read.
+            }
+            readBlocks = null;
+        }
+        if(readChannel != null) {
+            try {
+                readChannel.close();
+            } catch (IOException e) {
+                // Nothing to do, the file was only read.
+            }
+            readChannel = null;
+            BlockCache.getInstance().stopReading(currentFileName);
+            ConcurrencyHelper.getInstance().free(currentFileName, this);
+        }
+        currentFileName = null;
     }
 
     /**
@@ -141,8 +606,15 @@ public class TftpService implements ITftpService {
         if(isIllegalFileName(filename)) {
             throw new IllegalArgumentException("Illegal file name!");
         }
+        endReadTransfer();
         currentFileName = filename;
-        return readFileHelper((short) 0);
+        readBlockSize = MAX_DATA_PACKET_SIZE;
+        readOffset = 0;
+        readCodec = null;
+        readDigest = null;
+        readWindowSize = 1;
+        sentBlocks = 1;
+        return readFileHelper(0);
     }
 
     /**
@@ -156,12 +628,13 @@ public class TftpService implements ITftpService {
      * @throws FileNotFoundException If the OS could not locate the file.
      * @throws IOException If there was some kind of IO faulty while reading the file.
      */
-    public byte[] readFile(short block) throws Exception {
+    public byte[] readFile(long block) throws Exception {
         return readFileHelper(block);
     }
 
-    public byte[] handleAcknowledgement(short block) throws Exception {
-        if(currentFileName == null && filesList == null) {
+    @Override
+    public byte[] handleAcknowledgement(long block) throws Exception {
+        if(currentFileName == null && filesList == null && listingCursor == null) {
             return null;
         }
         if(currentFileName != null) {
@@ -182,75 +655,234 @@ public class TftpService implements ITftpService {
      */
     @Override
     public boolean writeRequest(String filename) throws Exception {
+        return writeRequest(filename, MAX_DATA_PACKET_SIZE, 1, -1);
+    }
+
+    /**
+     * Same as {@link #writeRequest(String)}, with a negotiated block size and acknowledgement interval.
+     * The space of a file whose size is known is reserved right away.
+     * @param filename file to write
+     * @param blockSize The upload's block size, the upload ends with a block shorter than it.
+     * @param ackInterval Number of blocks received between two acknowledgements.
+     * @param size The file's size as declared by the client, or -1 if it's unknown.
+     * @return True if no such already file exists.
+     * @throws DiskFullException If there isn't enough space for the file, which is then deleted.
+     */
+    @Override
+    public boolean writeRequest(String filename, int blockSize, int ackInterval, long size) throws Exception {
+        return writeRequest(filename, blockSize, ackInterval, size, false);
+    }
+
+    /**
+     * The partial file of a resumable upload is restored to the server's directory while the upload runs, a
+     * non-resumable upload discards the partial file of the same name if there is one.
+     * Only the space the rest of the file needs is reserved.
+     */
+    @Override
+    public boolean writeRequest(String filename, int blockSize, int ackInterval, long size, boolean resumable)
+            throws Exception {
         if (isIllegalFileName(filename)) {
             throw new IllegalArgumentException("Illegal file name!");
         }
+        // Mark the file as being written before creating it
+        ConcurrencyHelper.getInstance().write(filename, this);
         try {
-            // Mark the file as being written before creating it
-            ConcurrencyHelper.getInstance().write(filename);
-            if (new File(new File(WORK_DIR), filename).createNewFile()) {
-                currentFileName = filename;
-                return true;
+            File file = new File(new File(WORK_DIR), filename);
+            if ((resumable && UploadSession.restorePartial(filename)) || file.createNewFile()) {
+                if (!resumable) {
+                    UploadSession.discardPartial(filename);
+                }
+                upload = new UploadSession(filename, resumable);
+                uploadBlockSize = blockSize;
+                uploadAckInterval = ackInterval;
+                receivedBlocks = 0;
             } else {
                 // If file creation fails, mark the write operation as completed to avoid locking the file.
-                // This shouldn't happen, but just in case.
-                ConcurrencyHelper.getInstance().writeCompleted(filename);
+                ConcurrencyHelper.getInstance().writeCompleted(filename, this);
                 return false;
             }
         } catch (Exception e) {
-            ConcurrencyHelper.getInstance().writeCompleted(filename);
-            currentFileName = null;
+            ConcurrencyHelper.getInstance().writeCompleted(filename, this);
+            upload = null;
             throw e;
         }
+        if (size >= 0) {
+            try {
+                upload.reserve(Math.max(0, size - upload.length()));
+            } catch (IOException e) {
+                // Nothing was received yet, the file is deleted or kept as it was if the upload is resumable.
+                abortUpload();
+                throw e;
+            }
+        }
+        return true;
     }
 
 
     /**
      * Writes/appends the data to the currently being written file.
      * Will release the file from being written if the data is less than the maximum data packet size
-     * or an error occurs in the ConcurrencyHelper.
+     * or if writing failed, in which case the partial file is deleted.
      *
      * @param data data to write
      * @return The file's name when writing is done.
      * @throws IllegalStateException If no file is currently being written, which means the service is in illegal
      * state.
-     * @throws IOException Read write in {@link java.io.OutputStream}.
+     * @throws IOException Read write in {@link java.nio.channels.FileChannel}.
      */
     @Override
     public String writeData(byte[] data) throws Exception {
-        if (currentFileName == null) {
+        if (upload == null) {
             throw new IllegalStateException("No file is being written currently.");
         }
-        File dir  = new File(WORK_DIR);
-        File file = new File(dir, currentFileName);
-        OutputStream stream = new FileOutputStream(file, true);
+        String fileName = upload.getFileName();
         try {
-            stream.write(data);
-            stream.close();
+            if (data.length > uploadBlockSize) {
+                throw new IllegalArgumentException("Block is larger than the transfer's block size.");
+            }
+            ConcurrencyHelper.getInstance().renew(this);
+            byte[] received = uploadVerifier == null ? data : uploadVerifier.update(data);
+            upload.write(uploadDecompressor == null ? received : uploadDecompressor.decompress(received));
+            receivedBlocks++;
             // Check if this is the last block of the file
-            if (data.length < MAX_DATA_PACKET_SIZE) {
+            if (data.length < uploadBlockSize) {
+                if (uploadVerifier != null && !uploadVerifier.verify()) {
+                    // The corrupted bytes are unknown, so the file can't be resumed either.
+                    abortUpload(true);
+                    throw new IOException("The file's checksum doesn't match.");
+                }
+                uploadVerifier = null;
+                endDecompression();
+                upload.complete();
+                upload = null;
+                BlockCache.getInstance().invalidate(fileName);
+                if(CATALOG_ENABLED) {
+                    DirectoryCatalog.getInstance().added(fileName);
+                }
                 // Mark the write operation as completed
-                ConcurrencyHelper.getInstance().writeCompleted(currentFileName);
-                String output = currentFileName;
-                currentFileName = null; // Reset currentFileName as the write operation is completed
-                return output;
+                ConcurrencyHelper.getInstance().writeCompleted(fileName, this);
+                return fileName;
             }
-        } catch (IOException e) {
-            // Handle IOException
-            ConcurrencyHelper.getInstance().writeCompleted(currentFileName);
-            currentFileName = null;
-            stream.close();
-            throw e;
         } catch (Exception e) {
-            // Handle any other exception
-            ConcurrencyHelper.getInstance().writeCompleted(currentFileName);
-            currentFileName = null;
-            stream.close();
+            if (upload != null) {
+                abortUpload();
+            }
             throw e;
         }
         return null;
     }
 
+    @Override
+    public void decompressUpload(String codec) {
+        if (upload == null) {
+            throw new IllegalStateException("No file is being written currently.");
+        }
+        uploadDecompressor = Codecs.get(codec).newDecompressor();
+    }
+
+    @Override
+    public void verifyUpload(String digest) {
+        if (upload == null) {
+            throw new IllegalStateException("No file is being written currently.");
+        }
+        uploadVerifier = new DigestVerifier(Digests.create(digest));
+    }
+
+    @Override
+    public long getUploadOffset() throws IOException {
+        if (upload == null) {
+            throw new IllegalStateException("No file is being written currently.");
+        }
+        return upload.length();
+    }
+
+    @Override
+    public String getUploadChecksum() throws IOException {
+        long length = getUploadOffset();
+        try (FileChannel channel = FileChannel.open(Paths.get(WORK_DIR, upload.getFileName()),
+                StandardOpenOption.READ)) {
+            return Long.toHexString(prefixChecksum(channel, length));
+        }
+    }
+
+    /**
+     * Ends the decompression of the upload, if it's compressed.
+     * @throws IOException If the compressed stream didn't end with the upload's last block.
+     */
+    private void endDecompression() throws IOException {
+        if (uploadDecompressor == null) {
+            return;
+        }
+        boolean finished = uploadDecompressor.isFinished();
+        uploadDecompressor.end();
+        uploadDecompressor = null;
+        if (!finished) {
+            throw new IOException("The compressed data ended early.");
+        }
+    }
+
+    @Override
+    public boolean shouldAcknowledge() {
+        return receivedBlocks % uploadAckInterval == 0;
+    }
+
+    /**
+     * Stops the current upload and releases it, the partial file is kept if the upload is resumable.
+     */
+    private void abortUpload() {
+        abortUpload(false);
+    }
+
+    /**
+     * Stops the current upload and releases it.
+     * @param discard Whether the partial file is deleted even if the upload is resumable.
+     */
+    private void abortUpload(boolean discard) {
+        uploadVerifier = null;
+        if (uploadDecompressor != null) {
+            uploadDecompressor.end();
+            uploadDecompressor = null;
+        }
+        String fileName = upload.getFileName();
+        if (discard) {
+            upload.discard();
+        } else {
+            upload.abort();
+        }
+        upload = null;
+        BlockCache.getInstance().invalidate(fileName);
+        ConcurrencyHelper.getInstance().writeCompleted(fileName, this);
+    }
+
+    @Override
+    public void cancelTransfer() {
+        if(readChannel != null) {
+            endReadTransfer();
+        }
+        currentFileName = null;
+        readDigest = null;
+        if(upload != null) {
+            abortUpload(true);
+        }
+        endListing();
+    }
+
+    /**
+     * Ends the connection's transfers, if there are any. An unfinished upload is deleted unless it's resumable.
+     * Anything the connection still holds after that is reclaimed, so its files are never left busy.
+     */
+    @Override
+    public void disconnect() {
+        if(readChannel != null) {
+            endReadTransfer();
+        }
+        if(upload != null) {
+            abortUpload();
+        }
+        endListing();
+        ConcurrencyHelper.getInstance().releaseAll(this);
+    }
+
     /**
      * Lists all the files in the server's directory.
      * Will list them in the following format:
@@ -259,40 +891,64 @@ public class TftpService implements ITftpService {
      * ⋯
      * (file name n)\n
      * Will exclude files that are still being created.
+     * The listing is served from the {@link DirectoryCatalog}, the directory itself isn't scanned. If the catalog
+     * is disabled, the directory is read block by block as the listing is sent.
      * @return All the files in the server that are not still being created.
      * @throws IOException If some sort of error occurred while listing the files.
      */
     @Override
     public byte[] directoryRequest() throws Exception {
-        File directory = new File(WORK_DIR);
-        // Initialize empty list of files
-        StringBuilder fileList = new StringBuilder();
-        // List all files in the directory
-        String[] files = directory.list();
-        if (files == null) {
-            throw new IOException("Directory does not exist or an I/O error occurred");
+        endReadTransfer();
+        readDigest = null;
+        endListing();
+        sentBlocks = 0;
+        if(CATALOG_ENABLED) {
+            filesList = DirectoryCatalog.getInstance().listing();
+        } else {
+            listingCursor = ListingCursor.open(Paths.get(WORK_DIR));
         }
-        final ConcurrencyHelper helper = ConcurrencyHelper.getInstance();
-        for (String file : files) {
-            if (!helper.isBeingWritten(file)) {
-                fileList.append(file).append("\n");
+        return continuousFilesReader(0);
+    }
+
+    /**
+     * A listing isn't limited to 65535 blocks, block numbers are counted like the blocks of a file.
+     * @param block The number of the last block of the listing the client acknowledged, 0 for the first block.
+     * @return The next block of the listing, or null if the whole listing was sent.
+     */
+    private byte[] continuousFilesReader(long block) {
+        byte[] next;
+        if(listingCursor != null) {
+            next = listingCursor.block(block);
+            if(next == null) {
+                endListing();
             }
+        } else {
+            long start = block * MAX_DATA_PACKET_SIZE;
+            if(filesList.length < start) {
+                filesList = null;
+                return null;
+            }
+            int end = (int) Math.min(filesList.length, start + MAX_DATA_PACKET_SIZE);
+            next = Arrays.copyOfRange(filesList, (int) start, end);
+        }
+        if(next != null) {
+            sentBlocks = Math.max(sentBlocks, block + 1);
         }
-        filesList = fileList.toString();
-        byte[] raw = filesList.getBytes(ENCODING_FORMAT);
-        int outLength = Math.min(MAX_DATA_PACKET_SIZE, raw.length);
-        byte[] out = new byte[outLength];
-        System.arraycopy(raw, 0, out, 0, outLength);
-        return out;
+        return next;
     }
 
-    private byte[] continuousFilesReader(short block) {
-        if(filesList.length() < block * MAX_DATA_PACKET_SIZE) {
-            filesList = null;
-            return null;
+    /**
+     * Ends the current directory listing, if there is one.
+     */
+    private void endListing() {
+        filesList = null;
+        if(listingCursor != null) {
+            try {
+                listingCursor.close();
+            } catch (IOException e) {
+                // Nothing to do, the directory was only read.
+            }
+            listingCursor = null;
         }
-        int start = block * MAX_DATA_PACKET_SIZE;
-        int end = Math.min(filesList.length(), (block + 1) * MAX_DATA_PACKET_SIZE);
-        return filesList.substring(start, end).getBytes(ENCODING_FORMAT);
     }
 }
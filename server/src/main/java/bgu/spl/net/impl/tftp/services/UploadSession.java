@@ -0,0 +1,268 @@
+package bgu.spl.net.impl.tftp.services;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.*;
+
+/**
+ * A single file upload.
+ * Holds the file open for the whole upload and collects the received blocks in a buffer, so the file is written
+ * in large chunks instead of once per block. The data is forced to the disk according to the {@link SyncPolicy}.
+ * When the client declares the file's size, the space it needs is reserved before any data is received.
+ * The partial file of an interrupted resumable upload is kept in {@link ServicesConstants#PARTIAL_DIR}, a later
+ * upload of the same file continues it.
+ */
+public class UploadSession {
+
+    /**
+     * Space reserved by all the uploads in progress for data they haven't written yet.
+     */
+    private static long reservedBytes = 0;
+
+    private final String fileName;
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final SyncPolicy syncPolicy;
+    private final long syncBytes;
+    /**
+     * Whether the partial file is kept if the upload is interrupted.
+     */
+    private final boolean resumable;
+    private long unsyncedBytes;
+    /**
+     * Size of the file's data that was written in whole, the buffer's data follows it.
+     */
+    private long writtenBytes;
+    /**
+     * Space this upload reserved and didn't write yet.
+     */
+    private long reservation;
+
+    /**
+     * Opens the file for the upload.
+     * @param fileName The file's name in the server's working directory.
+     * @throws FileNotFoundException If the file could not be opened for writing.
+     */
+    public UploadSession(String fileName) throws FileNotFoundException {
+        this(fileName, false);
+    }
+
+    /**
+     * Opens the file for the upload, a resumable upload appends to the file's data.
+     * @param fileName The file's name in the server's working directory.
+     * @param resumable Whether the partial file is kept if the upload is interrupted.
+     * @throws FileNotFoundException If the file could not be opened for writing.
+     */
+    public UploadSession(String fileName, boolean resumable) throws FileNotFoundException {
+        this(fileName, resumable, UPLOAD_BUFFER_SIZE, UPLOAD_SYNC_POLICY, UPLOAD_SYNC_BYTES);
+    }
+
+    public UploadSession(String fileName, boolean resumable, int bufferSize, SyncPolicy syncPolicy,
+                         long syncBytes) throws FileNotFoundException {
+        this.fileName = fileName;
+        this.file = new File(new File(WORK_DIR), fileName);
+        this.resumable = resumable;
+        this.writtenBytes = resumable ? file.length() : 0;
+        this.channel = new FileOutputStream(file, resumable).getChannel();
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.syncPolicy = syncPolicy;
+        this.syncBytes = syncBytes;
+        this.unsyncedBytes = 0;
+        this.reservation = 0;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Moves the partial file of an interrupted resumable upload back to the server's directory.
+     * @param fileName The file's name in the server's working directory.
+     * @return True if there was a partial file, false if there is none or the file already exists.
+     * @throws IOException If the partial file could not be moved.
+     */
+    public static boolean restorePartial(String fileName) throws IOException {
+        try {
+            Files.move(partialFile(fileName), Paths.get(WORK_DIR, fileName));
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the partial file of an interrupted resumable upload, if there is one.
+     * @param fileName The file's name in the server's working directory.
+     */
+    public static void discardPartial(String fileName) {
+        try {
+            Files.deleteIfExists(partialFile(fileName));
+        } catch (IOException e) {
+            // A stale partial file is only used if it matches the client's file.
+        }
+    }
+
+    private static Path partialFile(String fileName) {
+        return Paths.get(PARTIAL_DIR, fileName);
+    }
+
+    /**
+     * @return Number of bytes of the file that were received, including the data of the upload it resumes.
+     * @throws IOException If the file's size could not be determined.
+     */
+    public long length() throws IOException {
+        return writtenBytes + buffer.position();
+    }
+
+    /**
+     * Reserves the space of the whole file, so an upload that can't fit is rejected before its data is sent.
+     * Space reserved by the other uploads in progress isn't available, the reservation shrinks as data is written.
+     * @param size The file's size, as declared by the client.
+     * @throws DiskFullException If the server's directory doesn't have that much space left.
+     * @throws IOException If the free space could not be determined.
+     */
+    public void reserve(long size) throws IOException {
+        FileStore store = Files.getFileStore(file.toPath());
+        synchronized(UploadSession.class) {
+            if(store.getUsableSpace() - reservedBytes < size) {
+                throw new DiskFullException("Not enough space for " + size + " bytes.");
+            }
+            reservedBytes += size - reservation;
+            reservation = size;
+        }
+    }
+
+    /**
+     * Adds a block to the file, it might stay buffered until the buffer fills or the upload completes.
+     * @param data The block's data.
+     * @throws IOException If writing to the file failed.
+     */
+    public void write(byte[] data) throws IOException {
+        int offset = 0;
+        while(offset < data.length) {
+            int length = Math.min(buffer.remaining(), data.length - offset);
+            buffer.put(data, offset, length);
+            offset += length;
+            if(!buffer.hasRemaining()) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes whatever is left in the buffer, syncs if the policy requires it and closes the file.
+     * @throws IOException If writing to the file failed, the file is closed anyway.
+     */
+    public void complete() throws IOException {
+        try {
+            flush();
+            if(syncPolicy != SyncPolicy.NEVER && unsyncedBytes > 0) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+            release(reservation);
+        }
+    }
+
+    /**
+     * Stops the upload, closing the partially written file.
+     * The partial file of a resumable upload is moved to {@link ServicesConstants#PARTIAL_DIR} with the data
+     * received so far, otherwise it is deleted.
+     */
+    public void abort() {
+        if(!resumable) {
+            discard();
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // The buffered data is sent again when the upload is resumed.
+        }
+        try {
+            if(channel.size() != writtenBytes) {
+                // A failed write left data that can't be accounted for, the upload can't be continued from it.
+                discard();
+                return;
+            }
+            channel.close();
+            release(reservation);
+            Path partial = partialFile(fileName);
+            Files.createDirectories(partial.getParent());
+            Files.move(file.toPath(), partial, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Stops the upload, closing and deleting the partially written file.
+     */
+    public void discard() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The file is deleted anyway.
+        }
+        release(reservation);
+        file.delete();
+    }
+
+    /**
+     * Writes the buffered data to the file.
+     * If writing fails, the data that wasn't written stays in the buffer and the file is cut back to the data
+     * that was, so flushing again continues where the failed write stopped.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining()) {
+                int written = channel.write(buffer);
+                writtenBytes += written;
+                unsyncedBytes += written;
+                release(written);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(writtenBytes);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            if(Files.getFileStore(file.toPath()).getUsableSpace() < buffer.remaining()) {
+                throw new DiskFullException("No space left for the file.", e);
+            }
+            throw e;
+        } finally {
+            buffer.compact();
+        }
+        if(syncPolicy == SyncPolicy.EVERY_N_BYTES && unsyncedBytes >= syncBytes) {
+            channel.force(false);
+            unsyncedBytes = 0;
+        }
+    }
+
+    /**
+     * Gives back reserved space that was written or won't be.
+     */
+    private void release(long bytes) {
+        synchronized(UploadSession.class) {
+            long released = Math.min(bytes, reservation);
+            reservation -= released;
+            reservedBytes -= released;
+        }
+    }
+}
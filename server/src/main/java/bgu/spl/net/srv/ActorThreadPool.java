@@ -0,0 +1,90 @@
+package bgu.spl.net.srv;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A fixed thread pool where every submitted task belongs to an "actor".
+ * Tasks of the same actor are executed one after the other (never in parallel) and in the order they were submitted,
+ * while tasks of different actors can run in parallel.
+ * The reactor uses the connection handler as the actor so a protocol is never processed by two threads at once.
+ */
+public class ActorThreadPool {
+
+    private final Map<Object, Queue<Runnable>> acts;
+    private final ReadWriteLock actsRWLock;
+    private final Set<Object> playingNow;
+    private final ExecutorService threads;
+
+    public ActorThreadPool(int threads) {
+        this.threads = Executors.newFixedThreadPool(threads);
+        this.acts = new WeakHashMap<>();
+        this.playingNow = ConcurrentHashMap.newKeySet();
+        this.actsRWLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Submits a task for the given actor.
+     * @param act The actor the task belongs to.
+     * @param r The task to run.
+     */
+    public void submit(Object act, Runnable r) {
+        synchronized (act) {
+            if (!playingNow.contains(act)) {
+                playingNow.add(act);
+                execute(r, act);
+            } else {
+                pendingRunnablesOf(act).add(r);
+            }
+        }
+    }
+
+    /**
+     * Stops all the worker threads, pending tasks are dropped.
+     */
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    private Queue<Runnable> pendingRunnablesOf(Object act) {
+        actsRWLock.readLock().lock();
+        Queue<Runnable> pendingRunnables = acts.get(act);
+        actsRWLock.readLock().unlock();
+
+        if (pendingRunnables == null) {
+            actsRWLock.writeLock().lock();
+            acts.put(act, pendingRunnables = new LinkedList<>());
+            actsRWLock.writeLock().unlock();
+        }
+        return pendingRunnables;
+    }
+
+    private void execute(Runnable r, Object act) {
+        threads.execute(() -> {
+            try {
+                r.run();
+            } finally {
+                complete(act);
+            }
+        });
+    }
+
+    private void complete(Object act) {
+        synchronized (act) {
+            Queue<Runnable> pending = pendingRunnablesOf(act);
+            if (pending.isEmpty()) {
+                playingNow.remove(act);
+            } else {
+                execute(pending.poll(), act);
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import bgu.spl.net.api.MessagingProtocol;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 public abstract class BaseServer<T> implements Server<T> {
@@ -48,11 +49,15 @@ public abstract class BaseServer<T> implements Server<T> {
             while (!Thread.currentThread().isInterrupted()) {
 
                 Socket clientSock = serverSock.accept();
+                // Packets are small and often written back to back (a window of blocks), don't delay them.
+                clientSock.setTcpNoDelay(true);
                 BidiMessagingProtocol<T> protocol = protocolFactory.get();
                 BlockingConnectionHandler<T> handler = new BlockingConnectionHandler<>(
                         clientSock,
                         encdecFactory.get(),
-                        protocol);
+                        protocol,
+                        new OutboundQueue<>(),
+                        writerFactory());
                 if(connections != null) {
                     connections.connect(idCounter, handler);
                     protocol.start(idCounter, connections);
@@ -74,4 +79,13 @@ public abstract class BaseServer<T> implements Server<T> {
 
     protected abstract void execute(BlockingConnectionHandler<T>  handler);
 
+    /**
+     * Starts the connections' writer threads, a writer per connection next to the thread running its handler.
+     * Virtual threads by default, override to match the threads {@link #execute} runs the handlers on.
+     * @return The factory of the writer threads.
+     */
+    protected ThreadFactory writerFactory() {
+        return Thread.ofVirtual().factory();
+    }
+
 }
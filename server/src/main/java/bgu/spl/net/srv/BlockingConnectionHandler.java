@@ -7,20 +7,42 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * Reads and processes the client's messages on the thread running it.
+ * Outgoing messages go through a bounded {@link OutboundQueue} which is drained by the connection's own writer
+ * thread, so whoever sends a message never waits on this client's socket. The writer is started by the given
+ * factory, so it can be the same kind of thread the server runs its handlers on.
+ */
 public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler<T> {
 
+    private static final int BUFFER_SIZE = 1 << 13; //8k
+
     private final BidiMessagingProtocol<T> protocol;
     private final MessageEncoderDecoder<T> encdec;
     private final Socket sock;
+    private final OutboundQueue<T> outbound;
+    private final ThreadFactory writers;
     private BufferedInputStream in;
     private BufferedOutputStream out;
     private volatile boolean connected = true;
 
     public BlockingConnectionHandler(Socket sock, MessageEncoderDecoder<T> reader,BidiMessagingProtocol<T> protocol) {
+        this(sock, reader, protocol, new OutboundQueue<>(), Thread.ofVirtual().factory());
+    }
+
+    /**
+     * @param outbound The queue of the messages to write.
+     * @param writers Starts the connection's writer thread.
+     */
+    public BlockingConnectionHandler(Socket sock, MessageEncoderDecoder<T> reader, BidiMessagingProtocol<T> protocol,
+                                     OutboundQueue<T> outbound, ThreadFactory writers) {
         this.sock = sock;
         this.encdec = reader;
         this.protocol = protocol;
+        this.outbound = outbound;
+        this.writers = writers;
     }
 
     @Override
@@ -30,39 +52,117 @@ public class BlockingConnectionHandler<T> implements Runnable, ConnectionHandler
 
             in = new BufferedInputStream(sock.getInputStream());
             out = new BufferedOutputStream(sock.getOutputStream());
+            Thread writer = writers.newThread(this::write);
+            writer.start();
 
-            while (!protocol.shouldTerminate() && connected && (read = in.read()) >= 0) {
-                T nextMessage = encdec.decodeNextByte((byte) read);
-                if (nextMessage != null) {
-                    protocol.process(nextMessage);
-                }
+            // Read whatever the socket has and decode all the messages it completes in one pass.
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!protocol.shouldTerminate() && connected && (read = in.read(buffer)) >= 0) {
+                encdec.decodeNextBytes(buffer, 0, read, this::process);
             }
 
-        } catch (IOException ex) {
+            // The client closed the socket without disconnecting first.
+            if (!protocol.shouldTerminate()) {
+                protocol.disconnect();
+            }
+
+            // Let the writer flush what's left (e.g. the disconnect ACK) before the socket is closed.
+            outbound.close();
+            writer.join();
+        } catch (IOException | RuntimeException ex) {
             connected = false;
-            protocol.disconnect();
+            outbound.close();
+            if (!protocol.shouldTerminate()) {
+                protocol.disconnect();
+            }
             System.out.println("Oh no... we lost one.");
             //ex.printStackTrace();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
 
     }
 
+    /**
+     * Processes a decoded message, messages that arrive after the protocol terminated are dropped.
+     * @param message The decoded message.
+     */
+    private void process(T message) {
+        if (!protocol.shouldTerminate()) {
+            protocol.process(message);
+        }
+    }
+
+    /**
+     * The writer's loop, writes queued messages until the queue is closed and drained.
+     * Flushes only once the queue is empty so bursts are written together.
+     */
+    private void write() {
+        try {
+            T msg;
+            while ((msg = outbound.take()) != null) {
+                out.write(encdec.encode(msg));
+                if (outbound.isEmpty()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+            sock.close();
+        } catch (IOException ex) {
+            // Closing the socket wakes the reader which disconnects the protocol.
+            connected = false;
+            outbound.close();
+            outbound.clear();
+            try {
+                sock.close();
+            } catch (IOException ignored) {
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting messages, the socket is closed once the messages already queued were written.
+     */
     @Override
     public void close() throws IOException {
         connected = false;
-        sock.close();
+        outbound.close();
     }
 
     @Override
     public void send(T msg) {
-        //IMPLEMENT IF NEEDED - IT'S NEEDED
+        enqueue(msg, false);
+    }
+
+    @Override
+    public void sendBroadcast(T msg) {
+        enqueue(msg, true);
+    }
+
+    private void enqueue(T msg, boolean droppable) {
         if(!connected) return;
         try {
-            sock.getOutputStream().write(encdec.encode(msg));
-            sock.getOutputStream().flush();
+            if (!outbound.offer(msg, droppable)) {
+                // Too slow to keep up, closing the socket wakes the reader which disconnects the protocol.
+                connected = false;
+                outbound.close();
+                outbound.clear();
+                sock.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             // We need a logger someday...
             e.printStackTrace();
         }
     }
+
+    /**
+     * @return The connection's outbound queue, exposes its depth and drop count.
+     */
+    public OutboundQueue<T> getOutboundQueue() {
+        return outbound;
+    }
 }
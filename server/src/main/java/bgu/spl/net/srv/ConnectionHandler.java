@@ -19,4 +19,31 @@ public interface ConnectionHandler<T> extends Closeable {
 
     void send(T msg);
 
+    /**
+     * Sends a message that isn't a response to this connection's own request.
+     * Handlers with bounded outbound queues may drop it instead of waiting for room.
+     * @param msg The message to send.
+     */
+    default void sendBroadcast(T msg) {
+        send(msg);
+    }
+
+    /**
+     * @return true if the handler can write file regions directly to its socket, see {@link #sendFile}.
+     */
+    default boolean supportsFileRegions() {
+        return false;
+    }
+
+    /**
+     * Sends a message followed by a region of a file, without reading the file into memory.
+     * The region is released once it was written (or dropped).
+     * @param header The message written before the region.
+     * @param region The file region to write after the header.
+     * @throws UnsupportedOperationException If the handler doesn't support file regions.
+     */
+    default void sendFile(T header, FileRegion region) {
+        throw new UnsupportedOperationException("This connection handler cannot send file regions.");
+    }
+
 }
@@ -6,8 +6,26 @@ public interface Connections<T> {
 
     void connect(int connectionId, ConnectionHandler<T> handler);
 
+    /**
+     * @param connectionId The connection to send to.
+     * @param msg The message to send.
+     * @return true if the message was sent, false if the connection doesn't exist.
+     */
     boolean send(int connectionId, T msg);
 
+    /**
+     * Sends a message followed by a region of a file, zero-copy where the connection supports it.
+     * @param connectionId The connection to send to.
+     * @param header The message written before the region.
+     * @param region The file region to write after the header, released once it was sent.
+     * @return true if the message was sent, false if the connection doesn't exist.
+     */
+    boolean sendFile(int connectionId, T header, FileRegion region);
+
+    /**
+     * Removes and closes a connection, does nothing if it doesn't exist.
+     * @param connectionId The connection to disconnect.
+     */
     void disconnect(int connectionId);
 
     // Added observer design pattern for broadcasting
@@ -0,0 +1,96 @@
+package bgu.spl.net.srv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A part of a file that should be written to a connection as is.
+ * Handlers that write to a {@link java.nio.channels.SocketChannel} transfer it with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so the file's bytes never enter the heap.
+ */
+public class FileRegion {
+
+    private final FileChannel channel;
+    private final long position;
+    private final int count;
+    private final boolean closeOnRelease;
+    private long transferred;
+
+    /**
+     * @param channel The file.
+     * @param position Position of the region's first byte in the file.
+     * @param count Number of bytes in the region.
+     * @param closeOnRelease Whether the region owns the file and should close it once it was written.
+     */
+    public FileRegion(FileChannel channel, long position, int count, boolean closeOnRelease) {
+        this.channel = channel;
+        this.position = position;
+        this.count = count;
+        this.closeOnRelease = closeOnRelease;
+        this.transferred = 0;
+    }
+
+    /**
+     * @return Number of bytes in the region.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Transfers as much of the remaining region as the target accepts.
+     * @param target The channel to write to.
+     * @return Number of bytes transferred.
+     * @throws IOException If reading the file or writing to the target failed, or if the file was truncated
+     *                     before the region's end (the region can never be completed).
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        long written = channel.transferTo(position + transferred, count - transferred, target);
+        transferred += written;
+        if(written == 0 && position + transferred >= channel.size()) {
+            throw new IOException("The file ended " + (count - transferred) + " bytes before the region's end.");
+        }
+        return written;
+    }
+
+    /**
+     * @return true once the whole region was transferred.
+     */
+    public boolean isDone() {
+        return transferred >= count;
+    }
+
+    /**
+     * Reads the region into memory, for handlers that can't transfer it directly.
+     * @return The region's bytes, shorter than the region if the file ended before it.
+     * @throws IOException If reading the file failed.
+     */
+    public byte[] read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] output = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(output);
+        return output;
+    }
+
+    /**
+     * Called once the region was written or won't be written anymore.
+     * Closes the file if the region owns it.
+     */
+    public void release() {
+        if(closeOnRelease) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing to do, the file was only read.
+            }
+        }
+    }
+}
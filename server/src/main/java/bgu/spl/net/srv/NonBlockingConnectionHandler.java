@@ -0,0 +1,258 @@
+package bgu.spl.net.srv;
+
+import bgu.spl.net.api.BidiMessagingProtocol;
+import bgu.spl.net.api.MessageEncoderDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Connection handler used by the {@link Reactor}.
+ * Reading and writing are done by the selector thread, decoding and processing are done by the reactor's
+ * worker pool, so this handler never owns a thread of its own.
+ */
+public class NonBlockingConnectionHandler<T> implements ConnectionHandler<T> {
+
+    private static final int BUFFER_ALLOCATION_SIZE = 1 << 13; //8k
+    private static final ConcurrentLinkedQueue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+
+    private final BidiMessagingProtocol<T> protocol;
+    private final MessageEncoderDecoder<T> encdec;
+    private final OutboundQueue<Pending> writeQueue;
+    private final SocketChannel chan;
+    private final Reactor<T> reactor;
+    private volatile boolean connected = true;
+
+    public NonBlockingConnectionHandler(
+            MessageEncoderDecoder<T> reader,
+            BidiMessagingProtocol<T> protocol,
+            SocketChannel chan,
+            Reactor<T> reactor) {
+        this(reader, protocol, chan, reactor, new OutboundQueue<>());
+    }
+
+    public NonBlockingConnectionHandler(
+            MessageEncoderDecoder<T> reader,
+            BidiMessagingProtocol<T> protocol,
+            SocketChannel chan,
+            Reactor<T> reactor,
+            OutboundQueue<Pending> writeQueue) {
+        this.chan = chan;
+        this.writeQueue = writeQueue;
+        this.encdec = reader;
+        this.protocol = protocol;
+        this.reactor = reactor;
+    }
+
+    /**
+     * Called by the selector thread when the channel is readable.
+     * @return A task that decodes and processes what was read, to be run by the worker pool.
+     */
+    public Runnable continueRead() {
+        ByteBuffer buf = leaseBuffer();
+
+        boolean success = false;
+        try {
+            success = chan.read(buf) != -1;
+        } catch (IOException ex) {
+            // Connection reset by peer, handled below.
+        }
+
+        if (success) {
+            buf.flip();
+            return () -> {
+                try {
+                    encdec.decodeNextBytes(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining(),
+                            this::process);
+                } finally {
+                    releaseBuffer(buf);
+                }
+            };
+        } else {
+            releaseBuffer(buf);
+            // Stop selecting this channel until the disconnect task closes it.
+            reactor.updateInterestedOps(chan, 0);
+            return () -> {
+                if (!protocol.shouldTerminate()) {
+                    protocol.disconnect();
+                    System.out.println("Oh no... we lost one.");
+                }
+                closeChannel();
+            };
+        }
+    }
+
+    /**
+     * Processes a decoded message, messages that arrive after the protocol terminated are dropped.
+     * @param message The decoded message.
+     */
+    private void process(T message) {
+        if (!protocol.shouldTerminate()) {
+            protocol.process(message);
+        }
+    }
+
+    /**
+     * Called by the selector thread when the channel is writable.
+     * Closes the channel once everything was written if {@link #close()} was requested.
+     */
+    public void continueWrite() {
+        while (!writeQueue.isEmpty()) {
+            try {
+                Pending top = writeQueue.peek();
+                if (top.buffer.hasRemaining()) {
+                    chan.write(top.buffer);
+                    if (top.buffer.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (top.region != null) {
+                    top.region.transferTo(chan);
+                    if (!top.region.isDone()) {
+                        return;
+                    }
+                    top.region.release();
+                }
+                writeQueue.poll();
+            } catch (IOException ex) {
+                // The failed message is still queued, so closing the channel releases its region too.
+                closeChannel();
+                return;
+            }
+        }
+
+        if (!connected) {
+            closeChannel();
+        } else {
+            reactor.updateInterestedOps(chan, SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * @return true if the underlying channel is closed.
+     */
+    public boolean isClosed() {
+        return !chan.isOpen();
+    }
+
+    /**
+     * Stops accepting messages and closes the channel once all the queued messages were written,
+     * so the last response (e.g. the disconnect ACK) still reaches the client.
+     */
+    @Override
+    public void close() throws IOException {
+        connected = false;
+        if (writeQueue.isEmpty()) {
+            closeChannel();
+        } else {
+            reactor.updateInterestedOps(chan, SelectionKey.OP_WRITE);
+        }
+    }
+
+    @Override
+    public void send(T msg) {
+        enqueue(msg, false);
+    }
+
+    @Override
+    public void sendBroadcast(T msg) {
+        enqueue(msg, true);
+    }
+
+    @Override
+    public boolean supportsFileRegions() {
+        return true;
+    }
+
+    /**
+     * Queues the header and the region, the region is transferred straight from the file to the socket.
+     */
+    @Override
+    public void sendFile(T header, FileRegion region) {
+        if(!connected) {
+            region.release();
+            return;
+        }
+        enqueue(new Pending(ByteBuffer.wrap(encdec.encode(header)), region), false);
+    }
+
+    private void enqueue(T msg, boolean droppable) {
+        if(!connected) return;
+        enqueue(new Pending(ByteBuffer.wrap(encdec.encode(msg)), null), droppable);
+    }
+
+    /**
+     * Queues without waiting, the sender is a worker that serves other connections as well.
+     */
+    private void enqueue(Pending pending, boolean droppable) {
+        if (!writeQueue.tryOffer(pending, droppable)) {
+            // Too slow to keep up, drop the connection and let the protocol know.
+            if (pending.region != null) {
+                pending.region.release();
+            }
+            closeChannel();
+            reactor.submit(this, () -> {
+                if (!protocol.shouldTerminate()) {
+                    protocol.disconnect();
+                }
+            });
+            return;
+        }
+        reactor.updateInterestedOps(chan, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * @return The connection's outbound queue, exposes its depth and drop count.
+     */
+    public OutboundQueue<?> getOutboundQueue() {
+        return writeQueue;
+    }
+
+    private void closeChannel() {
+        connected = false;
+        // Nothing queued will be written anymore, release the files held by the queue.
+        writeQueue.close();
+        Pending pending;
+        while ((pending = writeQueue.poll()) != null) {
+            if (pending.region != null) {
+                pending.region.release();
+            }
+        }
+        try {
+            chan.close();
+        } catch (IOException ex) {
+            // We need a logger someday...
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * A queued message, optionally followed by a file region.
+     */
+    private static final class Pending {
+        private final ByteBuffer buffer;
+        private final FileRegion region;
+
+        private Pending(ByteBuffer buffer, FileRegion region) {
+            this.buffer = buffer;
+            this.region = region;
+        }
+    }
+
+    private static ByteBuffer leaseBuffer() {
+        ByteBuffer buff = BUFFER_POOL.poll();
+        if (buff == null) {
+            return ByteBuffer.allocate(BUFFER_ALLOCATION_SIZE);
+        }
+
+        buff.clear();
+        return buff;
+    }
+
+    private static void releaseBuffer(ByteBuffer buff) {
+        BUFFER_POOL.add(buff);
+    }
+}
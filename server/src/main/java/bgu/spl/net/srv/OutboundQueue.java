@@ -0,0 +1,238 @@
+package bgu.spl.net.srv;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of messages waiting to be written to a single connection.
+ * Senders add messages from any thread, the connection's writer removes them. When the queue is full the
+ * {@link OverflowPolicy} decides whether the sender waits, the message is dropped or the connection is closed.
+ * Senders that must never wait use {@link #tryOffer}, which closes the connection where the policy would wait.
+ * The defaults can be changed with the system properties {@code srv.outbound.capacity} and
+ * {@code srv.outbound.policy}, by default broadcasts to a full queue are dropped.
+ * @param <E> The type of the queued messages.
+ */
+public class OutboundQueue<E> {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("srv.outbound.capacity", 256);
+    public static final OverflowPolicy DEFAULT_POLICY =
+            OverflowPolicy.valueOf(System.getProperty("srv.outbound.policy", OverflowPolicy.DROP_BROADCASTS.name()));
+
+    /**
+     * Messages dropped by all the queues since the server started.
+     */
+    private static final AtomicLong totalDropped = new AtomicLong();
+
+    private final Deque<E> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private boolean closed;
+    private long dropped;
+
+    public OutboundQueue() {
+        this(DEFAULT_CAPACITY, DEFAULT_POLICY);
+    }
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive.");
+        }
+        this.queue = new ArrayDeque<>();
+        this.capacity = capacity;
+        this.policy = policy;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.closed = false;
+        this.dropped = 0;
+    }
+
+    /**
+     * Adds a message to the queue according to the overflow policy.
+     * Messages offered after the queue was closed are silently ignored.
+     * @param message The message to write.
+     * @param droppable Whether the message may be dropped (broadcasts).
+     * @return false if the queue is full and the policy requires the connection to be closed, true otherwise.
+     * @throws InterruptedException If interrupted while waiting for room.
+     */
+    public boolean offer(E message, boolean droppable) throws InterruptedException {
+        lock.lock();
+        try {
+            while(!closed && queue.size() >= capacity) {
+                if(policy == OverflowPolicy.DISCONNECT) {
+                    return false;
+                }
+                if(policy == OverflowPolicy.DROP_BROADCASTS && droppable) {
+                    drop();
+                    return true;
+                }
+                notFull.await();
+            }
+            add(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a message without ever waiting for room, for senders that serve other connections too (e.g. the
+     * reactor's workers). Where the policy would wait, the queue being full is handled like
+     * {@link OverflowPolicy#DISCONNECT}.
+     * Messages offered after the queue was closed are silently ignored.
+     * @param message The message to write.
+     * @param droppable Whether the message may be dropped (broadcasts).
+     * @return false if the queue is full and the message wasn't dropped, the connection should be closed.
+     */
+    public boolean tryOffer(E message, boolean droppable) {
+        lock.lock();
+        try {
+            if(!closed && queue.size() >= capacity) {
+                if(policy == OverflowPolicy.DROP_BROADCASTS && droppable) {
+                    drop();
+                    return true;
+                }
+                return false;
+            }
+            add(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(E message) {
+        if(!closed) {
+            queue.addLast(message);
+            notEmpty.signal();
+        }
+    }
+
+    private void drop() {
+        dropped++;
+        totalDropped.incrementAndGet();
+    }
+
+    /**
+     * Waits for the next message.
+     * @return The next message, or null once the queue is closed and everything queued before was taken.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        lock.lock();
+        try {
+            while(queue.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The next message without removing it, or null if the queue is empty.
+     */
+    public E peek() {
+        lock.lock();
+        try {
+            return queue.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The next message, or null if the queue is empty.
+     */
+    public E poll() {
+        lock.lock();
+        try {
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private E removeFirst() {
+        E message = queue.pollFirst();
+        if(message != null) {
+            notFull.signal();
+        }
+        return message;
+    }
+
+    /**
+     * Stops accepting messages, the messages already queued can still be taken.
+     * Wakes up anyone waiting on the queue.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all the queued messages, used when the connection is gone and they can't be written anymore.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            queue.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of messages currently waiting to be written.
+     */
+    public int depth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of messages this queue dropped.
+     */
+    public long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of messages dropped by all the queues.
+     */
+    public static long totalDropped() {
+        return totalDropped.get();
+    }
+}
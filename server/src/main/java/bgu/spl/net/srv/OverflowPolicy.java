@@ -0,0 +1,24 @@
+package bgu.spl.net.srv;
+
+/**
+ * What a connection does when its outbound queue is full.
+ * @see OutboundQueue
+ */
+public enum OverflowPolicy {
+    /**
+     * The sender waits until the connection's writer makes room.
+     * Only the thread-per-connection modes wait, in the reactor a full queue closes the connection instead, since
+     * a waiting worker would hold up the other connections it serves.
+     */
+    BLOCK,
+    /**
+     * Broadcasts are dropped, other messages wait like in {@link #BLOCK}. This is the default.
+     * The other messages are the connection's responses to its own requests, so the thread waiting for room is
+     * the connection's own reader.
+     */
+    DROP_BROADCASTS,
+    /**
+     * The connection is closed, a peer that can't keep up is not allowed to hold the server's memory.
+     */
+    DISCONNECT
+}
@@ -4,6 +4,7 @@ import bgu.spl.net.api.BidiMessagingProtocol;
 import bgu.spl.net.api.MessageEncoderDecoder;
 import bgu.spl.net.api.MessagingProtocol;
 import java.io.Closeable;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 public interface Server<T> extends Closeable {
@@ -31,9 +32,33 @@ public interface Server<T> extends Closeable {
             protected void execute(BlockingConnectionHandler<T>  handler) {
                 new Thread(handler).start();
             }
+
+            @Override
+            protected ThreadFactory writerFactory() {
+                return Thread.ofPlatform().factory();
+            }
         };
 
     }
 
+    /**
+     * This function returns a new instance of a reactor pattern server
+     * @param nthreads Number of threads available for protocol processing
+     * @param port The port for the server socket
+     * @param protocolFactory A factory that creats new MessagingProtocols
+     * @param encoderDecoderFactory A factory that creats new MessageEncoderDecoder
+     * @param connections The connections implementation the protocols are started with
+     * @param <T> The Message Object for the protocol
+     * @return A new reactor server
+     */
+    public static <T> Server<T> reactor(
+            int nthreads,
+            int port,
+            Supplier<BidiMessagingProtocol<T>> protocolFactory,
+            Supplier<MessageEncoderDecoder<T>> encoderDecoderFactory,
+            Connections<T> connections) {
+        return new Reactor<T>(nthreads, port, protocolFactory, encoderDecoderFactory, connections);
+    }
+
 
 }
@@ -0,0 +1,153 @@
+package bgu.spl.net.impl.tftp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TftpEncoderDecoderTests {
+
+    private TftpEncoderDecoder decoder;
+
+    @BeforeEach
+    public void setUp() {
+        decoder = new TftpEncoderDecoder();
+    }
+
+    private static int op(Operation operation) {
+        return operation.OP_CODE;
+    }
+
+    /**
+     * Builds a packet out of shorts (written as 2 bytes), strings (written with their terminator) and byte arrays.
+     */
+    private static byte[] packet(Object... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(Object field : fields) {
+            if(field instanceof Integer) {
+                out.writeBytes(EncodeDecodeHelper.shortToByte((short) (int) (Integer) field));
+            } else if(field instanceof String) {
+                out.writeBytes(((String) field).getBytes(GlobalConstants.ENCODING_FORMAT));
+                out.write(GlobalConstants.TERMINATOR);
+            } else {
+                out.writeBytes((byte[]) field);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Feeds the bytes one at a time and checks that the packet is only returned with its last byte.
+     */
+    private void assertDecodedWhole(byte[] packet) {
+        for(int i = 0; i < packet.length - 1; i++) {
+            assertNull(decoder.decodeNextByte(packet[i]), "Packet ended early at byte " + i);
+        }
+        assertArrayEquals(packet, decoder.decodeNextByte(packet[packet.length - 1]));
+    }
+
+    private List<byte[]> decodeInChunks(byte[] stream, int chunkSize) {
+        List<byte[]> messages = new ArrayList<>();
+        for(int offset = 0; offset < stream.length; offset += chunkSize) {
+            decoder.decodeNextBytes(stream, offset, Math.min(chunkSize, stream.length - offset), messages::add);
+        }
+        return messages;
+    }
+
+    @Test
+    public void fixedLengthPackets() {
+        assertDecodedWhole(packet(op(Operation.ACK), 7));
+        assertDecodedWhole(packet(op(Operation.DIRQ)));
+        assertDecodedWhole(packet(op(Operation.DISC)));
+    }
+
+    @Test
+    public void dataLengthComesFromItsSizeField() {
+        byte[] payload = new byte[300];
+        for(int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        assertDecodedWhole(packet(op(Operation.DATA), payload.length, 1, payload));
+        // Zero bytes in the payload don't end it, and an empty block ends right after its header.
+        assertDecodedWhole(packet(op(Operation.DATA), 0, 2));
+    }
+
+    @Test
+    public void dataLargerThanTheBufferGrowsIt() {
+        byte[] payload = new byte[GlobalConstants.MAX_BLOCK_SIZE];
+        payload[payload.length - 1] = 1;
+        assertDecodedWhole(packet(op(Operation.DATA), payload.length, 1, payload));
+        assertDecodedWhole(packet(op(Operation.ACK), 1));
+    }
+
+    @Test
+    public void terminatedPackets() {
+        assertDecodedWhole(packet(op(Operation.RRQ), "file.txt"));
+        assertDecodedWhole(packet(op(Operation.WRQ), "file.txt"));
+        assertDecodedWhole(packet(op(Operation.LOGRQ), "user"));
+        assertDecodedWhole(packet(op(Operation.DELRQ), "file.txt"));
+    }
+
+    @Test
+    public void terminatorsInsideTheHeaderDontEndThePacket() {
+        // Error code 0 and a broadcast of a deletion are zero bytes before the string.
+        assertDecodedWhole(packet(op(Operation.ERROR), 0, "Not defined"));
+        assertDecodedWhole(packet(op(Operation.BCAST), new byte[]{0}, "file.txt"));
+    }
+
+    @Test
+    public void optionsEndWithAnEmptyString() {
+        int rrq = op(Operation.RRQ) | GlobalConstants.OPTIONS_FLAG;
+        assertDecodedWhole(packet(rrq, "file.txt", "blksize", "1024", "windowsize", "8", ""));
+        assertDecodedWhole(packet(op(Operation.OACK), "blksize", "1024", ""));
+    }
+
+    @Test
+    public void taggedPacketsStartAfterTheTransferId() {
+        int flag = GlobalConstants.TRANSFER_ID_FLAG;
+        // Transfer ID 0 and block 0 are zero bytes where a terminated packet would end.
+        assertDecodedWhole(packet(op(Operation.ACK) | flag, 0, 0));
+        assertDecodedWhole(packet(op(Operation.DATA) | flag, 1, 3, 1, new byte[]{1, 0, 2}));
+        assertDecodedWhole(packet(op(Operation.ERROR) | flag, 2, 0, "Stopped"));
+        assertDecodedWhole(packet(op(Operation.RRQ) | flag | GlobalConstants.OPTIONS_FLAG, 3, "file.txt",
+                "tsize", "0", ""));
+    }
+
+    @Test
+    public void invalidOpCodesArePassedOnAfterTwoBytes() {
+        assertDecodedWhole(packet(99));
+        // Only requests carry options, and login requests aren't tagged.
+        assertDecodedWhole(packet(op(Operation.ACK) | GlobalConstants.OPTIONS_FLAG));
+        assertDecodedWhole(packet(op(Operation.LOGRQ) | GlobalConstants.TRANSFER_ID_FLAG));
+        // The decoder is back at the start of a packet afterwards.
+        assertDecodedWhole(packet(op(Operation.ACK), 1));
+    }
+
+    @Test
+    public void chunksDecodeLikeSingleBytes() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        List<byte[]> packets = List.of(
+                packet(op(Operation.LOGRQ), "user"),
+                packet(op(Operation.DATA), 512, 1, new byte[512]),
+                packet(op(Operation.DATA), 3, 2, new byte[]{0, 0, 0}),
+                packet(op(Operation.ACK), 2),
+                packet(op(Operation.RRQ) | GlobalConstants.OPTIONS_FLAG, "f", "blksize", "8", ""),
+                packet(op(Operation.DISC)));
+        packets.forEach(stream::writeBytes);
+        byte[] bytes = stream.toByteArray();
+        for(int chunkSize : new int[]{1, 2, 3, 7, 100, 511, 4096}) {
+            setUp();
+            List<byte[]> messages = decodeInChunks(bytes, chunkSize);
+            assertEquals(packets.size(), messages.size(), "Chunks of " + chunkSize);
+            for(int i = 0; i < packets.size(); i++) {
+                assertArrayEquals(packets.get(i), messages.get(i), "Chunks of " + chunkSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helpers shared by the benchmarks that measure whole servers and connections rather than a single method.
+ * Their measurements are repeated after a warm-up, so the JIT compiled the measured code before it's timed.
+ */
+final class BenchSupport {
+
+    private BenchSupport() {
+    }
+
+    /**
+     * @param sorted Samples in ascending order.
+     * @param percentile Between 0 and 100.
+     * @return The sample at the percentile.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    static long[] sorted(List<Long> samples) {
+        long[] values = new long[samples.size()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i);
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    static String micros(long nanos) {
+        return String.format("%.1f us", nanos / 1000.0);
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / 1_000_000.0);
+    }
+
+    static int freePort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * A server started in its own JVM, in a directory of its own holding the server's Files directory.
+     */
+    static final class ServerProcess implements AutoCloseable {
+        final Process process;
+        final Path directory;
+        final int port;
+
+        private ServerProcess(Process process, Path directory, int port) {
+            this.process = process;
+            this.directory = directory;
+            this.port = port;
+        }
+
+        /**
+         * Starts the server with the current JVM and class path, and waits until it accepts connections.
+         * @param mode The server mode and its arguments, as passed to TftpServer after the port.
+         * @param jvmOptions Options passed to the server's JVM, e.g. system properties.
+         */
+        static ServerProcess start(List<String> mode, List<String> jvmOptions) throws IOException,
+                InterruptedException {
+            Path directory = Files.createTempDirectory("tftp-bench");
+            Files.createDirectory(directory.resolve("Files"));
+            int port = freePort();
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            command.addAll(jvmOptions);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("bgu.spl.net.impl.tftp.TftpServer");
+            command.add(Integer.toString(port));
+            command.addAll(mode);
+            Process process = new ProcessBuilder(command).directory(directory.toFile())
+                    .redirectErrorStream(true).redirectOutput(directory.resolve("server.log").toFile()).start();
+            ServerProcess server = new ServerProcess(process, directory, port);
+            long deadline = System.nanoTime() + 20_000_000_000L;
+            while(true) {
+                try {
+                    new Socket("127.0.0.1", port).close();
+                    return server;
+                } catch (IOException e) {
+                    if(!process.isAlive() || System.nanoTime() > deadline) {
+                        server.close();
+                        throw new IOException("The server didn't start, see " + directory.resolve("server.log"));
+                    }
+                    Thread.sleep(50);
+                }
+            }
+        }
+
+        Path file(String name) {
+            return directory.resolve("Files").resolve(name);
+        }
+
+        /**
+         * @param field A field of /proc/[pid]/status, e.g. VmRSS or Threads.
+         * @return The field's value, or "?" where /proc isn't available.
+         */
+        String status(String field) {
+            try {
+                for(String line : Files.readAllLines(Path.of("/proc", Long.toString(process.pid()), "status"))) {
+                    if(line.startsWith(field + ":")) {
+                        return line.substring(field.length() + 1).trim();
+                    }
+                }
+            } catch (IOException e) {
+                // Not on Linux.
+            }
+            return "?";
+        }
+
+        /**
+         * Stops the server and deletes its files. An interrupt stops waiting for the server to exit, and is kept
+         * for the caller to see.
+         */
+        @Override
+        public void close() {
+            process.destroy();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            File[] files = directory.resolve("Files").toFile().listFiles();
+            if(files != null) {
+                for(File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.impl.tftp.services.ConcurrencyHelper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the lock-free file states against the synchronized ones they replaced, at 1, 8 and 64 threads. <br/>
+ * Every thread starts and ends transfers as fast as it can: mostly reads (read and free), and one in 16 a write
+ * (write and writeCompleted) that fails if the file is in use. With hot files all threads use the same file, with
+ * distinct files each thread has its own. <br/>
+ * Scores are operations (a start and its end) per microsecond, the conflicts counter is the number of operations
+ * rejected because the file was in use. On fewer cores than threads the threads take turns instead of running at
+ * once, so only a machine with at least as many cores as threads measures contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyHelperBenchmark {
+    private static final int WRITE_EVERY = 16;
+
+    @Param({"synchronized", "lock-free"})
+    public String states;
+
+    @Param({"hot", "distinct"})
+    public String files;
+
+    private FileStates fileStates;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    /**
+     * The operations both implementations have.
+     */
+    private interface FileStates {
+        void read(String file);
+
+        void free(String file);
+
+        void write(String file);
+
+        void writeCompleted(String file);
+    }
+
+    /**
+     * A thread's file and its count of operations, the rejected ones are reported along with the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Worker {
+        private String file;
+        private long done;
+        public long conflicts;
+
+        @Setup(Level.Iteration)
+        public void setUp(ConcurrencyHelperBenchmark benchmark) {
+            if(file == null) {
+                file = benchmark.files.equals("hot") ? "hot" : "file" + benchmark.threadIds.getAndIncrement();
+            }
+            conflicts = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConcurrencyHelperBenchmark.class.getName()).build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        if(states.equals("synchronized")) {
+            LegacyConcurrencyHelper legacy = new LegacyConcurrencyHelper();
+            fileStates = new FileStates() {
+                public void read(String file) { legacy.read(file); }
+                public void free(String file) { legacy.free(file); }
+                public void write(String file) { legacy.write(file); }
+                public void writeCompleted(String file) { legacy.writeCompleted(file); }
+            };
+        } else {
+            ConcurrencyHelper helper = ConcurrencyHelper.getInstance();
+            fileStates = new FileStates() {
+                public void read(String file) { helper.read(file); }
+                public void free(String file) { helper.free(file); }
+                public void write(String file) { helper.write(file); }
+                public void writeCompleted(String file) { helper.writeCompleted(file); }
+            };
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1(Worker worker) {
+        operation(worker);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void threads8(Worker worker) {
+        operation(worker);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64(Worker worker) {
+        operation(worker);
+    }
+
+    private void operation(Worker worker) {
+        try {
+            if(worker.done++ % WRITE_EVERY == 0) {
+                fileStates.write(worker.file);
+                fileStates.writeCompleted(worker.file);
+            } else {
+                fileStates.read(worker.file);
+                fileStates.free(worker.file);
+            }
+        } catch (ConcurrentModificationException e) {
+            worker.conflicts++;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.impl.tftp.TftpConnections;
+import bgu.spl.net.srv.ConnectionHandler;
+import bgu.spl.net.srv.Connections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Measures how a slow client affects the other clients' sends, with the global monitor and without it. <br/>
+ * N downloaders each send 512 byte blocks to their own connection, waiting a loopback round trip for the ACK
+ * between blocks. Meanwhile one slow client
+ * downloads too, every write to it blocks for a while as if its socket buffer were full, and a broadcast goes to
+ * all the logged-in clients every few milliseconds. The handlers serialize their own writes like
+ * BlockingConnectionHandler does. <br/>
+ * Reported per downloader count: the downloaders' sends per second, their send latency p50/p99/p99.9/max and
+ * the share of sends that waited over a millisecond.
+ * Usage: ConnectionsBenchmark [downloaders...], default 1 8 64.
+ */
+public class ConnectionsBenchmark {
+    private static final long DURATION_MILLIS = 3000;
+    private static final long SLOW_WRITE_MILLIS = 5;
+    private static final long BROADCAST_INTERVAL_MILLIS = 10;
+    /**
+     * A downloader's wait for the ACK of the block it sent.
+     */
+    private static final long ROUND_TRIP_NANOS = 50_000;
+    private static final long STALL_NANOS = 1_000_000;
+    private static final int SLOW_CLIENT = -1;
+    /**
+     * At most this many latencies are kept per downloader.
+     */
+    private static final int SAMPLES = 100_000;
+
+    /**
+     * Stands in for a connection's socket, a write takes as long as the client makes it.
+     */
+    private static class BenchHandler implements ConnectionHandler<byte[]> {
+        private final long writeMillis;
+
+        BenchHandler(long writeMillis) {
+            this.writeMillis = writeMillis;
+        }
+
+        @Override
+        public synchronized void send(byte[] msg) {
+            if(writeMillis > 0) {
+                try {
+                    Thread.sleep(writeMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] downloaderCounts = args.length == 0 ? new int[]{1, 8, 64}
+                : java.util.Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%-11s %11s %10s %10s %10s %10s %10s %8s%n", "connections", "downloaders", "sends/s",
+                "p50", "p99", "p99.9", "max", "stalled");
+        for(int downloaders : downloaderCounts) {
+            run("legacy", LegacyConnections::new, downloaders);
+            run("concurrent", TftpConnections::new, downloaders);
+        }
+    }
+
+    private static void run(String name, Supplier<Connections<byte[]>> factory, int downloaders) throws Exception {
+        // A warm-up run, then the measured one.
+        measure(factory.get(), downloaders, DURATION_MILLIS / 3);
+        List<long[]> latencies = measure(factory.get(), downloaders, DURATION_MILLIS);
+        long sends = 0;
+        List<Long> all = new ArrayList<>();
+        for(long[] downloader : latencies) {
+            sends += downloader[0];
+            for(int i = 1; i < downloader.length && downloader[i] != 0; i++) {
+                all.add(downloader[i]);
+            }
+        }
+        long[] sorted = BenchSupport.sorted(all);
+        long stalled = all.stream().filter((latency) -> latency > STALL_NANOS).count();
+        System.out.printf("%-11s %11d %10d %10s %10s %10s %10s %7.2f%%%n", name, downloaders,
+                sends * 1000 / DURATION_MILLIS, BenchSupport.micros(BenchSupport.percentile(sorted, 50)),
+                BenchSupport.micros(BenchSupport.percentile(sorted, 99)),
+                BenchSupport.micros(BenchSupport.percentile(sorted, 99.9)),
+                BenchSupport.micros(BenchSupport.percentile(sorted, 100)), 100.0 * stalled / Math.max(1, all.size()));
+    }
+
+    /**
+     * @return Per downloader, its number of sends followed by the latencies of up to SAMPLES of them.
+     */
+    private static List<long[]> measure(Connections<byte[]> connections, int downloaders, long durationMillis)
+            throws InterruptedException {
+        connections.connect(SLOW_CLIENT, new BenchHandler(SLOW_WRITE_MILLIS));
+        connections.subscribe(SLOW_CLIENT, "slow");
+        for(int i = 0; i < downloaders; i++) {
+            connections.connect(i, new BenchHandler(0));
+            connections.subscribe(i, "user" + i);
+        }
+        byte[] block = new byte[516];
+        byte[] broadcast = new byte[20];
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            await(start);
+            while(System.nanoTime() < end) {
+                connections.send(SLOW_CLIENT, block);
+            }
+        }));
+        threads.add(new Thread(() -> {
+            await(start);
+            while(System.nanoTime() < end) {
+                connections.broadcast(broadcast);
+                try {
+                    Thread.sleep(BROADCAST_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }));
+        List<long[]> latencies = new ArrayList<>();
+        for(int i = 0; i < downloaders; i++) {
+            final int connectionId = i;
+            long[] samples = new long[SAMPLES + 1];
+            latencies.add(samples);
+            threads.add(new Thread(() -> {
+                await(start);
+                long sends = 0;
+                long now;
+                while((now = System.nanoTime()) < end) {
+                    connections.send(connectionId, block);
+                    sends++;
+                    if(sends <= SAMPLES) {
+                        samples[(int) sends] = Math.max(1, System.nanoTime() - now);
+                    }
+                    LockSupport.parkNanos(ROUND_TRIP_NANOS);
+                }
+                samples[0] = sends;
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        return latencies;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.api.MessageEncoderDecoder;
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
+import bgu.spl.net.impl.tftp.GlobalConstants;
+import bgu.spl.net.impl.tftp.Operation;
+import bgu.spl.net.impl.tftp.TftpEncoderDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the packet decoder against the LinkedList&lt;Byte&gt; decoder it replaced. <br/>
+ * Each stream holds {@value #FRAMES} packets both decoders understand: 512 byte DATA blocks, their ACKs, or a mix
+ * of requests, DATA, ACKs and a short last block. Every stream is decoded byte by byte by both decoders, and in
+ * 8 KB reads (as the connection handlers read) by the new one. Each invocation decodes the whole stream, so the
+ * scores are per frame; run with the GC profiler (as main does) for the bytes allocated per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+    private static final int FRAMES = 1000;
+    private static final int READ_SIZE = 8192;
+
+    @Param({"data", "ack", "mixed"})
+    public String stream;
+
+    private byte[] bytes;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DecoderBenchmark.class.getName()).addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        ByteArrayOutputStream unit = new ByteArrayOutputStream();
+        switch(stream) {
+            case "data":
+                unit.writeBytes(packet(Operation.DATA, data(512), 1));
+                break;
+            case "ack":
+                unit.writeBytes(packet(Operation.ACK, 1));
+                break;
+            default:
+                unit.writeBytes(packet(Operation.LOGRQ, "user"));
+                unit.writeBytes(packet(Operation.RRQ, "some_file.txt"));
+                for(int i = 0; i < 8; i++) {
+                    unit.writeBytes(packet(Operation.DATA, data(512), i + 1));
+                    unit.writeBytes(packet(Operation.ACK, i + 1));
+                }
+                unit.writeBytes(packet(Operation.DATA, data(100), 9));
+                unit.writeBytes(packet(Operation.DIRQ));
+        }
+        int[] frames = new int[1];
+        byte[] unitBytes = unit.toByteArray();
+        new TftpEncoderDecoder().decodeNextBytes(unitBytes, 0, unitBytes.length, (message) -> frames[0]++);
+        if(FRAMES % frames[0] != 0) {
+            throw new IllegalStateException(frames[0] + " frames don't divide " + FRAMES);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(int i = 0; i < FRAMES / frames[0]; i++) {
+            out.writeBytes(unitBytes);
+        }
+        bytes = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void linkedListByteByByte(Blackhole blackhole) {
+        byteByByte(new LegacyEncoderDecoder(), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void bufferByteByByte(Blackhole blackhole) {
+        byteByByte(new TftpEncoderDecoder(), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void bufferReads(Blackhole blackhole) {
+        TftpEncoderDecoder decoder = new TftpEncoderDecoder();
+        for(int offset = 0; offset < bytes.length; offset += READ_SIZE) {
+            decoder.decodeNextBytes(bytes, offset, Math.min(READ_SIZE, bytes.length - offset), blackhole::consume);
+        }
+    }
+
+    private void byteByByte(MessageEncoderDecoder<byte[]> decoder, Blackhole blackhole) {
+        for(byte b : bytes) {
+            byte[] message = decoder.decodeNextByte(b);
+            if(message != null) {
+                blackhole.consume(message);
+            }
+        }
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * Builds a packet of its op code followed by its fields: ints are written as 2 bytes, strings with their
+     * terminator and byte arrays as they are. A DATA packet's size field is added in front of its block number.
+     */
+    private static byte[] packet(Operation operation, Object... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(EncodeDecodeHelper.shortToByte(operation.OP_CODE));
+        if(operation == Operation.DATA) {
+            out.writeBytes(EncodeDecodeHelper.shortToByte((short) ((byte[]) fields[0]).length));
+            out.writeBytes(EncodeDecodeHelper.shortToByte((short) (int) (Integer) fields[1]));
+            out.writeBytes((byte[]) fields[0]);
+            return out.toByteArray();
+        }
+        for(Object field : fields) {
+            if(field instanceof Integer) {
+                out.writeBytes(EncodeDecodeHelper.shortToByte((short) (int) (Integer) field));
+            } else {
+                out.writeBytes(((String) field).getBytes(GlobalConstants.ENCODING_FORMAT));
+                out.write(GlobalConstants.TERMINATOR);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,99 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A TCP proxy that delays everything it forwards, in both directions, by half of a round trip time.
+ * Bytes are delayed rather than throttled, so a window of packets arrives together one delay later, as over a
+ * long link with plenty of bandwidth.
+ */
+class DelayProxy implements AutoCloseable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ServerSocket listener;
+    private final InetSocketAddress target;
+    private final long oneWayNanos;
+
+    /**
+     * @param target Where to forward the connections to.
+     * @param roundTripMillis The round trip time the proxy adds.
+     */
+    DelayProxy(InetSocketAddress target, double roundTripMillis) throws IOException {
+        this.target = target;
+        this.oneWayNanos = (long) (roundTripMillis * TimeUnit.MILLISECONDS.toNanos(1) / 2);
+        listener = new ServerSocket(0);
+        Thread.ofVirtual().start(this::accept);
+    }
+
+    InetSocketAddress address() {
+        return new InetSocketAddress("127.0.0.1", listener.getLocalPort());
+    }
+
+    private void accept() {
+        while(!listener.isClosed()) {
+            try {
+                Socket client = listener.accept();
+                Socket server = new Socket(target.getAddress(), target.getPort());
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                forward(client, server);
+                forward(server, client);
+            } catch (IOException e) {
+                // Closed.
+            }
+        }
+    }
+
+    /**
+     * Reads from one side as soon as bytes arrive, and writes them to the other once their delay passed.
+     */
+    private void forward(Socket from, Socket to) {
+        BlockingQueue<Object[]> delayed = new LinkedBlockingQueue<>();
+        Thread.ofVirtual().start(() -> {
+            try(InputStream in = from.getInputStream()) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                while((read = in.read(buffer)) > 0) {
+                    delayed.add(new Object[]{System.nanoTime() + oneWayNanos, Arrays.copyOf(buffer, read)});
+                }
+            } catch (IOException e) {
+                // The connection is closed.
+            }
+            delayed.add(new Object[]{System.nanoTime() + oneWayNanos, null});
+        });
+        Thread.ofVirtual().start(() -> {
+            try(OutputStream out = to.getOutputStream()) {
+                while(true) {
+                    Object[] chunk = delayed.take();
+                    long wait;
+                    while((wait = (long) chunk[0] - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if(chunk[1] == null) {
+                        to.shutdownOutput();
+                        return;
+                    }
+                    out.write((byte[]) chunk[1]);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // The connection is closed.
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        listener.close();
+    }
+}
@@ -0,0 +1,139 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares the server's execution modes under many concurrent sessions. <br/>
+ * For every mode and session count a server is started in its own JVM. Every session connects and logs in, and
+ * once all of them are logged in they all download the same small file at once, then disconnect. The client runs
+ * each session on a virtual thread. <br/>
+ * Reported per run: the time until all sessions were logged in, the download phase's wall time and latencies, the
+ * server's thread count and resident memory while all the sessions are open, and the sessions that failed. <br/>
+ * Sessions connect a few at a time, the servers listen with the default backlog of 50 and a burst of thousands of
+ * connections overflows it. Every session holds a socket in both JVMs, and the server also holds the file while it
+ * sends it, so the server needs twice as many file descriptors as there are sessions ({@code ulimit -n}). <br/>
+ * Usage: ExecutionModeBenchmark [sessions...], default 1000 10000 50000. The modes can be chosen with
+ * -Dbench.modes=tpc,virtual,reactor 4 (comma separated, arguments after the mode's name).
+ */
+public class ExecutionModeBenchmark {
+    private static final String FILE = "bench.bin";
+    private static final int FILE_SIZE = 1500;
+    private static final int TIMEOUT_MILLIS = 120_000;
+    /**
+     * Connections per local loopback address, below the number of ephemeral ports.
+     */
+    private static final int CONNECTIONS_PER_ADDRESS = 25_000;
+    private static final int CONNECTING_AT_ONCE = 32;
+
+    public static void main(String[] args) throws Exception {
+        int[] sessionCounts = args.length == 0 ? new int[]{1000, 10_000, 50_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        String modes = System.getProperty("bench.modes",
+                "tpc,virtual,reactor " + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %8s %10s %10s %10s %10s %8s %10s %7s%n", "mode", "sessions", "login", "download",
+                "p50", "p99", "threads", "rss", "failed");
+        for(int sessions : sessionCounts) {
+            for(String mode : modes.split(",")) {
+                run(Arrays.asList(mode.trim().split(" ")), sessions);
+            }
+        }
+    }
+
+    private static void run(List<String> mode, int sessions) throws Exception {
+        try(BenchSupport.ServerProcess server = BenchSupport.ServerProcess.start(mode, Collections.emptyList())) {
+            byte[] contents = new byte[FILE_SIZE];
+            Arrays.fill(contents, (byte) 'x');
+            Files.write(server.file(FILE), contents);
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.port);
+
+            CountDownLatch loggedIn = new CountDownLatch(sessions);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch downloaded = new CountDownLatch(sessions);
+            CountDownLatch release = new CountDownLatch(1);
+            Semaphore connecting = new Semaphore(CONNECTING_AT_ONCE);
+            AtomicInteger failed = new AtomicInteger();
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+            long begin = System.nanoTime();
+            List<Thread> threads = new ArrayList<>(sessions);
+            for(int i = 0; i < sessions; i++) {
+                final int session = i;
+                threads.add(Thread.ofVirtual().start(() -> {
+                    boolean counted = false;
+                    boolean done = false;
+                    InetSocketAddress local = new InetSocketAddress("127.0.0." + (1 + session / CONNECTIONS_PER_ADDRESS), 0);
+                    WireClient client = null;
+                    try {
+                        connecting.acquire();
+                        try {
+                            client = new WireClient(address, local, TIMEOUT_MILLIS);
+                            client.login("user" + session);
+                        } finally {
+                            connecting.release();
+                        }
+                        loggedIn.countDown();
+                        counted = true;
+                        start.await();
+                        long before = System.nanoTime();
+                        byte[] data = client.download(FILE);
+                        if(data.length != FILE_SIZE) {
+                            throw new IOException("Downloaded " + data.length + " bytes");
+                        }
+                        latencies.add(System.nanoTime() - before);
+                        downloaded.countDown();
+                        done = true;
+                        release.await();
+                        client.disconnect();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        firstFailure.compareAndSet(null, e);
+                    } finally {
+                        if(client != null) {
+                            client.close();
+                        }
+                        if(!counted) {
+                            loggedIn.countDown();
+                        }
+                        if(!done) {
+                            downloaded.countDown();
+                        }
+                    }
+                }));
+            }
+            loggedIn.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            long login = System.nanoTime() - begin;
+            String serverThreads = server.status("Threads");
+            String rss = server.status("VmRSS");
+
+            long downloadStart = System.nanoTime();
+            start.countDown();
+            downloaded.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            long download = System.nanoTime() - downloadStart;
+            release.countDown();
+            for(Thread thread : threads) {
+                thread.join();
+            }
+
+            long[] sorted = BenchSupport.sorted(latencies);
+            System.out.printf("%-10s %8d %10s %10s %10s %10s %8s %10s %7d%n", String.join(" ", mode), sessions,
+                    BenchSupport.millis(login), BenchSupport.millis(download),
+                    BenchSupport.millis(BenchSupport.percentile(sorted, 50)),
+                    BenchSupport.millis(BenchSupport.percentile(sorted, 99)), serverThreads, rss, failed.get());
+            if(firstFailure.get() != null) {
+                System.out.println("    first failure: " + firstFailure.get());
+            }
+        }
+    }
+}
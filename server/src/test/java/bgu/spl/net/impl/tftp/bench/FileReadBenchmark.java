@@ -0,0 +1,164 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compares the two ways of reading a download's blocks: opening the file, skipping to the block, reading it and
+ * closing the file again for every block, against one FileChannel kept open for the transfer and read with
+ * positional reads into a reused buffer. <br/>
+ * Each file is read block by block from start to end, from the page cache. Reported per file size: the latency
+ * of a block's read p50/p99, the mean, and the read syscalls per block as counted by /proc/thread-self/io.
+ * Usage: FileReadBenchmark [file sizes in KB...], default 64 1024 16384.
+ */
+public class FileReadBenchmark {
+    private static final int BLOCK_SIZE = 512;
+    /**
+     * Small files are read over and over until at least this many blocks were read.
+     */
+    private static final int WARMUP_BLOCKS = 100_000;
+    private static final int MEASURED_BLOCKS = 100_000;
+
+    private interface BlockReader extends AutoCloseable {
+        byte[] read(long block) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[]{64, 1024, 16384}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        Path directory = Files.createTempDirectory("tftp-bench");
+        System.out.printf("%-8s %-16s %10s %10s %10s %12s%n", "size", "reads", "p50", "p99", "mean", "syscr/block");
+        try {
+            for(int kilobytes : sizes) {
+                File file = directory.resolve(kilobytes + "k.bin").toFile();
+                try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                    byte[] chunk = new byte[1024];
+                    Arrays.fill(chunk, (byte) 'x');
+                    for(int i = 0; i < kilobytes; i++) {
+                        out.write(chunk);
+                    }
+                }
+                measure(kilobytes + "K", "open per block", file, false);
+                measure(kilobytes + "K", "one channel", file, true);
+                file.delete();
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static BlockReader reader(File file, boolean channel) throws IOException {
+        if(!channel) {
+            // As TftpService read before it kept the file open.
+            return (block) -> {
+                InputStream stream = new FileInputStream(file);
+                stream.skip(block * BLOCK_SIZE);
+                byte[] output = new byte[BLOCK_SIZE];
+                int read = stream.read(output);
+                stream.close();
+                return read == BLOCK_SIZE ? output : Arrays.copyOf(output, Math.max(0, read));
+            };
+        }
+        FileChannel readChannel = new FileInputStream(file).getChannel();
+        ByteBuffer readBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+        return new BlockReader() {
+            @Override
+            public byte[] read(long block) throws IOException {
+                readBuffer.clear();
+                long position = block * BLOCK_SIZE;
+                int read = 0;
+                while(readBuffer.hasRemaining()) {
+                    int current = readChannel.read(readBuffer, position + read);
+                    if(current < 0) {
+                        break;
+                    }
+                    read += current;
+                }
+                byte[] output = new byte[read];
+                readBuffer.flip();
+                readBuffer.get(output);
+                return output;
+            }
+
+            @Override
+            public void close() throws IOException {
+                readChannel.close();
+            }
+        };
+    }
+
+    private static void measure(String size, String name, File file, boolean channel) throws Exception {
+        long blocks = file.length() / BLOCK_SIZE + 1;
+        for(long read = 0; read < WARMUP_BLOCKS; read += blocks) {
+            readAll(file, channel, blocks, null);
+        }
+        int passes = (int) Math.max(1, (MEASURED_BLOCKS + blocks - 1) / blocks);
+        long[] latencies = new long[(int) (blocks * passes)];
+        long total = 0;
+        for(int pass = 0; pass < passes; pass++) {
+            long[] samples = new long[(int) blocks];
+            total += readAll(file, channel, blocks, samples);
+            System.arraycopy(samples, 0, latencies, (int) (pass * blocks), samples.length);
+        }
+        long calibration = readSyscalls();
+        calibration = readSyscalls() - calibration;
+        long before = readSyscalls();
+        readAll(file, channel, blocks, null);
+        double syscalls = (double) (readSyscalls() - before - calibration) / blocks;
+        Arrays.sort(latencies);
+        System.out.printf("%-8s %-16s %10s %10s %10s %12.2f%n", size, name,
+                BenchSupport.micros(BenchSupport.percentile(latencies, 50)),
+                BenchSupport.micros(BenchSupport.percentile(latencies, 99)),
+                BenchSupport.micros(total / latencies.length), syscalls);
+    }
+
+    /**
+     * Reads the whole file a block at a time, as a download would.
+     * @param latencies Where to put each block's latency, null to skip timing them.
+     * @return The total time.
+     */
+    private static long readAll(File file, boolean channel, long blocks, long[] latencies) throws Exception {
+        long start = System.nanoTime();
+        try(BlockReader reader = reader(file, channel)) {
+            for(long block = 0; block < blocks; block++) {
+                long before = System.nanoTime();
+                byte[] data = reader.read(block);
+                if(latencies != null) {
+                    latencies[(int) block] = System.nanoTime() - before;
+                }
+                if(data.length != BLOCK_SIZE && block != blocks - 1) {
+                    throw new IOException("Short read of block " + block);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return The read syscalls this thread made so far, -1 where /proc isn't available.
+     */
+    private static long readSyscalls() throws IOException {
+        Path io = Path.of("/proc/thread-self/io");
+        if(!Files.exists(io)) {
+            return -1;
+        }
+        for(String line : Files.readAllLines(io)) {
+            if(line.startsWith("syscr:")) {
+                return Long.parseLong(line.substring("syscr:".length()).trim());
+            }
+        }
+        return -1;
+    }
+}
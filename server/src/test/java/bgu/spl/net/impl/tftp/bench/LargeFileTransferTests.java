@@ -0,0 +1,98 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.impl.tftp.GlobalConstants;
+import bgu.spl.net.impl.tftp.TftpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transfers a file just over 4 GiB to and from a real server, so block numbers roll over and offsets pass 2 GiB
+ * and 4 GiB on the wire, in the services and in the files. <br/>
+ * Opt-in, it takes minutes and about 4 GiB of disk per mode: run it from the server directory with
+ * <pre>
+ * mvn test -Dtest=LargeFileTransferTests -Dtftp.e2e=true
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "tftp.e2e", matches = "true")
+public class LargeFileTransferTests {
+    private static final long SIZE = (1L << 32) + 12345;
+    /**
+     * The only bytes of the sparse file that aren't 0, around 2 GiB, 4 GiB and the file's end.
+     */
+    private static final long[] MARKERS = {(1L << 31) - 1, 1L << 31, (1L << 32) - 1, 1L << 32, SIZE - 1};
+
+    @Test
+    public void threadPerClient() throws Exception {
+        transfer(List.of(TftpServer.THREAD_PER_CLIENT_MODE));
+    }
+
+    @Test
+    public void reactor() throws Exception {
+        transfer(List.of(TftpServer.REACTOR_MODE, "2"));
+    }
+
+    /**
+     * Downloads the sparse file and uploads it back under another name with the largest block size, then compares
+     * the digests of the download, the uploaded file and the original. The listing must show both files.
+     */
+    private static void transfer(List<String> mode) throws Exception {
+        try (BenchSupport.ServerProcess server = BenchSupport.ServerProcess.start(mode, Collections.emptyList());
+             WireClient client = new WireClient(new InetSocketAddress("127.0.0.1", server.port), 60_000)) {
+            Path original = server.file("large");
+            try (RandomAccessFile file = new RandomAccessFile(original.toFile(), "rw")) {
+                file.setLength(SIZE);
+                for(int i = 0; i < MARKERS.length; i++) {
+                    file.seek(MARKERS[i]);
+                    file.write(i + 1);
+                }
+            }
+            byte[] expected = digest(original);
+            client.login("e2e");
+
+            MessageDigest downloaded = MessageDigest.getInstance("SHA-256");
+            try (OutputStream sink = new DigestOutputStream(OutputStream.nullOutputStream(), downloaded)) {
+                client.download("large", GlobalConstants.MAX_BLOCK_SIZE, 64, sink);
+            }
+            assertArrayEquals(expected, downloaded.digest(), "Download");
+
+            try (InputStream source = new BufferedInputStream(Files.newInputStream(original), 1 << 20)) {
+                client.upload("copy", source, GlobalConstants.MAX_BLOCK_SIZE, 64);
+            }
+            assertEquals(SIZE, Files.size(server.file("copy")));
+            assertArrayEquals(expected, digest(server.file("copy")), "Upload");
+
+            assertTrue(client.list().containsAll(List.of("large", "copy")));
+            client.disconnect();
+        }
+    }
+
+    private static byte[] digest(Path file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1 << 20];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+}
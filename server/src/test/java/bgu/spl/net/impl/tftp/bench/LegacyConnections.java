@@ -0,0 +1,87 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.impl.tftp.packets.AcknowledgementPacket;
+import bgu.spl.net.srv.ConnectionHandler;
+import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.FileRegion;
+
+import javax.management.openmbean.KeyAlreadyExistsException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.DEFAULT_ACK;
+
+/**
+ * The connections as they were before they dropped the global monitor, kept to compare against.
+ * Every operation, including the socket writes of send and broadcast, holds the same lock.
+ */
+class LegacyConnections implements Connections<byte[]> {
+    private final Map<Integer, ConnectionHandler<byte[]>> connections;
+    private final Map<Integer, String> listeners;
+
+    LegacyConnections() {
+        connections = new HashMap<>();
+        listeners = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void connect(int connectionId, ConnectionHandler<byte[]> handler) {
+        if(connections.containsKey(connectionId)) {
+            throw new KeyAlreadyExistsException("Connection ID " + connectionId + " is already in use.");
+        }
+        connections.put(connectionId, handler);
+    }
+
+    @Override
+    public synchronized boolean send(int connectionId, byte[] msg) {
+        ConnectionHandler<byte[]> connection = connections.get(connectionId);
+        if(connection == null) {
+            throw new NoSuchElementException("No connection with the ID " + connectionId + " exists");
+        }
+        connection.send(msg);
+        return true;
+    }
+
+    /**
+     * File regions came later, the benchmark doesn't send any.
+     */
+    @Override
+    public boolean sendFile(int connectionId, byte[] header, FileRegion region) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void disconnect(int connectionId) {
+        ConnectionHandler<byte[]> con = connections.get(connectionId);
+        try {
+            connections.remove(connectionId);
+            listeners.remove(connectionId);
+            con.send(new AcknowledgementPacket(DEFAULT_ACK).getBytes());
+            con.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(int connectionId, String username) throws SecurityException {
+        if(!connections.containsKey(connectionId)) {
+            throw new NoSuchElementException("No connection exists with ID: " + connectionId);
+        }
+        for(Map.Entry<Integer, String> listener : listeners.entrySet()) {
+            if(username.equals(listener.getValue())) {
+                throw new SecurityException("User already connected to the server from another place.");
+            }
+        }
+        listeners.put(connectionId, username);
+    }
+
+    @Override
+    public synchronized void broadcast(byte[] broadcastMessage) {
+        for(Map.Entry<Integer, String> listener : listeners.entrySet()) {
+            connections.get(listener.getKey()).send(broadcastMessage);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.api.MessageEncoderDecoder;
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
+import bgu.spl.net.impl.tftp.Operation;
+
+import java.util.LinkedList;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.TERMINATOR;
+import static bgu.spl.net.impl.tftp.Operation.*;
+
+/**
+ * The decoder as it was before it framed packets in a primitive buffer, kept to compare against.
+ * It collects every byte of the packet as a boxed Byte in a linked list.
+ */
+class LegacyEncoderDecoder implements MessageEncoderDecoder<byte[]> {
+    private LinkedList<Byte> message;
+    private Operation operation;
+    private boolean isData;
+    private int packetSize;
+
+    LegacyEncoderDecoder() {
+        message = new LinkedList<>();
+        operation = NO_OP;
+        packetSize = -1;
+        isData = false;
+    }
+
+    @Override
+    public byte[] decodeNextByte(byte nextByte) {
+        message.add(nextByte);
+        // Determine op code:
+        if(message.size() == 2) {
+            operation = Operation.OPS[EncodeDecodeHelper.byteToShort(new byte[]{message.getFirst(), message.getLast()})];
+            // determine length to read if not terminated by delimiter.
+            if(operation == DIRQ || operation == DISC) {
+                // those are ending after 2 bytes.
+                packetSize = 2;
+            } else if(operation == DATA) {
+                // if that's a data packet, wait until the 4'th byte was read.
+                isData = true;
+            } else if (operation == ACK) {
+                packetSize = 4;
+            }
+        }
+        if(isData && message.size() == 4) {
+            packetSize = EncodeDecodeHelper.byteToShort(new byte[]{message.get(2), message.getLast()}) + 6;
+        }
+        if(messageComplete()) {
+            byte[] result = new byte[message.size()];
+            int i = 0;
+            for(byte b : message) {
+                result[i] = b;
+                i++;
+            }
+            // reset for next message
+            message = new LinkedList<>();
+            operation = NO_OP;
+            packetSize = -1;
+            isData = false;
+            return result;
+        }
+        return null;
+    }
+
+    public boolean messageComplete() {
+        return (operation.TERMINATED && message.getLast().equals(TERMINATOR)) || (message.size() == packetSize);
+    }
+
+    @Override
+    public byte[] encode(byte[] message) {
+        return message;
+    }
+}
@@ -0,0 +1,83 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures downloads over a link with a round trip time, in lock-step and with the blksize and windowsize
+ * options. <br/>
+ * The server runs in its own JVM behind a {@link DelayProxy}. At every round trip time the same file is downloaded
+ * with each option set; the file is smaller at long round trip times, since lock-step needs a round trip per 512
+ * bytes. Reported: the median time of a few downloads and the throughput.
+ * Usage: WindowBenchmark [round trip times in ms...], default 1 5 50. The server mode can be chosen with
+ * -Dbench.mode (default reactor).
+ */
+public class WindowBenchmark {
+    private static final int RUNS = 3;
+    private static final int TIMEOUT_MILLIS = 600_000;
+
+    /**
+     * @param blockSize The blksize option, 0 to download without options.
+     */
+    private record Options(String name, int blockSize, int windowSize) {
+    }
+
+    private static final List<Options> OPTIONS = List.of(
+            new Options("lock-step 512", 0, 1),
+            new Options("512 + window 16", 512, 16),
+            new Options("blksize 8192", 8192, 1),
+            new Options("8192 + window 16", 8192, 16));
+
+    public static void main(String[] args) throws Exception {
+        double[] roundTrips = args.length == 0 ? new double[]{1, 5, 50}
+                : Arrays.stream(args).mapToDouble(Double::parseDouble).toArray();
+        List<String> mode = Arrays.asList(System.getProperty("bench.mode", "reactor").split(" "));
+        System.out.printf("%-6s %-8s %-18s %10s %12s%n", "rtt", "file", "options", "time", "KB/s");
+        try(BenchSupport.ServerProcess server = BenchSupport.ServerProcess.start(mode, List.of())) {
+            for(double roundTrip : roundTrips) {
+                // About 10 seconds of lock-step at the round trip time, between 64 KB and 1 MB.
+                int size = (int) Math.min(1 << 20, Math.max(64 << 10, 10_000 / roundTrip * 512));
+                byte[] contents = new byte[size];
+                for(int i = 0; i < size; i++) {
+                    contents[i] = (byte) (i * 31);
+                }
+                String file = "window" + size + ".bin";
+                Files.write(server.file(file), contents);
+                try(DelayProxy proxy = new DelayProxy(new InetSocketAddress("127.0.0.1", server.port), roundTrip)) {
+                    for(Options options : OPTIONS) {
+                        long[] times = new long[RUNS];
+                        for(int run = 0; run < RUNS; run++) {
+                            times[run] = download(proxy.address(), file, options, contents);
+                        }
+                        Arrays.sort(times);
+                        long median = times[RUNS / 2];
+                        System.out.printf("%-6s %-8s %-18s %10s %12.0f%n", roundTrip + "ms", size / 1024 + "K",
+                                options.name(), BenchSupport.millis(median), size / 1024.0 / (median / 1e9));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How long the download took, from the request to the last block.
+     */
+    private static long download(InetSocketAddress address, String file, Options options, byte[] expected)
+            throws IOException {
+        try(WireClient client = new WireClient(address, TIMEOUT_MILLIS)) {
+            client.login("window");
+            long before = System.nanoTime();
+            byte[] data = options.blockSize() == 0 ? client.download(file)
+                    : client.download(file, options.blockSize(), options.windowSize());
+            long time = System.nanoTime() - before;
+            if(!Arrays.equals(expected, data)) {
+                throw new IOException("Downloaded " + data.length + " bytes that don't match the file");
+            }
+            client.disconnect();
+            return time;
+        }
+    }
+}
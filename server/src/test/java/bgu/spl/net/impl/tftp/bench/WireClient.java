@@ -0,0 +1,274 @@
+package bgu.spl.net.impl.tftp.bench;
+
+import bgu.spl.net.impl.tftp.GlobalConstants;
+import bgu.spl.net.impl.tftp.Operation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.ENCODING_FORMAT;
+
+/**
+ * A minimal blocking TFTP client speaking the server's wire format, for driving the server from the benchmarks.
+ */
+final class WireClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+
+    WireClient(InetSocketAddress server, int timeoutMillis) throws IOException {
+        this(server, null, timeoutMillis);
+    }
+
+    /**
+     * @param local The local address to connect from, null for any. Spreading many connections over several
+     *              loopback addresses gets them past the limit of ephemeral ports per address.
+     */
+    WireClient(InetSocketAddress server, InetSocketAddress local, int timeoutMillis) throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        if(local != null) {
+            socket.bind(local);
+        }
+        socket.setSoTimeout(timeoutMillis);
+        socket.connect(server, timeoutMillis);
+        in = new DataInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    void login(String username) throws IOException {
+        send(request(Operation.LOGRQ.OP_CODE, username));
+        expectAck(0);
+    }
+
+    void disconnect() throws IOException {
+        send(new byte[]{0, (byte) Operation.DISC.OP_CODE});
+        expectAck(0);
+    }
+
+    /**
+     * Downloads a file in lock-step with 512 bytes blocks.
+     * @return The file's contents.
+     */
+    byte[] download(String file) throws IOException {
+        send(request(Operation.RRQ.OP_CODE, file));
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        receive(GlobalConstants.MAX_DATA_PACKET_SIZE, 1, data);
+        return data.toByteArray();
+    }
+
+    /**
+     * Downloads a file with the blksize and windowsize options, acknowledging the last block of every window.
+     * @return The file's contents.
+     */
+    byte[] download(String file, int blockSize, int windowSize) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        download(file, blockSize, windowSize, data);
+        return data.toByteArray();
+    }
+
+    /**
+     * Same as {@link #download(String, int, int)}, for files too large to be held in memory.
+     * @param sink Receives the file's contents.
+     */
+    void download(String file, int blockSize, int windowSize, OutputStream sink) throws IOException {
+        send(optionsRequest(Operation.RRQ.OP_CODE, file, blockSize, windowSize));
+        Map<String, String> accepted = expectOptions();
+        sendAck(0);
+        receive(acceptedBlockSize(accepted), acceptedWindow(accepted), sink);
+    }
+
+    /**
+     * Uploads a file with the blksize and windowsize options, waiting for the acknowledgement of every window.
+     * @param source The file's contents, read until it ends.
+     */
+    void upload(String file, InputStream source, int blockSize, int windowSize) throws IOException {
+        send(optionsRequest(Operation.WRQ.OP_CODE, file, blockSize, windowSize));
+        Map<String, String> accepted = expectOptions();
+        int acceptedBlockSize = acceptedBlockSize(accepted);
+        int acceptedWindow = acceptedWindow(accepted);
+        long sent = 0;
+        while(true) {
+            byte[] payload = source.readNBytes(acceptedBlockSize);
+            sent++;
+            int block = (int) (sent & 0xffff);
+            ByteArrayOutputStream packet = new ByteArrayOutputStream(payload.length + 6);
+            packet.write(0);
+            packet.write(Operation.DATA.OP_CODE);
+            packet.write(payload.length >> 8);
+            packet.write(payload.length);
+            packet.write(block >> 8);
+            packet.write(block);
+            packet.writeBytes(payload);
+            send(packet.toByteArray());
+            boolean last = payload.length < acceptedBlockSize;
+            if(last || sent % acceptedWindow == 0) {
+                expectAck(block);
+            }
+            if(last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The names of the server's files.
+     */
+    List<String> list() throws IOException {
+        send(new byte[]{0, (byte) Operation.DIRQ.OP_CODE});
+        ByteArrayOutputStream listing = new ByteArrayOutputStream();
+        receive(GlobalConstants.MAX_DATA_PACKET_SIZE, 1, listing);
+        return Arrays.asList(listing.toString(ENCODING_FORMAT).split("\n"));
+    }
+
+    private static byte[] optionsRequest(int opCode, String file, int blockSize, int windowSize) {
+        Map<String, String> options = new HashMap<>();
+        options.put(GlobalConstants.BLOCK_SIZE_OPTION, Integer.toString(blockSize));
+        options.put(GlobalConstants.WINDOW_SIZE_OPTION, Integer.toString(windowSize));
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        request.writeBytes(request(opCode | GlobalConstants.OPTIONS_FLAG, file));
+        for(Map.Entry<String, String> option : options.entrySet()) {
+            request.writeBytes(string(option.getKey()));
+            request.writeBytes(string(option.getValue()));
+        }
+        request.write(0);
+        return request.toByteArray();
+    }
+
+    private Map<String, String> expectOptions() throws IOException {
+        int op = nextPacket();
+        if(op != Operation.OACK.OP_CODE) {
+            throw new IOException("Expected an OACK, got op code " + op);
+        }
+        return readOptions();
+    }
+
+    private static int acceptedBlockSize(Map<String, String> accepted) {
+        return Integer.parseInt(accepted.getOrDefault(GlobalConstants.BLOCK_SIZE_OPTION, "512"));
+    }
+
+    private static int acceptedWindow(Map<String, String> accepted) {
+        return Integer.parseInt(accepted.getOrDefault(GlobalConstants.WINDOW_SIZE_OPTION, "1"));
+    }
+
+    private void receive(int blockSize, int windowSize, OutputStream data) throws IOException {
+        long received = 0;
+        while(true) {
+            int op = nextPacket();
+            if(op != Operation.DATA.OP_CODE) {
+                throw new IOException("Expected DATA, got op code " + op);
+            }
+            int size = in.readUnsignedShort();
+            int block = in.readUnsignedShort();
+            byte[] payload = new byte[size];
+            in.readFully(payload);
+            if(block != ((received + 1) & 0xffff)) {
+                throw new IOException("Expected block " + (received + 1) + ", got " + block);
+            }
+            received++;
+            data.write(payload);
+            boolean last = size < blockSize;
+            if(last || received % windowSize == 0) {
+                sendAck(block);
+            }
+            if(last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The op code of the next packet that isn't a broadcast.
+     */
+    private int nextPacket() throws IOException {
+        while(true) {
+            int op = in.readUnsignedShort();
+            if(op == Operation.BCAST.OP_CODE) {
+                in.readUnsignedByte();
+                readString();
+                continue;
+            }
+            if(op == Operation.ERROR.OP_CODE) {
+                int code = in.readUnsignedShort();
+                throw new IOException("Error " + code + ": " + readString());
+            }
+            return op;
+        }
+    }
+
+    private void expectAck(int block) throws IOException {
+        int op = nextPacket();
+        if(op != Operation.ACK.OP_CODE) {
+            throw new IOException("Expected an ACK, got op code " + op);
+        }
+        int acknowledged = in.readUnsignedShort();
+        if(acknowledged != block) {
+            throw new IOException("Expected ACK " + block + ", got " + acknowledged);
+        }
+    }
+
+    private void sendAck(int block) throws IOException {
+        send(new byte[]{0, (byte) Operation.ACK.OP_CODE, (byte) (block >> 8), (byte) block});
+    }
+
+    private Map<String, String> readOptions() throws IOException {
+        Map<String, String> options = new HashMap<>();
+        while(true) {
+            String name = readString();
+            if(name.isEmpty()) {
+                return options;
+            }
+            options.put(name.toLowerCase(), readString());
+        }
+    }
+
+    private String readString() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int next;
+        while((next = in.readUnsignedByte()) != 0) {
+            bytes.write(next);
+        }
+        return bytes.toString(ENCODING_FORMAT);
+    }
+
+    private static byte[] request(int opCode, String argument) {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        request.write(opCode >> 8);
+        request.write(opCode);
+        request.writeBytes(string(argument));
+        return request.toByteArray();
+    }
+
+    private static byte[] string(String value) {
+        byte[] bytes = value.getBytes(ENCODING_FORMAT);
+        byte[] terminated = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, terminated, 0, bytes.length);
+        return terminated;
+    }
+
+    private void send(byte[] packet) throws IOException {
+        out.write(packet);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing to do about it, the connection is gone either way.
+        }
+    }
+}
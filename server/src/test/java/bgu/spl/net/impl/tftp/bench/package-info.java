@@ -0,0 +1,13 @@
+/**
+ * Benchmarks of the server's hot paths, not picked up by the test run. <br/>
+ * Benchmarks of a single class (e.g. DecoderBenchmark) are JMH benchmarks. Their main method runs them through the
+ * JMH runner, and they can also be run with org.openjdk.jmh.Main. The others start servers or connections of
+ * their own and measure them in a plain main method. Build the classes and run one from the server directory:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) bgu.spl.net.impl.tftp.bench.DecoderBenchmark
+ * </pre>
+ * Benchmarks that compare against an earlier implementation carry a copy of it, named Legacy*. <br/>
+ * LargeFileTransferTests uses the same servers and client for an opt-in end-to-end test of files past 4 GiB.
+ */
+package bgu.spl.net.impl.tftp.bench;
@@ -0,0 +1,104 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedBlocksTests {
+
+    private static byte[] sampleData(int length) {
+        byte[] data = new byte[length];
+        Random random = new Random(length);
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] wholeStream(byte[] data) {
+        Compressor compressor = new DeflateCodec().newCompressor();
+        byte[] compressed = compressor.compress(data, 0, data.length, true);
+        compressor.end();
+        return compressed;
+    }
+
+    private static CompressedBlocks blocks(byte[] data, int blockSize) {
+        return new CompressedBlocks(new ByteArrayInputStream(data), new DeflateCodec().newCompressor(), blockSize);
+    }
+
+    @Test
+    public void blocksAreTheStreamCutAtTheBlockSize() throws IOException {
+        byte[] data = sampleData(300_000);
+        for(int blockSize : new int[]{8, 512, 1428, 65464}) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try(CompressedBlocks blocks = blocks(data, blockSize)) {
+                byte[] block;
+                long number = 0;
+                do {
+                    assertEquals(number, blocks.nextBlock());
+                    block = blocks.next();
+                    number++;
+                    stream.writeBytes(block);
+                    assertTrue(block.length <= blockSize);
+                } while(block.length == blockSize);
+                assertEquals(number, blocks.nextBlock());
+            }
+            assertArrayEquals(wholeStream(data), stream.toByteArray(), "Block size " + blockSize);
+        }
+    }
+
+    @Test
+    public void exactMultipleEndsWithAnEmptyBlock() throws IOException {
+        byte[] data = sampleData(5000);
+        int length = wholeStream(data).length;
+        try(CompressedBlocks blocks = blocks(data, length)) {
+            assertEquals(length, blocks.next().length);
+            assertEquals(0, blocks.next().length);
+            // Past the end there's nothing more to send.
+            assertEquals(0, blocks.next().length);
+        }
+    }
+
+    @Test
+    public void emptyDataIsOneShortBlock() throws IOException {
+        try(CompressedBlocks blocks = blocks(new byte[0], 512)) {
+            assertArrayEquals(wholeStream(new byte[0]), blocks.next());
+        }
+    }
+
+    @Test
+    public void closeEndsTheCompressorAndClosesTheInput() throws IOException {
+        AtomicBoolean inputClosed = new AtomicBoolean(false);
+        AtomicBoolean compressorEnded = new AtomicBoolean(false);
+        Compressor deflate = new DeflateCodec().newCompressor();
+        Compressor compressor = new Compressor() {
+            @Override
+            public byte[] compress(byte[] input, int offset, int length, boolean last) {
+                return deflate.compress(input, offset, length, last);
+            }
+
+            @Override
+            public void end() {
+                deflate.end();
+                compressorEnded.set(true);
+            }
+        };
+        ByteArrayInputStream input = new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public void close() {
+                inputClosed.set(true);
+            }
+        };
+        new CompressedBlocks(input, compressor, 512).close();
+        assertTrue(inputClosed.get());
+        assertTrue(compressorEnded.get());
+    }
+}
@@ -0,0 +1,126 @@
+package bgu.spl.net.impl.tftp.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeflateCodecTests {
+
+    private final Codec codec = new DeflateCodec();
+
+    /**
+     * Half random, half repeated text, so the data compresses but not to nothing.
+     */
+    private static byte[] sampleData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        byte[] text = "the quick brown fox jumps over the lazy dog ".getBytes();
+        for(int i = 0; i < length / 2; i++) {
+            data[i] = text[i % text.length];
+        }
+        return data;
+    }
+
+    private byte[] compress(byte[] data, int pieceSize) {
+        Compressor compressor = codec.newCompressor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int offset = 0;
+        do {
+            int length = Math.min(pieceSize, data.length - offset);
+            out.writeBytes(compressor.compress(data, offset, length, offset + length == data.length));
+            offset += length;
+        } while(offset < data.length);
+        compressor.end();
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed, int pieceSize) throws IOException {
+        Decompressor decompressor = codec.newDecompressor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for(int offset = 0; offset < compressed.length; offset += pieceSize) {
+                out.writeBytes(decompressor.decompress(
+                        Arrays.copyOfRange(compressed, offset, Math.min(compressed.length, offset + pieceSize))));
+            }
+            assertTrue(decompressor.isFinished());
+        } finally {
+            decompressor.end();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTripInAnyPieces() throws IOException {
+        byte[] data = sampleData(200_000);
+        for(int pieceSize : new int[]{1000, 64 * 1024, data.length}) {
+            byte[] compressed = compress(data, pieceSize);
+            assertTrue(compressed.length < data.length);
+            for(int blockSize : new int[]{8, 512, 65464}) {
+                assertArrayEquals(data, decompress(compressed, blockSize));
+            }
+        }
+    }
+
+    @Test
+    public void emptyDataIsACompleteStream() throws IOException {
+        byte[] compressed = compress(new byte[0], 512);
+        assertTrue(compressed.length > 0);
+        assertEquals(0, decompress(compressed, 512).length);
+    }
+
+    @Test
+    public void sameDataCompressesToTheSameStream() {
+        byte[] data = sampleData(100_000);
+        // Cached blocks are only valid if every reader produces the same stream.
+        assertArrayEquals(compress(data, 64 * 1024), compress(data, 64 * 1024));
+    }
+
+    @Test
+    public void invalidDataIsRejected() {
+        Decompressor decompressor = codec.newDecompressor();
+        assertThrows(IOException.class, () -> decompressor.decompress(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        decompressor.end();
+    }
+
+    @Test
+    public void dataAfterTheStreamIsRejected() {
+        byte[] compressed = compress(sampleData(1000), 1000);
+        byte[] extended = Arrays.copyOf(compressed, compressed.length + 3);
+        Decompressor decompressor = codec.newDecompressor();
+        assertThrows(IOException.class, () -> decompressor.decompress(extended));
+        decompressor.end();
+
+        Decompressor afterEnd = codec.newDecompressor();
+        assertThrows(IOException.class, () -> {
+            afterEnd.decompress(compressed);
+            afterEnd.decompress(new byte[]{0});
+        });
+        afterEnd.end();
+    }
+
+    @Test
+    public void truncatedStreamIsNotFinished() throws IOException {
+        byte[] compressed = compress(sampleData(10_000), 10_000);
+        Decompressor decompressor = codec.newDecompressor();
+        decompressor.decompress(Arrays.copyOf(compressed, compressed.length - 4));
+        assertFalse(decompressor.isFinished());
+        decompressor.end();
+    }
+
+    @Test
+    public void codecsFindDeflateByName() {
+        assertEquals(DeflateCodec.NAME, Codecs.get(" Deflate ").name());
+        assertEquals(DeflateCodec.NAME, Codecs.choose("zstd,deflate").name());
+        assertNull(Codecs.choose("zstd,lz4"));
+    }
+}
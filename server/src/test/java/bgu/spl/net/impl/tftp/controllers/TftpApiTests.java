@@ -0,0 +1,249 @@
+package bgu.spl.net.impl.tftp.controllers;
+
+import bgu.spl.net.impl.tftp.EncodeDecodeHelper;
+import bgu.spl.net.impl.tftp.GlobalConstants;
+import bgu.spl.net.impl.tftp.packets.AbstractPacket;
+import bgu.spl.net.impl.tftp.packets.AcknowledgementPacket;
+import bgu.spl.net.impl.tftp.packets.DataPacket;
+import bgu.spl.net.impl.tftp.packets.DataWindow;
+import bgu.spl.net.impl.tftp.packets.OptionAcknowledgementPacket;
+import bgu.spl.net.impl.tftp.packets.ReadRequestPacket;
+import bgu.spl.net.impl.tftp.packets.WriteRequestPacket;
+import bgu.spl.net.impl.tftp.services.ServicesConstants;
+import bgu.spl.net.impl.tftp.services.TftpService;
+import bgu.spl.net.srv.ConnectionHandler;
+import bgu.spl.net.srv.Connections;
+import bgu.spl.net.srv.FileRegion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the API the way the protocol does, with the service working on the server's directory.
+ */
+public class TftpApiTests {
+
+    private static final int BLOCK_SIZE = GlobalConstants.MAX_BLOCK_SIZE;
+    /**
+     * Even with the largest block size a file past 4 GiB has more than 65536 blocks, so block numbers roll over.
+     */
+    private static final long SIZE = (1L << 32) + BLOCK_SIZE / 2;
+    /**
+     * The only bytes of the sparse file that aren't 0, around 2 GiB, 4 GiB and the file's end.
+     * Each holds its index + 1.
+     */
+    private static final long[] MARKERS = {(1L << 31) - 1, 1L << 31, (1L << 32) - 1, 1L << 32, SIZE - 1};
+
+    private final List<String> created = new ArrayList<>();
+
+    @BeforeAll
+    public static void createDirectory() throws IOException {
+        Files.createDirectories(Paths.get(ServicesConstants.WORK_DIR));
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        for(String file : created) {
+            Files.deleteIfExists(Paths.get(ServicesConstants.WORK_DIR, file));
+        }
+    }
+
+    private String sparseFile() throws IOException {
+        String name = "sparse-" + System.nanoTime();
+        created.add(name);
+        try (RandomAccessFile file = new RandomAccessFile(Paths.get(ServicesConstants.WORK_DIR, name).toFile(), "rw")) {
+            file.setLength(SIZE);
+            for(int i = 0; i < MARKERS.length; i++) {
+                file.seek(MARKERS[i]);
+                file.write(i + 1);
+            }
+        }
+        return name;
+    }
+
+    @Test
+    public void blocksPastFourGibibytesAreReadFromTheirOffsets() throws IOException {
+        download(false);
+    }
+
+    @Test
+    public void regionsPastFourGibibytesAreLocatedAtTheirOffsets() throws IOException {
+        download(true);
+    }
+
+    /**
+     * Downloads the sparse file in windows of 64 blocks, checking every block's number and the markers' positions.
+     */
+    private void download(boolean zeroCopy) throws IOException {
+        String file = sparseFile();
+        TftpApi api = new TftpApi(new TftpService(), zeroCopy);
+        Wire wire = new Wire();
+        try {
+            AbstractPacket accepted = api.readRequest(new ReadRequestPacket(file, Map.of(
+                    GlobalConstants.BLOCK_SIZE_OPTION, Integer.toString(BLOCK_SIZE),
+                    GlobalConstants.WINDOW_SIZE_OPTION, "64")).getBytes());
+            assertInstanceOf(OptionAcknowledgementPacket.class, accepted);
+            long blocks = 0;
+            long length = 0;
+            int markers = 0;
+            short acknowledged = 0;
+            while(true) {
+                AbstractPacket response = api.acknowledgementRequest(new AcknowledgementPacket(acknowledged).getBytes());
+                assertTrue(response instanceof DataPacket || response instanceof DataWindow, "Got " + response);
+                response.sendTo(wire, 1);
+                for(Block block : wire.drain()) {
+                    blocks++;
+                    assertEquals((short) blocks, block.number, "Block " + blocks);
+                    for(int i = 0; i < MARKERS.length; i++) {
+                        if(MARKERS[i] >= length && MARKERS[i] < length + block.size) {
+                            assertEquals(i + 1, block.data()[(int) (MARKERS[i] - length)], "Marker " + i);
+                            markers++;
+                        }
+                    }
+                    block.release();
+                    length += block.size;
+                    if(block.size < BLOCK_SIZE) {
+                        assertEquals(SIZE, length);
+                        assertEquals(SIZE / BLOCK_SIZE + 1, blocks);
+                        assertTrue(blocks > 65536);
+                        assertEquals(MARKERS.length, markers);
+                        return;
+                    }
+                    acknowledged = block.number;
+                }
+            }
+        } finally {
+            api.disconnect();
+        }
+    }
+
+    @Test
+    public void listingIsSentAcrossBlocks() {
+        TftpApi api = new TftpApi(new TftpService());
+        Set<String> names = new HashSet<>();
+        try {
+            // Uploaded through the API, so they're listed as soon as they're complete.
+            for(int i = 0; i < 300; i++) {
+                String name = "listed-" + i + "-" + "x".repeat(32);
+                created.add(name);
+                names.add(name);
+                assertInstanceOf(AcknowledgementPacket.class, api.writeRequest(new WriteRequestPacket(name).getBytes()));
+                byte[] empty = new DataPacket((short) 0, (short) 1, new byte[0]).getBytes();
+                assertInstanceOf(AcknowledgementPacket.class, api.writeData(empty));
+            }
+
+            ByteArrayOutputStream listing = new ByteArrayOutputStream();
+            AbstractPacket response = api.listDirectoryRequest();
+            long blocks = 0;
+            while(true) {
+                DataPacket block = assertInstanceOf(DataPacket.class, response);
+                blocks++;
+                assertEquals((short) blocks, block.getBlockNumber());
+                listing.writeBytes(block.getData());
+                if(block.getPacketSize() < GlobalConstants.MAX_DATA_PACKET_SIZE) {
+                    break;
+                }
+                response = api.acknowledgementRequest(new AcknowledgementPacket(block.getBlockNumber()).getBytes());
+            }
+            assertTrue(blocks > 1);
+            Set<String> listed = new HashSet<>(Arrays.asList(
+                    listing.toString(GlobalConstants.ENCODING_FORMAT).split("\n")));
+            assertTrue(listed.containsAll(names));
+        } finally {
+            api.disconnect();
+        }
+    }
+
+    /**
+     * A block as the connection would send it, either as bytes or as a region of the file.
+     */
+    private static final class Block {
+        private final short number;
+        private final int size;
+        private final byte[] bytes;
+        private final FileRegion region;
+
+        private Block(byte[] header, byte[] bytes, FileRegion region) {
+            this.size = Short.toUnsignedInt(EncodeDecodeHelper.byteToShort(new byte[]{header[2], header[3]}));
+            this.number = EncodeDecodeHelper.byteToShort(new byte[]{header[4], header[5]});
+            this.bytes = bytes;
+            this.region = region;
+        }
+
+        private byte[] data() {
+            if(region == null) {
+                return bytes;
+            }
+            try {
+                return region.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void release() {
+            if(region != null) {
+                region.release();
+            }
+        }
+    }
+
+    /**
+     * Collects what the API's packets send to the client.
+     */
+    private static final class Wire implements Connections<byte[]> {
+        private final List<Block> sent = new ArrayList<>();
+
+        private List<Block> drain() {
+            List<Block> blocks = new ArrayList<>(sent);
+            sent.clear();
+            return blocks;
+        }
+
+        @Override
+        public void connect(int connectionId, ConnectionHandler<byte[]> handler) {
+        }
+
+        @Override
+        public boolean send(int connectionId, byte[] msg) {
+            sent.add(new Block(msg, Arrays.copyOfRange(msg, 6, msg.length), null));
+            return true;
+        }
+
+        @Override
+        public boolean sendFile(int connectionId, byte[] header, FileRegion region) {
+            sent.add(new Block(header, null, region));
+            return true;
+        }
+
+        @Override
+        public void disconnect(int connectionId) {
+        }
+
+        @Override
+        public void subscribe(int connectionId, String username) {
+        }
+
+        @Override
+        public void broadcast(byte[] broadcastMessage) {
+        }
+    }
+}
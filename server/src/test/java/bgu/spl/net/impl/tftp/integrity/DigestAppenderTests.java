@@ -0,0 +1,129 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DigestAppenderTests {
+
+    private static byte[] sampleData(int length) {
+        byte[] data = new byte[length];
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 7 + i / 256);
+        }
+        return data;
+    }
+
+    private static byte[] digestOf(String name, byte[] data) {
+        Digest digest = Digests.create(name);
+        digest.update(data, 0, data.length);
+        return digest.finish();
+    }
+
+    private static byte[] dataBlock(byte[] data, int blockSize, long block) {
+        int from = (int) Math.min(data.length, block * blockSize);
+        return Arrays.copyOfRange(data, from, Math.min(data.length, from + blockSize));
+    }
+
+    /**
+     * Sends the data like a download does, every block but the trailer's is read from the data.
+     */
+    private static List<byte[]> send(String digestName, byte[] data, int blockSize) {
+        DigestAppender appender = new DigestAppender(Digests.create(digestName), blockSize);
+        List<byte[]> blocks = new ArrayList<>();
+        byte[] block;
+        do {
+            long number = blocks.size();
+            block = appender.trailerBlock(number);
+            if(block == null) {
+                block = appender.add(number, dataBlock(data, blockSize, number));
+            }
+            blocks.add(block);
+        } while(block.length == blockSize);
+        return blocks;
+    }
+
+    private static void assertSentWithDigest(String digestName, byte[] data, int blockSize) {
+        List<byte[]> blocks = send(digestName, data, blockSize);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        for(int i = 0; i < blocks.size() - 1; i++) {
+            assertEquals(blockSize, blocks.get(i).length);
+        }
+        blocks.forEach(sent::writeBytes);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes(data);
+        expected.writeBytes(digestOf(digestName, data));
+        assertArrayEquals(expected.toByteArray(), sent.toByteArray(),
+                digestName + ", " + data.length + " bytes in blocks of " + blockSize);
+    }
+
+    @Test
+    public void digestFollowsTheData() {
+        for(String name : new String[]{Crc32cDigest.NAME, Sha256Digest.NAME}) {
+            for(int length : new int[]{0, 1, 100, 511, 513, 5000}) {
+                assertSentWithDigest(name, sampleData(length), 512);
+            }
+        }
+    }
+
+    @Test
+    public void exactMultipleSendsTheDigestInsteadOfAnEmptyBlock() {
+        byte[] data = sampleData(1024);
+        List<byte[]> blocks = send(Crc32cDigest.NAME, data, 512);
+        assertEquals(3, blocks.size());
+        assertArrayEquals(digestOf(Crc32cDigest.NAME, data), blocks.get(2));
+        assertSentWithDigest(Sha256Digest.NAME, data, 512);
+    }
+
+    @Test
+    public void trailerLongerThanABlockIsCutAgain() {
+        // 500 bytes of data and a 32 bytes digest don't fit the last block.
+        byte[] data = sampleData(1012);
+        List<byte[]> blocks = send(Sha256Digest.NAME, data, 512);
+        assertEquals(3, blocks.size());
+        assertEquals(1012 + 32 - 2 * 512, blocks.get(2).length);
+        assertSentWithDigest(Sha256Digest.NAME, data, 512);
+        // A small block size holds less than the digest.
+        assertSentWithDigest(Sha256Digest.NAME, sampleData(100), 8);
+    }
+
+    @Test
+    public void trailerFillingItsLastBlockIsFollowedByAnEmptyOne() {
+        byte[] data = sampleData(512 + 508);
+        List<byte[]> blocks = send(Crc32cDigest.NAME, data, 512);
+        assertEquals(3, blocks.size());
+        assertEquals(512, blocks.get(1).length);
+        assertEquals(0, blocks.get(2).length);
+        assertSentWithDigest(Crc32cDigest.NAME, data, 512);
+    }
+
+    @Test
+    public void resentBlocksAreDigestedOnce() {
+        byte[] data = sampleData(1300);
+        DigestAppender appender = new DigestAppender(Digests.create(Crc32cDigest.NAME), 512);
+        appender.add(0, dataBlock(data, 512, 0));
+        appender.add(1, dataBlock(data, 512, 1));
+        // The client missed block 1, it's read and added again.
+        appender.add(1, dataBlock(data, 512, 1));
+        appender.add(0, dataBlock(data, 512, 0));
+        byte[] last = appender.add(2, dataBlock(data, 512, 2));
+        byte[] expected = Arrays.copyOf(dataBlock(data, 512, 2), 1300 - 1024 + 4);
+        System.arraycopy(digestOf(Crc32cDigest.NAME, data), 0, expected, 1300 - 1024, 4);
+        assertArrayEquals(expected, last);
+        assertArrayEquals(expected, appender.trailerBlock(2));
+    }
+
+    @Test
+    public void skippedBlocksCantBeDigested() {
+        DigestAppender appender = new DigestAppender(Digests.create(Crc32cDigest.NAME), 512);
+        appender.add(0, new byte[512]);
+        assertThrows(IllegalStateException.class, () -> appender.add(2, new byte[512]));
+    }
+}
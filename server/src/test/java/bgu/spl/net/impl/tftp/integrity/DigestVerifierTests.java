@@ -0,0 +1,109 @@
+package bgu.spl.net.impl.tftp.integrity;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DigestVerifierTests {
+
+    private static byte[] sampleData(int length) {
+        byte[] data = new byte[length];
+        for(int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 13 + i / 256);
+        }
+        return data;
+    }
+
+    /**
+     * The data followed by its digest, as the sender appends it.
+     */
+    private static byte[] withDigest(String name, byte[] data) {
+        Digest digest = Digests.create(name);
+        digest.update(data, 0, data.length);
+        byte[] value = digest.finish();
+        byte[] sent = Arrays.copyOf(data, data.length + value.length);
+        System.arraycopy(value, 0, sent, data.length, value.length);
+        return sent;
+    }
+
+    /**
+     * Receives the bytes in blocks of the block size, ending with a shorter (maybe empty) block.
+     * @return The data the verifier let through.
+     */
+    private static byte[] receive(DigestVerifier verifier, byte[] sent, int blockSize) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int offset = 0;
+        while(true) {
+            int length = Math.min(blockSize, sent.length - offset);
+            data.writeBytes(verifier.update(Arrays.copyOfRange(sent, offset, offset + length)));
+            offset += length;
+            if(length < blockSize) {
+                return data.toByteArray();
+            }
+        }
+    }
+
+    @Test
+    public void dataEndingWithItsDigestIsVerified() {
+        for(String name : new String[]{Crc32cDigest.NAME, Sha256Digest.NAME}) {
+            for(int length : new int[]{0, 1, 28, 480, 508, 512, 1024, 5000}) {
+                for(int blockSize : new int[]{8, 512}) {
+                    byte[] data = sampleData(length);
+                    DigestVerifier verifier = new DigestVerifier(Digests.create(name));
+                    assertArrayEquals(data, receive(verifier, withDigest(name, data), blockSize));
+                    assertTrue(verifier.verify(), name + ", " + length + " bytes in blocks of " + blockSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void digestInItsOwnBlockAfterAnExactMultiple() {
+        byte[] data = sampleData(1024);
+        byte[] sent = withDigest(Crc32cDigest.NAME, data);
+        DigestVerifier verifier = new DigestVerifier(Digests.create(Crc32cDigest.NAME));
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        received.writeBytes(verifier.update(Arrays.copyOfRange(sent, 0, 512)));
+        received.writeBytes(verifier.update(Arrays.copyOfRange(sent, 512, 1024)));
+        // The last 4 bytes of the data are held back until the block after them shows they aren't the digest.
+        assertArrayEquals(Arrays.copyOf(data, 1020), received.toByteArray());
+        received.writeBytes(verifier.update(Arrays.copyOfRange(sent, 1024, 1028)));
+        assertArrayEquals(data, received.toByteArray());
+        assertTrue(verifier.verify());
+    }
+
+    @Test
+    public void corruptedDataIsRejected() {
+        byte[] sent = withDigest(Sha256Digest.NAME, sampleData(3000));
+        sent[1500] ^= 1;
+        DigestVerifier verifier = new DigestVerifier(Digests.create(Sha256Digest.NAME));
+        receive(verifier, sent, 512);
+        assertFalse(verifier.verify());
+    }
+
+    @Test
+    public void missingDigestIsRejected() {
+        byte[] data = sampleData(1000);
+        DigestVerifier verifier = new DigestVerifier(Digests.create(Crc32cDigest.NAME));
+        receive(verifier, data, 512);
+        assertFalse(verifier.verify());
+
+        DigestVerifier empty = new DigestVerifier(Digests.create(Sha256Digest.NAME));
+        receive(empty, new byte[0], 512);
+        assertFalse(empty.verify());
+    }
+
+    @Test
+    public void digestsAreChosenByName() {
+        assertEquals(Crc32cDigest.NAME, Digests.choose("md5, CRC32C"));
+        assertNull(Digests.choose("md5"));
+        assertNull(Digests.create(null));
+    }
+}
@@ -0,0 +1,170 @@
+package bgu.spl.net.impl.tftp.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BlockCacheTests {
+
+    private static byte[] block(int length, int value) {
+        byte[] block = new byte[length];
+        block[0] = (byte) value;
+        return block;
+    }
+
+    @Test
+    public void cachedBlocksAreFoundByTheirWholeKey() {
+        BlockCache cache = new BlockCache(1 << 20);
+        long version = cache.startReading("f");
+        byte[] data = block(512, 1);
+        cache.put("f", version, 512, 0, data);
+        assertSame(data, cache.get("f", version, 512, 0));
+        assertNull(cache.get("f", version, 512, 512));
+        assertNull(cache.get("f", version, 1024, 0));
+        assertNull(cache.get("f", version, "deflate", 512, 0));
+        assertNull(cache.get("g", version, 512, 0));
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(512, cache.getSize());
+    }
+
+    @Test
+    public void invalidationDropsTheFilesBlocksAndChangesItsVersion() {
+        BlockCache cache = new BlockCache(1 << 20);
+        long version = cache.startReading("f");
+        long other = cache.startReading("g");
+        cache.put("f", version, 512, 0, block(512, 1));
+        cache.put("f", version, "deflate", 512, 0, block(100, 2));
+        cache.put("g", other, 512, 0, block(512, 3));
+        cache.invalidate("f");
+        assertNotEquals(version, cache.version("f"));
+        assertNull(cache.get("f", version, 512, 0));
+        assertNull(cache.get("f", version, "deflate", 512, 0));
+        // Other files keep their blocks and their version.
+        assertEquals(other, cache.version("g"));
+        assertEquals(3, cache.get("g", other, 512, 0)[0]);
+        assertEquals(512, cache.getSize());
+    }
+
+    @Test
+    public void blocksOfAStaleVersionAreIgnored() {
+        BlockCache cache = new BlockCache(1 << 20);
+        long stale = cache.startReading("f");
+        cache.invalidate("f");
+        // A transfer that started before the file was replaced finishes reading its old version.
+        cache.put("f", stale, 512, 0, block(512, 1));
+        assertNull(cache.get("f", stale, 512, 0));
+        assertNull(cache.get("f", cache.version("f"), 512, 0));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedBlockIsEvictedFirst() {
+        BlockCache cache = new BlockCache(3 * 512);
+        long version = cache.startReading("f");
+        for(int i = 0; i < 3; i++) {
+            cache.put("f", version, 512, i * 512L, block(512, i));
+        }
+        cache.get("f", version, 512, 0);
+        cache.put("f", version, 512, 3 * 512L, block(512, 3));
+        assertNull(cache.get("f", version, 512, 512));
+        assertEquals(0, cache.get("f", version, 512, 0)[0]);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3 * 512, cache.getSize());
+        // Blocks larger than the whole cache aren't kept.
+        cache.put("f", version, 4096, 0, block(4096, 4));
+        assertNull(cache.get("f", version, 4096, 0));
+    }
+
+    @Test
+    public void versionsAreOnlyKeptWhileNeeded() {
+        BlockCache cache = new BlockCache(512, 4);
+        for(int i = 0; i < 100; i++) {
+            cache.invalidate("deleted" + i);
+        }
+        // Files nobody read leave nothing behind.
+        assertEquals(0, cache.trackedFiles());
+
+        long version = cache.startReading("f");
+        cache.invalidate("f");
+        long next = cache.version("f");
+        assertNotEquals(version, next);
+        cache.stopReading("f");
+        assertEquals(0, cache.trackedFiles());
+
+        // Cached blocks keep the version once the reader is done, until they're evicted.
+        version = cache.startReading("f");
+        cache.put("f", version, 8, 0, block(8, 1));
+        cache.stopReading("f");
+        assertEquals(1, cache.trackedFiles());
+        cache.invalidate("f");
+        assertEquals(0, cache.trackedFiles());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void concurrentUseNeverServesAStaleBlock() throws Exception {
+        BlockCache cache = new BlockCache(64 * 1024, 4);
+        int threads = 8;
+        ConcurrentLinkedQueue<String> wrong = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for(int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for(int i = 0; i < 50_000; i++) {
+                        String file = "f" + random.nextInt(50);
+                        if(random.nextInt(4) == 0) {
+                            cache.invalidate(file);
+                            continue;
+                        }
+                        long version = cache.startReading(file);
+                        for(int position = 0; position < 4; position++) {
+                            byte[] data = cache.get(file, version, 8, position);
+                            if(data == null) {
+                                cache.put(file, version, 8, position, new byte[]{(byte) version, (byte) position});
+                            } else if(data[0] != (byte) version || data[1] != (byte) position) {
+                                wrong.add(file);
+                            }
+                        }
+                        cache.stopReading(file);
+                    }
+                    return null;
+                });
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(wrong.isEmpty(), "Stale blocks of " + wrong);
+        for(int i = 0; i < 50; i++) {
+            cache.invalidate("f" + i);
+        }
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.trackedFiles());
+    }
+
+    @Test
+    public void disabledCacheKeepsNothing() {
+        BlockCache cache = new BlockCache(0);
+        long version = cache.startReading("f");
+        cache.put("f", version, 512, 0, block(512, 1));
+        assertNull(cache.get("f", version, 512, 0));
+        assertEquals(0, cache.getSize());
+        cache.stopReading("f");
+        assertEquals(0, cache.trackedFiles());
+    }
+}
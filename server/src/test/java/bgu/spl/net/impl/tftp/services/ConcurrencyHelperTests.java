@@ -0,0 +1,239 @@
+package bgu.spl.net.impl.tftp.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyHelperTests {
+
+    private static ConcurrencyHelper helper() {
+        return new ConcurrencyHelper(0, 0);
+    }
+
+    @Test
+    public void readersShareAFile() {
+        ConcurrencyHelper helper = helper();
+        helper.read("f");
+        helper.read("f");
+        // Readers keep their version open, so they don't hold back modifications.
+        helper.write("f");
+        assertTrue(helper.isBeingWritten("f"));
+        helper.writeCompleted("f");
+        helper.delete("f");
+        helper.deletionCompleted("f");
+        helper.free("f");
+        helper.free("f");
+        assertFalse(helper.isBeingWritten("f"));
+    }
+
+    @Test
+    public void modificationsExcludeEachOtherAndNewReaders() {
+        ConcurrencyHelper helper = helper();
+        helper.write("f");
+        assertThrows(ConcurrentModificationException.class, () -> helper.read("f"));
+        assertThrows(ConcurrentModificationException.class, () -> helper.write("f"));
+        assertThrows(ConcurrentModificationException.class, () -> helper.delete("f"));
+        // Other files aren't affected.
+        helper.read("g");
+        helper.writeCompleted("f");
+
+        helper.delete("f");
+        assertThrows(ConcurrentModificationException.class, () -> helper.read("f"));
+        assertThrows(ConcurrentModificationException.class, () -> helper.write("f"));
+        assertThrows(ConcurrentModificationException.class, () -> helper.delete("f"));
+        helper.deletionCompleted("f");
+        assertDoesNotThrow(() -> helper.write("f"));
+    }
+
+    @Test
+    public void filesStayUsableOnceTheFreeOnesAreRetired() {
+        ConcurrencyHelper helper = helper();
+        helper.write("busy");
+        // Enough files to have the free ones retired.
+        for(int i = 0; i < 3000; i++) {
+            helper.read("file" + i);
+            helper.free("file" + i);
+        }
+        assertTrue(helper.isBeingWritten("busy"));
+        assertThrows(ConcurrentModificationException.class, () -> helper.read("busy"));
+        helper.writeCompleted("busy");
+        for(int i = 0; i < 3000; i += 100) {
+            String file = "file" + i;
+            helper.write(file);
+            assertThrows(ConcurrentModificationException.class, () -> helper.write(file));
+            helper.writeCompleted(file);
+            assertFalse(helper.isBeingWritten(file));
+        }
+    }
+
+    @Test
+    public void completingWhatIsntDoneFails() {
+        ConcurrencyHelper helper = helper();
+        assertThrows(NoSuchElementException.class, () -> helper.writeCompleted("f"));
+        assertThrows(NoSuchElementException.class, () -> helper.deletionCompleted("f"));
+        helper.read("f");
+        assertThrows(NoSuchElementException.class, () -> helper.writeCompleted("f"));
+        helper.free("f");
+    }
+
+    @Test
+    public void exactlyOneOfManyWritersWins() throws Exception {
+        ConcurrencyHelper helper = helper();
+        int threads = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for(int round = 0; round < 50; round++) {
+                String file = "f" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger winners = new AtomicInteger();
+                Future<?>[] futures = new Future<?>[threads];
+                for(int i = 0; i < threads; i++) {
+                    futures[i] = executor.submit(() -> {
+                        start.await();
+                        try {
+                            helper.write(file);
+                            winners.incrementAndGet();
+                        } catch (ConcurrentModificationException e) {
+                            // Lost the race.
+                        }
+                        return null;
+                    });
+                }
+                start.countDown();
+                for(Future<?> future : futures) {
+                    future.get();
+                }
+                assertEquals(1, winners.get(), "Round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readersAndAWriterKeepTheStateConsistent() throws Exception {
+        ConcurrencyHelper helper = helper();
+        int readers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+        try {
+            Future<?>[] futures = new Future<?>[readers + 1];
+            for(int i = 0; i < readers; i++) {
+                futures[i] = executor.submit(() -> {
+                    for(int j = 0; j < 20_000; j++) {
+                        try {
+                            helper.read("f");
+                        } catch (ConcurrentModificationException e) {
+                            continue;
+                        }
+                        reads.incrementAndGet();
+                        helper.free("f");
+                    }
+                    return null;
+                });
+            }
+            futures[readers] = executor.submit(() -> {
+                for(int j = 0; j < 20_000; j++) {
+                    helper.write("f");
+                    writes.incrementAndGet();
+                    // Fails if the readers' updates were lost or leaked into the writing bit.
+                    helper.writeCompleted("f");
+                }
+                return null;
+            });
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(reads.get() > 0);
+        assertEquals(20_000, writes.get());
+        assertFalse(helper.isBeingWritten("f"));
+        helper.delete("f");
+        helper.deletionCompleted("f");
+        assertThrows(NoSuchElementException.class, () -> helper.deletionCompleted("f"));
+    }
+
+    @Test
+    public void ownerLeasesAreReclaimedWhenItIsGone() {
+        ConcurrencyHelper helper = helper();
+        Object owner = new Object();
+        helper.read("a", owner);
+        helper.write("b", owner);
+        helper.delete("c", owner);
+        assertEquals(3, helper.getActiveLeases());
+        assertEquals(3, helper.releaseAll(owner));
+        assertEquals(0, helper.getActiveLeases());
+        assertEquals(3, helper.getReclaimedLeases());
+        // The files are free again, and the owner's late releases don't touch the new operations.
+        helper.write("b");
+        helper.delete("c");
+        helper.free("a", owner);
+        helper.writeCompleted("b", owner);
+        helper.deletionCompleted("c", owner);
+        assertTrue(helper.isBeingWritten("b"));
+        helper.writeCompleted("b");
+        helper.deletionCompleted("c");
+        assertEquals(0, helper.releaseAll(owner));
+    }
+
+    @Test
+    public void releasedLeasesAreNotReclaimed() {
+        ConcurrencyHelper helper = helper();
+        Object owner = new Object();
+        helper.write("f", owner);
+        helper.writeCompleted("f", owner);
+        assertEquals(0, helper.getActiveLeases());
+        assertEquals(0, helper.releaseAll(owner));
+        assertEquals(0, helper.getReclaimedLeases());
+    }
+
+    @Test
+    public void unrenewedLeaseExpires() throws InterruptedException {
+        ConcurrencyHelper helper = new ConcurrencyHelper(0, 100);
+        Object owner = new Object();
+        helper.write("f", owner);
+        // The sweeper runs once a second at most.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(helper.getExpiredLeases() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, helper.getExpiredLeases());
+        assertFalse(helper.isBeingWritten("f"));
+        assertEquals(0, helper.getActiveLeases());
+        helper.write("f");
+        // The owner's late completion doesn't release the new writer.
+        helper.writeCompleted("f", owner);
+        assertTrue(helper.isBeingWritten("f"));
+    }
+
+    @Test
+    public void renewedLeaseDoesntExpire() throws InterruptedException {
+        ConcurrencyHelper helper = new ConcurrencyHelper(0, 1000);
+        Object owner = new Object();
+        helper.read("f", owner);
+        for(int i = 0; i < 10; i++) {
+            Thread.sleep(250);
+            helper.renew(owner);
+        }
+        assertEquals(0, helper.getExpiredLeases());
+        assertEquals(1, helper.getActiveLeases());
+        helper.free("f", owner);
+        assertEquals(0, helper.getActiveLeases());
+    }
+}
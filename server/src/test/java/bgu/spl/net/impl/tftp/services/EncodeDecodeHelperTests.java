@@ -8,4 +8,47 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class EncodeDecodeHelperTests {
 
+    @Test
+    public void shortToByteIsBigEndian() {
+        assertArrayEquals(new byte[]{0x12, 0x34}, EncodeDecodeHelper.shortToByte((short) 0x1234));
+        assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xfe}, EncodeDecodeHelper.shortToByte((short) 0xfffe));
+    }
+
+    @Test
+    public void byteToShortReversesShortToByte() {
+        for(int value = Short.MIN_VALUE; value <= Short.MAX_VALUE; value += 257) {
+            assertEquals((short) value, EncodeDecodeHelper.byteToShort(EncodeDecodeHelper.shortToByte((short) value)));
+        }
+    }
+
+    @Test
+    public void unwrapKeepsBlocksBeforeTheFirstRollover() {
+        assertEquals(0, EncodeDecodeHelper.unwrapBlockNumber((short) 0, 0));
+        assertEquals(1, EncodeDecodeHelper.unwrapBlockNumber((short) 1, 1));
+        assertEquals(5, EncodeDecodeHelper.unwrapBlockNumber((short) 5, 7));
+        // Blocks past 32767 are negative shorts, they must still count up.
+        assertEquals(40000, EncodeDecodeHelper.unwrapBlockNumber((short) 40000, 40000));
+        assertEquals(65535, EncodeDecodeHelper.unwrapBlockNumber((short) 65535, 65535));
+    }
+
+    @Test
+    public void unwrapCountsRollovers() {
+        assertEquals(65536, EncodeDecodeHelper.unwrapBlockNumber((short) 0, 65536));
+        assertEquals(65537, EncodeDecodeHelper.unwrapBlockNumber((short) 1, 65537));
+        assertEquals(3L * 65536 + 10, EncodeDecodeHelper.unwrapBlockNumber((short) 10, 3L * 65536 + 10));
+    }
+
+    @Test
+    public void unwrapRefersBackAcrossARollover() {
+        // A duplicate acknowledgement of the block before the rollover, sent after the rollover's block.
+        assertEquals(65535, EncodeDecodeHelper.unwrapBlockNumber((short) 65535, 65536));
+        assertEquals(65530, EncodeDecodeHelper.unwrapBlockNumber((short) 65530, 65540));
+    }
+
+    @Test
+    public void unwrapNeverGoesPastTheLatestBlock() {
+        // A block number ahead of the latest one can only be a very old block.
+        assertEquals(100 - 65535, EncodeDecodeHelper.unwrapBlockNumber((short) 101, 100));
+        assertEquals(200000 - 65535, EncodeDecodeHelper.unwrapBlockNumber((short) ((200000 + 1) & 0xffff), 200000));
+    }
 }
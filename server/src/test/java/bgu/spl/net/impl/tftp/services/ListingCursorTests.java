@@ -0,0 +1,148 @@
+package bgu.spl.net.impl.tftp.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static bgu.spl.net.impl.tftp.GlobalConstants.ENCODING_FORMAT;
+import static bgu.spl.net.impl.tftp.GlobalConstants.MAX_DATA_PACKET_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ListingCursorTests {
+
+    private static ListingCursor cursor(List<String> names) {
+        return new ListingCursor(names.iterator(), null);
+    }
+
+    /**
+     * Acknowledges every block as it arrives until the last one.
+     */
+    private static List<byte[]> readAll(ListingCursor cursor) {
+        List<byte[]> blocks = new ArrayList<>();
+        byte[] block;
+        do {
+            block = cursor.block(blocks.size());
+            blocks.add(block);
+        } while(block.length == MAX_DATA_PACKET_SIZE);
+        return blocks;
+    }
+
+    private static byte[] listing(List<String> names) {
+        StringBuilder listing = new StringBuilder();
+        for(String name : names) {
+            listing.append(name).append('\n');
+        }
+        return listing.toString().getBytes(ENCODING_FORMAT);
+    }
+
+    private static byte[] concat(List<byte[]> blocks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blocks.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void emptyDirectoryIsOneEmptyBlock() {
+        ListingCursor cursor = cursor(Collections.emptyList());
+        assertEquals(0, cursor.block(0).length);
+        assertNull(cursor.block(1));
+    }
+
+    @Test
+    public void namesAreSplitBetweenFullBlocks() {
+        List<String> names = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            names.add("file_number_" + i + ".txt");
+        }
+        List<byte[]> blocks = readAll(cursor(names));
+        for(int i = 0; i < blocks.size() - 1; i++) {
+            assertEquals(MAX_DATA_PACKET_SIZE, blocks.get(i).length);
+        }
+        assertTrue(blocks.get(blocks.size() - 1).length < MAX_DATA_PACKET_SIZE);
+        assertArrayEquals(listing(names), concat(blocks));
+    }
+
+    @Test
+    public void exactMultipleEndsWithAnEmptyBlock() {
+        // 2 entries of 255 bytes and a newline each fill a block exactly.
+        List<String> names = List.of("a".repeat(255), "b".repeat(255));
+        List<byte[]> blocks = readAll(cursor(names));
+        assertEquals(2, blocks.size());
+        assertEquals(MAX_DATA_PACKET_SIZE, blocks.get(0).length);
+        assertEquals(0, blocks.get(1).length);
+        assertArrayEquals(listing(names), concat(blocks));
+    }
+
+    @Test
+    public void multibyteNamesAreCutByBytes() {
+        List<String> names = new ArrayList<>();
+        for(int i = 0; i < 80; i++) {
+            names.add("קובץ_" + i + "_файл_ファイル");
+        }
+        List<byte[]> blocks = readAll(cursor(names));
+        assertArrayEquals(listing(names), concat(blocks));
+        assertEquals(String.join("\n", names) + "\n", new String(concat(blocks), ENCODING_FORMAT));
+    }
+
+    @Test
+    public void repeatedAcknowledgementResendsTheLastBlock() {
+        List<String> names = List.of("x".repeat(600), "y");
+        ListingCursor cursor = cursor(names);
+        byte[] first = cursor.block(0);
+        assertSame(first, cursor.block(0));
+        byte[] second = cursor.block(1);
+        assertEquals(600 + 1 + 2 - MAX_DATA_PACKET_SIZE, second.length);
+        assertSame(second, cursor.block(1));
+        // Blocks before the last one and blocks that weren't sent yet aren't available.
+        assertNull(cursor.block(0));
+        assertNull(cursor.block(5));
+        assertNull(cursor.block(2));
+    }
+
+    @Test
+    public void blockNumbersAreNotLimitedTo16Bits() {
+        // Names of 511 bytes and a newline fill one block each, produced lazily.
+        final long count = 70000;
+        Iterator<String> names = new Iterator<>() {
+            private long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public String next() {
+                String name = Long.toString(next++);
+                return name + "-".repeat(MAX_DATA_PACKET_SIZE - 1 - name.length());
+            }
+        };
+        ListingCursor cursor = new ListingCursor(names, null);
+        for(long block = 0; block < count; block++) {
+            byte[] data = cursor.block(block);
+            assertEquals(MAX_DATA_PACKET_SIZE, data.length);
+            String name = Long.toString(block);
+            assertArrayEquals(name.getBytes(ENCODING_FORMAT), Arrays.copyOf(data, name.length()));
+        }
+        assertEquals(0, cursor.block(count).length);
+    }
+
+    @Test
+    public void closeClosesTheSource() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        ListingCursor cursor = new ListingCursor(Collections.emptyIterator(), () -> closed.set(true));
+        cursor.close();
+        assertTrue(closed.get());
+    }
+}
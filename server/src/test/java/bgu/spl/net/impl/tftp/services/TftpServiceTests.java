@@ -0,0 +1,93 @@
+package bgu.spl.net.impl.tftp.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.PARTIAL_DIR;
+import static bgu.spl.net.impl.tftp.services.ServicesConstants.WORK_DIR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TftpServiceTests {
+
+    private static final int BLOCK_SIZE = 512;
+    /**
+     * More blocks than block numbers, half of them before the offset that is checked and half after it.
+     */
+    private static final int BLOCKS = 70_000;
+
+    private String file;
+
+    @BeforeAll
+    public static void createDirectories() throws IOException {
+        Files.createDirectories(Paths.get(WORK_DIR));
+        Files.createDirectories(Paths.get(PARTIAL_DIR));
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        if(file != null) {
+            Files.deleteIfExists(Paths.get(WORK_DIR, file));
+            Files.deleteIfExists(Paths.get(PARTIAL_DIR, file));
+        }
+    }
+
+    @Test
+    public void uploadsAreWrittenPastTwoGibibytes() throws Exception {
+        uploadAcross(1L << 31);
+    }
+
+    @Test
+    public void uploadsAreWrittenPastFourGibibytes() throws Exception {
+        uploadAcross(1L << 32);
+    }
+
+    /**
+     * Resumes the upload of a sparse partial file which ends before the offset, so the upload's blocks cross it.
+     * Every block starts with its position in the file.
+     */
+    private void uploadAcross(long offset) throws Exception {
+        file = "upload-" + System.nanoTime();
+        long start = offset - (long) BLOCKS / 2 * BLOCK_SIZE;
+        try (RandomAccessFile partial = new RandomAccessFile(Paths.get(PARTIAL_DIR, file).toFile(), "rw")) {
+            partial.setLength(start);
+        }
+        TftpService service = new TftpService();
+        try {
+            assertTrue(service.writeRequest(file, BLOCK_SIZE, 1, -1, true));
+            assertEquals(start, service.getUploadOffset());
+            for(int i = 0; i < BLOCKS; i++) {
+                assertNull(service.writeData(block(BLOCK_SIZE, start + (long) i * BLOCK_SIZE)));
+            }
+            long last = start + (long) BLOCKS * BLOCK_SIZE;
+            assertEquals(file, service.writeData(block(100, last)));
+        } finally {
+            service.disconnect();
+        }
+
+        Path written = Paths.get(WORK_DIR, file);
+        assertEquals(start + (long) BLOCKS * BLOCK_SIZE + 100, Files.size(written));
+        try (FileChannel channel = FileChannel.open(written)) {
+            for(int i : new int[]{0, 1, BLOCKS / 2 - 1, BLOCKS / 2, BLOCKS / 2 + 1, BLOCKS - 1, BLOCKS}) {
+                long position = start + (long) i * BLOCK_SIZE;
+                ByteBuffer marker = ByteBuffer.allocate(Long.BYTES);
+                channel.read(marker, position);
+                assertEquals(position, marker.flip().getLong(), "Block " + i);
+            }
+        }
+    }
+
+    private static byte[] block(int length, long position) {
+        return ByteBuffer.allocate(length).putLong(position).array();
+    }
+}
@@ -0,0 +1,101 @@
+package bgu.spl.net.srv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileRegionTests {
+
+    @TempDir
+    Path dir;
+
+    private Path file(int length) throws IOException {
+        byte[] content = new byte[length];
+        for(int i = 0; i < length; i++) {
+            content[i] = (byte) i;
+        }
+        return Files.write(dir.resolve("file"), content);
+    }
+
+    @Test
+    public void theRegionIsTransferredFromItsPosition() throws IOException {
+        Path file = file(100);
+        try (FileChannel channel = FileChannel.open(file)) {
+            FileRegion region = new FileRegion(channel, 10, 50, false);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            while(!region.isDone()) {
+                region.transferTo(target);
+            }
+            byte[] expected = new byte[50];
+            System.arraycopy(Files.readAllBytes(file), 10, expected, 0, 50);
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void aFullTargetIsNotAnError() throws IOException {
+        try (FileChannel channel = FileChannel.open(file(100))) {
+            FileRegion region = new FileRegion(channel, 0, 100, false);
+            WritableByteChannel full = new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) {
+                    return 0;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            assertEquals(0, region.transferTo(full));
+            assertFalse(region.isDone());
+        }
+    }
+
+    @Test
+    public void aTruncatedFileFailsTheTransferInsteadOfStallingIt() throws IOException {
+        Path file = file(100);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileRegion region = new FileRegion(channel, 0, 100, false);
+            channel.truncate(40);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            assertThrows(IOException.class, () -> {
+                while(!region.isDone()) {
+                    region.transferTo(target);
+                }
+            });
+            assertEquals(40, out.size());
+        }
+    }
+
+    @Test
+    public void releaseClosesTheFileOnlyIfTheRegionOwnsIt() throws IOException {
+        Path file = file(10);
+        FileChannel shared = FileChannel.open(file);
+        new FileRegion(shared, 0, 10, false).release();
+        assertTrue(shared.isOpen());
+        new FileRegion(shared, 0, 10, true).release();
+        assertFalse(shared.isOpen());
+    }
+}